@@ -1,6 +1,9 @@
 package de.kl;
 
-import de.kl.classifier.Classifier;
+import de.kl.classifier.ClassifierFile;
+import de.kl.classifier.ClassifierModelPublisher;
+import de.kl.classifier.DeltaCommand;
+import de.kl.classifier.ParallelTrainer;
 import de.kl.classifier.dict.CsvFeatureDictionary;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -12,14 +15,22 @@ public class XtbrApplication
 
     public static void main(String[] args) throws Throwable
     {
+        if (DeltaCommand.isCommand(args)) {
+            System.exit(DeltaCommand.run(args, System.out));
+        }
         ConfigurableApplicationContext ctx = SpringApplication.run(XtbrApplication.class, args);
 
-        Classifier bayes = ctx.getBean(Classifier.class);
-        CsvFeatureDictionary dictionary = ctx.getBean(CsvFeatureDictionary.class);
-
-        dictionary.getAllFeature().stream().forEach((entry) -> {
-            bayes.learn(entry);
-        });
+        ClassifierModelPublisher bayes = ctx.getBean(ClassifierModelPublisher.class);
+        for (ClassifierFile classifierFile : ctx.getBeansOfType(ClassifierFile.class).values()) {
+            if (!classifierFile.isUpToDate()) {
+                CsvFeatureDictionary dictionary = ctx.getBean(CsvFeatureDictionary.class);
+                int parallelism = ctx.getEnvironment().getProperty("training.load.parallelism", Integer.class, 0);
+                bayes.merge(new ParallelTrainer(parallelism, classifierFile.getStores()).train(dictionary));
+                classifierFile.replayed();
+                classifierFile.save();
+            }
+        }
+        bayes.publish();
     }
 
 }
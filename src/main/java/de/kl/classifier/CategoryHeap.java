@@ -0,0 +1,127 @@
+package de.kl.classifier;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Selects the k most probable categories from the log probabilities of all categories. It keeps a bounded min-heap
+ * of category ids, so the least probable of the current winners is always at the root and every other category is
+ * compared against it only. Categories are ranked by probability, equal probabilities by category, the same order the
+ * sorted sets of the classifier use.
+ *
+ * @author konrad
+ */
+final class CategoryHeap
+{
+
+    private final double[] logProbabilities;
+    private final IntFunction<String> categories;
+    private final int[] heap;
+    private int size;
+
+    private CategoryHeap(double[] logProbabilities, IntFunction<String> categories, int capacity)
+    {
+        this.logProbabilities = logProbabilities;
+        this.categories = categories;
+        this.heap = new int[capacity];
+    }
+
+    /**
+     * Retrieves the k most probable categories as classifications of the given features.
+     *
+     * @param features The set of features classified.
+     * @param logProbabilities The unnormalised log probabilities, indexed by category id.
+     * @param categories Maps a category id to its category.
+     * @param k The number of categories to retrieve.
+     * @return The classifications of the k most probable categories, most probable first. Less than k, if there are
+     * not as many categories.
+     */
+    static List<Classification> topK(Collection<String> features, double[] logProbabilities,
+            IntFunction<String> categories, int k)
+    {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        int capacity = Math.min(k, logProbabilities.length);
+        if (capacity == 0) {
+            return Collections.emptyList();
+        }
+        CategoryHeap heap = new CategoryHeap(logProbabilities, categories, capacity);
+        for (int categoryId = 0; categoryId < logProbabilities.length; categoryId++) {
+            heap.offer(categoryId);
+        }
+        double normalizer = Classifier.logSumExp(logProbabilities);
+        Classification[] classifications = new Classification[heap.size];
+        for (int i = heap.size - 1; i >= 0; i--) {
+            int categoryId = heap.poll();
+            float probability = (normalizer == Double.NEGATIVE_INFINITY)
+                    ? 0.0f
+                    : (float) Math.exp(logProbabilities[categoryId] - normalizer);
+            classifications[i] = new Classification(features, categories.apply(categoryId), probability);
+        }
+        return Arrays.asList(classifications);
+    }
+
+    private void offer(int categoryId)
+    {
+        if (this.size < this.heap.length) {
+            this.heap[this.size] = categoryId;
+            this.siftUp(this.size++);
+        } else if (this.ranksBelow(this.heap[0], categoryId)) {
+            this.heap[0] = categoryId;
+            this.siftDown(0);
+        }
+    }
+
+    private int poll()
+    {
+        int root = this.heap[0];
+        this.heap[0] = this.heap[--this.size];
+        this.siftDown(0);
+        return root;
+    }
+
+    private void siftUp(int index)
+    {
+        int categoryId = this.heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!this.ranksBelow(categoryId, this.heap[parent])) {
+                break;
+            }
+            this.heap[index] = this.heap[parent];
+            index = parent;
+        }
+        this.heap[index] = categoryId;
+    }
+
+    private void siftDown(int index)
+    {
+        int categoryId = this.heap[index];
+        int half = this.size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < this.size && this.ranksBelow(this.heap[child + 1], this.heap[child])) {
+                child++;
+            }
+            if (!this.ranksBelow(this.heap[child], categoryId)) {
+                break;
+            }
+            this.heap[index] = this.heap[child];
+            index = child;
+        }
+        this.heap[index] = categoryId;
+    }
+
+    private boolean ranksBelow(int categoryId, int otherCategoryId)
+    {
+        int compared = Double.compare(this.logProbabilities[categoryId], this.logProbabilities[otherCategoryId]);
+        if (compared == 0) {
+            compared = this.categories.apply(categoryId).compareTo(this.categories.apply(otherCategoryId));
+        }
+        return compared < 0;
+    }
+}
@@ -1,11 +1,19 @@
 package de.kl.classifier;
 
+import de.kl.classifier.store.CountDeltaFile;
+import de.kl.classifier.store.CountStore;
+import de.kl.classifier.store.HashedCountStore;
+import de.kl.classifier.store.InternedCountStore;
+import de.kl.classifier.store.PostingConsumer;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Map;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.function.IntFunction;
 
 /**
  * Abstract base extended by any concrete classifier. It implements the basic functionality for storing categories or
@@ -18,45 +26,76 @@ public class Classifier
 {
 
     /**
-     * Initial capacity of category dictionaries.
+     * Weight of the assumed probability used when classifying.
      */
-    private static final int INITIAL_CATEGORY_DICTIONARY_CAPACITY = 16;
+    private static final float DEFAULT_WEIGHT = 1.0f;
 
     /**
-     * Initial capacity of feature dictionaries. It should be quite big, because the features will quickly outnumber the
-     * categories.
+     * Probability assumed for features when classifying.
      */
-    private static final int INITIAL_FEATURE_DICTIONARY_CAPACITY = 32;
+    private static final float DEFAULT_ASSUMED_PROBABILITY = 0.5f;
 
     /**
-     * A dictionary mapping features to their number of occurrences in each known category.
+     * The weighed average log probability of a feature that was never seen: it is the assumed probability.
      */
-    private final Map<String, Map<String, Integer>> featureCountPerCategory;
+    private static final double UNKNOWN_FEATURE_LOG_PROBABILITY = Math.log(DEFAULT_ASSUMED_PROBABILITY);
 
     /**
-     * A dictionary mapping features to their number of occurrences.
+     * Stores the features and categories interned to ids together with their counts.
      */
-    private final Map<String, Integer> totalFeatureCount;
+    private final CountStore store;
 
     /**
-     * A dictionary mapping categories to their number of occurrences.
+     * Caches the weighed average log probability of a feature for all categories it never occurred in, indexed by
+     * feature id. Most feature/category pairs have a count of <code>0</code>, so this is what classifying looks up
+     * most of the time.
      */
-    private final Map<String, Integer> totalCategoryCount;
+    private double[] absentFeatureLogProbabilities;
+
+    /**
+     * Caches the log of the count of each category, indexed by category id. Together with the log of the total
+     * category count, which is taken once per classification, this gives the log prior of each category without
+     * touching any other category.
+     */
+    private double[] categoryLogCounts;
 
     /**
      * Constructs a new classifier without any trained knowledge.
      */
     public Classifier()
     {
-        this.featureCountPerCategory
-                = new HashMap<>(
-                        Classifier.INITIAL_CATEGORY_DICTIONARY_CAPACITY);
-        this.totalFeatureCount
-                = new HashMap<>(
-                        Classifier.INITIAL_FEATURE_DICTIONARY_CAPACITY);
-        this.totalCategoryCount
-                = new HashMap<>(
-                        Classifier.INITIAL_CATEGORY_DICTIONARY_CAPACITY);
+        this(new InternedCountStore());
+    }
+
+    /**
+     * Constructs a new classifier working on the given store.
+     *
+     * @param store The store holding the counts.
+     */
+    public Classifier(CountStore store)
+    {
+        this.store = store;
+        // the caches grow as they are updated, so a subclass not using them does not allocate them either
+        this.absentFeatureLogProbabilities = new double[16];
+        this.categoryLogCounts = new double[16];
+        int featureCount = store.featureSize();
+        for (int featureId = 0; featureId < featureCount; featureId++) {
+            this.updateAbsentFeatureLogProbability(featureId);
+        }
+        int categoryCount = store.categorySize();
+        for (int categoryId = 0; categoryId < categoryCount; categoryId++) {
+            this.updateCategoryLogCount(categoryId);
+        }
+    }
+
+    /**
+     * Retrieves the store holding the counts.
+     *
+     * @return The store.
+     */
+    CountStore getStore()
+    {
+        return this.store;
     }
 
     /**
@@ -66,7 +105,7 @@ public class Classifier
      */
     public Set<String> getFeatures()
     {
-        return this.totalFeatureCount.keySet();
+        return this.store.features();
     }
 
     /**
@@ -76,7 +115,7 @@ public class Classifier
      */
     public Set<String> getCategories()
     {
-        return this.totalCategoryCount.keySet();
+        return this.store.categories();
     }
 
     /**
@@ -86,11 +125,7 @@ public class Classifier
      */
     public int getCategoriesTotal()
     {
-        int toReturn = 0;
-        for (Integer categoryCount : this.totalCategoryCount.values()) {
-            toReturn += categoryCount;
-        }
-        return toReturn;
+        return this.store.categoriesTotal();
     }
 
     /**
@@ -102,27 +137,9 @@ public class Classifier
      */
     public void incrementFeature(String feature, String category)
     {
-        Map<String, Integer> features
-                = this.featureCountPerCategory.get(category);
-        if (features == null) {
-            this.featureCountPerCategory.put(category,
-                    new HashMap<>(
-                            Classifier.INITIAL_FEATURE_DICTIONARY_CAPACITY));
-            features = this.featureCountPerCategory.get(category);
-        }
-        Integer count = features.get(feature);
-        if (count == null) {
-            features.put(feature, 0);
-            count = features.get(feature);
-        }
-        features.put(feature, ++count);
-
-        Integer totalCount = this.totalFeatureCount.get(feature);
-        if (totalCount == null) {
-            this.totalFeatureCount.put(feature, 0);
-            totalCount = this.totalFeatureCount.get(feature);
-        }
-        this.totalFeatureCount.put(feature, ++totalCount);
+        int featureId = this.store.internFeature(feature);
+        this.store.incrementFeature(featureId, this.store.internCategory(category));
+        this.updateAbsentFeatureLogProbability(featureId);
     }
 
     /**
@@ -133,12 +150,9 @@ public class Classifier
      */
     public void incrementCategory(String category)
     {
-        Integer count = this.totalCategoryCount.get(category);
-        if (count == null) {
-            this.totalCategoryCount.put(category, 0);
-            count = this.totalCategoryCount.get(category);
-        }
-        this.totalCategoryCount.put(category, ++count);
+        int categoryId = this.store.internCategory(category);
+        this.store.incrementCategory(categoryId);
+        this.updateCategoryLogCount(categoryId);
     }
 
     /**
@@ -150,13 +164,12 @@ public class Classifier
      */
     public int featureCount(String feature, String category)
     {
-        Map<String, Integer> features
-                = this.featureCountPerCategory.get(category);
-        if (features == null) {
+        int featureId = this.store.featureId(feature);
+        int categoryId = this.store.categoryId(category);
+        if (featureId < 0 || categoryId < 0) {
             return 0;
         }
-        Integer count = features.get(feature);
-        return (count == null) ? 0 : count;
+        return this.store.featureCount(featureId, categoryId);
     }
 
     /**
@@ -167,8 +180,8 @@ public class Classifier
      */
     public int categoryCount(String category)
     {
-        Integer count = this.totalCategoryCount.get(category);
-        return (count == null) ? 0 : count;
+        int categoryId = this.store.categoryId(category);
+        return (categoryId < 0) ? 0 : this.store.categoryCount(categoryId);
     }
 
     /**
@@ -256,10 +269,8 @@ public class Classifier
                         ? this.featureProbability(feature, category)
                         : calculator.featureProbability(feature, category);
 
-        Integer totals = this.totalFeatureCount.get(feature);
-        if (totals == null) {
-            totals = 0;
-        }
+        int featureId = this.store.featureId(feature);
+        final int totals = (featureId < 0) ? 0 : this.store.featureTotal(featureId);
         return (weight * assumedProbability + totals * basicProbability)
                 / (weight + totals);
     }
@@ -283,51 +294,189 @@ public class Classifier
     public void learn(Classification classification)
     {
 
+        int categoryId = this.store.internCategory(classification.getCategory());
         for (String feature : classification.getFeatureset()) {
-            this.incrementFeature(feature, classification.getCategory());
+            int featureId = this.store.internFeature(feature);
+            this.store.incrementFeature(featureId, categoryId);
+            this.updateAbsentFeatureLogProbability(featureId);
         }
-        this.incrementCategory(classification.getCategory());
+        this.store.incrementCategory(categoryId);
+        this.updateCategoryLogCount(categoryId);
 
     }
 
+    /**
+     * Adds everything another classifier learned to this one, as if this one had learned it too. The counts are
+     * added feature by feature, so merging takes time in the vocabulary of the other classifier, not in the number of
+     * texts it learned.
+     *
+     * Features are matched by name. The buckets of a hashed classifier have no name, they can only be merged into a
+     * hashed classifier of the same size, bucket by bucket.
+     *
+     * @param other The classifier to merge. It must not learn while it is merged.
+     * @throws IllegalArgumentException If the other classifier is hashed and this one is not a hashed classifier of
+     * the same size.
+     */
+    public void merge(Classifier other)
+    {
+        CountStore source = other.store;
+        boolean sameBuckets = source instanceof HashedCountStore && this.store instanceof HashedCountStore
+                && ((HashedCountStore) source).getBits() == ((HashedCountStore) this.store).getBits();
+        int categorySize = source.categorySize();
+        int[] categoryIds = new int[categorySize];
+        for (int categoryId = 0; categoryId < categorySize; categoryId++) {
+            categoryIds[categoryId] = this.store.internCategory(source.category(categoryId));
+        }
+        int featureSize = source.featureSize();
+        for (int featureId = 0; featureId < featureSize; featureId++) {
+            if (source.featureTotal(featureId) == 0) {
+                continue;
+            }
+            int targetId;
+            if (sameBuckets) {
+                targetId = featureId;
+            } else {
+                String feature = source.feature(featureId);
+                if (feature == null) {
+                    throw new IllegalArgumentException(
+                            "A hashed classifier can only be merged into a hashed classifier of the same size");
+                }
+                targetId = this.store.internFeature(feature);
+            }
+            source.forEachPosting(featureId,
+                    (categoryId, count) -> this.store.addFeatureCount(targetId, categoryIds[categoryId], count));
+            this.updateAbsentFeatureLogProbability(targetId);
+        }
+        for (int categoryId = 0; categoryId < categorySize; categoryId++) {
+            this.store.addCategoryCount(categoryIds[categoryId], source.categoryCount(categoryId));
+            this.updateCategoryLogCount(categoryIds[categoryId]);
+        }
+    }
+
+    /**
+     * Writes everything the classifier learned as a delta, to be merged into another classifier, see
+     * {@link CountDeltaFile}.
+     *
+     * @param path The file to write.
+     * @throws IOException If the file can not be written.
+     */
+    public void writeDelta(Path path) throws IOException
+    {
+        CountDeltaFile.write(this.store, path);
+    }
+
     /**
      * Retrieves a sorted <code>Set</code> of probabilities that the given set
-     * of features is classified as the available categories.
+     * of features is classified as the available categories. The
+     * probabilities are normalised over all categories, so they sum up to
+     * <code>1</code>.
      *
      * @param features The set of features to use.
      * @return A sorted <code>Set</code> of category-probability-entries.
      */
     protected SortedSet<Classification> categoryProbabilities(Collection<String> features)
+    {
+        return toClassifications(features, this.categoryLogProbabilities(features), this.store::category);
+    }
+
+    /**
+     * Normalises log probabilities over all categories and sorts them as classifications of the given features.
+     *
+     * @param features The set of features classified.
+     * @param logProbabilities The unnormalised log probabilities, indexed by category id.
+     * @param categories Maps a category id to its category.
+     * @return A sorted <code>Set</code> of category-probability-entries.
+     */
+    static SortedSet<Classification> toClassifications(Collection<String> features, double[] logProbabilities,
+            IntFunction<String> categories)
     {
         /*
          * Sort the set according to the possibilities. Because we have to sort
          * by the mapped value and not by the mapped key, we can not use a
          * sorted tree (TreeMap) and we have to use a set-entry approach to
          * achieve the desired functionality. A custom comparator is therefore
-         * needed.
+         * needed. Equal probabilities are ordered by category, otherwise the
+         * set would drop all but one of them.
          */
         SortedSet<Classification> probabilities = new TreeSet<>((Classification o1, Classification o2) -> {
             int toReturn = Float.compare(o1.getProbability(), o2.getProbability());
+            if (toReturn == 0) {
+                toReturn = o1.getCategory().compareTo(o2.getCategory());
+            }
             return toReturn;
         });
-        for (String category : this.getCategories()) {
-            probabilities.add(new Classification(features, category, this.categoryProbability(features, category)));
+        double normalizer = logSumExp(logProbabilities);
+        for (int categoryId = 0; categoryId < logProbabilities.length; categoryId++) {
+            float probability = (normalizer == Double.NEGATIVE_INFINITY)
+                    ? 0.0f
+                    : (float) Math.exp(logProbabilities[categoryId] - normalizer);
+            probabilities.add(new Classification(features, categories.apply(categoryId), probability));
         }
         return probabilities;
     }
 
     /**
-     * Calculates the probability that the features can be classified as the
-     * category given.
+     * Calculates the unnormalised log probabilities that the features can be
+     * classified as each of the known categories.
+     *
+     * Most features occurred in only a few categories. For all others the
+     * feature contributes the same absent log probability to every category,
+     * so each category starts from a baseline of its log prior plus the
+     * absent log probabilities of all features. Only the categories in the
+     * posting list of a feature are then corrected for the feature being
+     * present, which makes the costs depend on the postings touched instead
+     * of on the number of categories times the number of features.
      *
      * @param features The set of features to use.
-     * @param category The category to test for.
-     * @return The probability that the features can be classified as the
-     *    category.
+     * @return The log probabilities, indexed by category id.
+     */
+    protected double[] categoryLogProbabilities(Collection<String> features)
+    {
+        double[] logProbabilities = this.categoryLogPriors();
+        PresentFeatureCorrection correction = new PresentFeatureCorrection(logProbabilities);
+        double absentLogProbabilitySum = 0.0;
+        for (String feature : features) {
+            int featureId = this.store.featureId(feature);
+            if (featureId < 0) {
+                absentLogProbabilitySum += UNKNOWN_FEATURE_LOG_PROBABILITY;
+                continue;
+            }
+            absentLogProbabilitySum += this.absentFeatureLogProbability(featureId);
+            correction.featureTotal = this.store.featureTotal(featureId);
+            this.store.forEachPosting(featureId, correction);
+        }
+        for (int categoryId = 0; categoryId < logProbabilities.length; categoryId++) {
+            logProbabilities[categoryId] += absentLogProbabilitySum;
+        }
+        return logProbabilities;
+    }
+
+    /**
+     * Calculates the log prior log(P(cat)) of each category.
+     *
+     * @return The log priors, indexed by category id.
      */
-    protected float categoryProbability(Collection<String> features, String category)
+    protected double[] categoryLogPriors()
     {
-        return ((float) this.categoryCount(category) / (float) this.getCategoriesTotal()) * featuresProbabilityProduct(features, category);
+        double logCategoriesTotal = Math.log(this.store.categoriesTotal());
+        double[] logPriors = new double[this.store.categorySize()];
+        for (int categoryId = 0; categoryId < logPriors.length; categoryId++) {
+            logPriors[categoryId] = (this.store.categoryCount(categoryId) == 0)
+                    ? Double.NEGATIVE_INFINITY
+                    : this.categoryLogCounts[categoryId] - logCategoriesTotal;
+        }
+        return logPriors;
+    }
+
+    /**
+     * Takes an immutable snapshot of everything learned so far. Classifying with the snapshot needs no locks and is
+     * not slowed down by further learning, which the snapshot does not see.
+     *
+     * @return The snapshot.
+     */
+    public ClassifierModel snapshot()
+    {
+        return ClassifierModel.of(this.store);
     }
 
     /**
@@ -337,11 +486,22 @@ public class Classifier
      */
     public Classification classify(Collection<String> features)
     {
-        SortedSet<Classification> probabilites = this.categoryProbabilities(features);
-        if (probabilites.size() > 0) {
-            return probabilites.last();
-        }
-        return null;
+        List<Classification> best = this.classifyTopK(features, 1);
+        return best.isEmpty() ? null : best.get(0);
+    }
+
+    /**
+     * Classifies the given set of features and returns the k most probable categories. Only these k categories are
+     * turned into classifications, which makes this much cheaper than {@link #classifyDetailed(Collection)} if there
+     * are many categories.
+     *
+     * @param features The set of features to classify.
+     * @param k The number of categories to return.
+     * @return The k most probable categories, most probable first.
+     */
+    public List<Classification> classifyTopK(Collection<String> features, int k)
+    {
+        return CategoryHeap.topK(features, this.categoryLogProbabilities(features), this.store::category, k);
     }
 
     /**
@@ -357,19 +517,122 @@ public class Classifier
     }
 
     /**
-     * Calculates the product of all feature probabilities: PROD(P(featI|cat)
+     * Retrieves the weighed average log probability of the given feature for categories it never occurred in.
      *
-     * @param features The set of features to use.
-     * @param category The category to test for.
-     * @return The product of all feature probabilities.
+     * @param featureId The id of the feature.
+     * @return The cached log probability.
      */
-    protected float featuresProbabilityProduct(Collection<String> features, String category)
+    protected double absentFeatureLogProbability(int featureId)
     {
-        float product = 1.0F;
-        for (String feature : features) {
-            product *= this.featureWeighedAverage(feature, category);
+        return this.absentFeatureLogProbabilities[featureId];
+    }
+
+    /**
+     * Calculates the weighed average log probability of a feature for categories it never occurred in. It only
+     * depends on the total count of the feature.
+     *
+     * @param featureTotal The number of occurrences of the feature over all categories.
+     * @return The log probability.
+     */
+    protected static double absentFeatureLogProbabilityOf(int featureTotal)
+    {
+        return Math.log(DEFAULT_WEIGHT * DEFAULT_ASSUMED_PROBABILITY / (DEFAULT_WEIGHT + featureTotal));
+    }
+
+    /**
+     * Updates the cached weighed average log probability of the given feature for categories it never occurred in.
+     * It has to be refreshed whenever the total count of the feature changes.
+     *
+     * @param featureId The id of the feature.
+     */
+    protected void updateAbsentFeatureLogProbability(int featureId)
+    {
+        if (featureId >= this.absentFeatureLogProbabilities.length) {
+            this.absentFeatureLogProbabilities = Arrays.copyOf(this.absentFeatureLogProbabilities,
+                    Math.max(featureId + 1, this.absentFeatureLogProbabilities.length * 2));
+        }
+        this.absentFeatureLogProbabilities[featureId] = absentFeatureLogProbabilityOf(
+                this.store.featureTotal(featureId));
+    }
+
+    /**
+     * Updates the cached log count of the given category. It has to be refreshed whenever the count changes.
+     *
+     * @param categoryId The id of the category.
+     */
+    protected void updateCategoryLogCount(int categoryId)
+    {
+        if (categoryId >= this.categoryLogCounts.length) {
+            this.categoryLogCounts = Arrays.copyOf(this.categoryLogCounts,
+                    Math.max(categoryId + 1, this.categoryLogCounts.length * 2));
+        }
+        this.categoryLogCounts[categoryId] = Math.log(this.store.categoryCount(categoryId));
+    }
+
+    /**
+     * Calculates the difference between the log probability of a feature for a category it occurred in and the log
+     * probability for a category it never occurred in.
+     *
+     * @param featureTotal The number of occurrences of the feature over all categories.
+     * @param count The number of occurrences of the feature in the category.
+     * @param categoryCount The number of occurrences of the category.
+     * @return The difference of the log probabilities.
+     */
+    static double presentFeatureCorrectionOf(int featureTotal, int count, int categoryCount)
+    {
+        return Math.log1p((double) featureTotal * count
+                / (categoryCount * (double) (DEFAULT_WEIGHT * DEFAULT_ASSUMED_PROBABILITY)));
+    }
+
+    /**
+     * Adds the difference between the present and the absent log probability of a feature to the categories in its
+     * posting list. With the weighed average
+     * <code>P(feat|cat) = (weight * assumed + total * count / categoryCount) / (weight + total)</code> the difference
+     * of the logs reduces to <code>log(1 + total * count / (categoryCount * weight * assumed))</code>.
+     */
+    private class PresentFeatureCorrection implements PostingConsumer
+    {
+
+        private final double[] logProbabilities;
+        private int featureTotal;
+
+        private PresentFeatureCorrection(double[] logProbabilities)
+        {
+            this.logProbabilities = logProbabilities;
+        }
+
+        @Override
+        public void accept(int categoryId, int count)
+        {
+            int categoryCount = store.categoryCount(categoryId);
+            // a concurrent learn may have added the category after the scores were sized
+            if (categoryCount > 0 && categoryId < this.logProbabilities.length) {
+                this.logProbabilities[categoryId]
+                        += presentFeatureCorrectionOf(this.featureTotal, count, categoryCount);
+            }
+        }
+    }
+
+    /**
+     * Calculates log(SUM(exp(x))) without leaving the range of <code>double</code>.
+     *
+     * @param values The log values.
+     * @return The log of the sum of the values, <code>-Infinity</code> if there are none.
+     */
+    static double logSumExp(double[] values)
+    {
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : values) {
+            max = Math.max(max, value);
+        }
+        if (max == Double.NEGATIVE_INFINITY) {
+            return max;
+        }
+        double sum = 0.0;
+        for (double value : values) {
+            sum += Math.exp(value - max);
         }
-        return product;
+        return max + Math.log(sum);
     }
 
 }
@@ -0,0 +1,259 @@
+package de.kl.classifier;
+
+import de.kl.classifier.store.ConcurrentCountStore;
+import de.kl.classifier.store.CountStoreFile;
+import de.kl.classifier.store.MappedCountStore;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a classifier in a binary file next to the training file it learns from, so starting up does not have to
+ * tokenize and learn the whole training file again.
+ *
+ * The file records the length of the training file it was saved for. As the training file is only ever appended to,
+ * the file is up to date as long as the training file still has that length. Otherwise it is stale, the classifier
+ * starts empty and has to learn the training file again, see {@link #isUpToDate()}. The same happens when the file
+ * was saved with features of other n-grams than the tokenizer makes now. The classifier is saved in
+ * intervals while it changes and when the file is closed. Optionally, it is also written as a
+ * {@link MappedCountStore} each time, for read-only {@link MappedClassifier}s in other processes.
+ *
+ * @author konrad
+ */
+public class ClassifierFile implements AutoCloseable
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClassifierFile.class);
+
+    private final Path modelFile;
+    private final Path trainingFile;
+    private final Path mappedFile;
+    private final Supplier<? extends ConcurrentCountStore> stores;
+    private final int ngramWords;
+    private final int ngramChars;
+    private final ConcurrentClassifier classifier;
+    private final ScheduledExecutorService scheduler;
+    private volatile boolean upToDate;
+    private int savedCategoriesTotal = -1;
+
+    /**
+     * Constructs a classifier from the given file, if it is up to date with the training file.
+     *
+     * @param modelFile The file the classifier is kept in.
+     * @param trainingFile The training file the classifier learns from.
+     * @param saveInterval The interval in which a changed classifier is saved, not at all if <code>0</code>.
+     * @param unit The unit of the interval.
+     */
+    public ClassifierFile(Path modelFile, Path trainingFile, long saveInterval, TimeUnit unit)
+    {
+        this(modelFile, null, trainingFile, saveInterval, unit);
+    }
+
+    /**
+     * Constructs a classifier from the given file, if it is up to date with the training file.
+     *
+     * @param modelFile The file the classifier is kept in.
+     * @param mappedFile The file the classifier is written to as a mapped count store on every save, or
+     * <code>null</code>.
+     * @param trainingFile The training file the classifier learns from.
+     * @param saveInterval The interval in which a changed classifier is saved, not at all if <code>0</code>.
+     * @param unit The unit of the interval.
+     */
+    public ClassifierFile(Path modelFile, Path mappedFile, Path trainingFile, long saveInterval, TimeUnit unit)
+    {
+        this(modelFile, mappedFile, trainingFile, ConcurrentCountStore::new, saveInterval, unit);
+    }
+
+    /**
+     * Constructs a classifier from the given file, if it is up to date with the training file.
+     *
+     * @param modelFile The file the classifier is kept in.
+     * @param mappedFile The file the classifier is written to as a mapped count store on every save, or
+     * <code>null</code>.
+     * @param trainingFile The training file the classifier learns from.
+     * @param stores Creates the empty store the classifier is loaded into or learns with, e.g. a
+     * {@link de.kl.classifier.store.HashedCountStore}.
+     * @param saveInterval The interval in which a changed classifier is saved, not at all if <code>0</code>.
+     * @param unit The unit of the interval.
+     */
+    public ClassifierFile(Path modelFile, Path mappedFile, Path trainingFile,
+            Supplier<? extends ConcurrentCountStore> stores, long saveInterval, TimeUnit unit)
+    {
+        this(modelFile, mappedFile, trainingFile, stores, 1, 0, saveInterval, unit);
+    }
+
+    /**
+     * Constructs a classifier from the given file, if it is up to date with the training file and was learned with
+     * features of the given n-grams.
+     *
+     * @param modelFile The file the classifier is kept in.
+     * @param mappedFile The file the classifier is written to as a mapped count store on every save, or
+     * <code>null</code>.
+     * @param trainingFile The training file the classifier learns from.
+     * @param stores Creates the empty store the classifier is loaded into or learns with, e.g. a
+     * {@link de.kl.classifier.store.HashedCountStore}.
+     * @param ngramWords The longest word n-grams of the features, <code>1</code> for single terms.
+     * @param ngramChars The longest character n-grams of the features, <code>0</code> for none.
+     * @param saveInterval The interval in which a changed classifier is saved, not at all if <code>0</code>.
+     * @param unit The unit of the interval.
+     */
+    public ClassifierFile(Path modelFile, Path mappedFile, Path trainingFile,
+            Supplier<? extends ConcurrentCountStore> stores, int ngramWords, int ngramChars, long saveInterval,
+            TimeUnit unit)
+    {
+        this.modelFile = modelFile;
+        this.mappedFile = mappedFile;
+        this.trainingFile = trainingFile;
+        this.stores = stores;
+        this.ngramWords = ngramWords;
+        this.ngramChars = ngramChars;
+        ConcurrentCountStore store = this.load();
+        this.upToDate = (store != null);
+        this.classifier = new ConcurrentClassifier(this.upToDate ? store : stores.get());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "classifier-file");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (saveInterval > 0) {
+            this.scheduler.scheduleWithFixedDelay(this::saveIfChanged, saveInterval, saveInterval, unit);
+        }
+    }
+
+    /**
+     * Retrieves the classifier kept in the file.
+     *
+     * @return The classifier.
+     */
+    public ConcurrentClassifier getClassifier()
+    {
+        return this.classifier;
+    }
+
+    /**
+     * Retrieves the factory of the stores the classifier is loaded into, to learn the training file into stores of
+     * the same kind, e.g. with a {@link ParallelTrainer}.
+     *
+     * @return The factory of empty stores.
+     */
+    public Supplier<? extends ConcurrentCountStore> getStores()
+    {
+        return this.stores;
+    }
+
+    /**
+     * Tells, whether the classifier knows everything in the training file. If not, the training file has to be
+     * learned and {@link #replayed()} called afterwards; until then the classifier is not saved.
+     *
+     * @return <code>true</code>, if the classifier was loaded from an up to date file.
+     */
+    public boolean isUpToDate()
+    {
+        return this.upToDate;
+    }
+
+    /**
+     * Marks the classifier as having learned the whole training file.
+     */
+    public void replayed()
+    {
+        this.upToDate = true;
+    }
+
+    /**
+     * Saves the classifier to the file.
+     *
+     * @return <code>false</code>, if the classifier was not saved because it is not up to date.
+     * @throws IOException If the file can not be written.
+     */
+    public synchronized boolean save() throws IOException
+    {
+        if (!this.upToDate) {
+            return false;
+        }
+        int categoriesTotal = this.classifier.getCategoriesTotal();
+        // learning happens before a line is appended to the training file, so every line within this length is
+        // already counted when the counts are written afterwards
+        long trainingLength = this.trainingLength();
+        createDirectories(this.modelFile);
+        CountStoreFile.write(this.classifier.getStore(), trainingLength, this.ngramWords, this.ngramChars,
+                this.modelFile);
+        if (this.mappedFile != null) {
+            createDirectories(this.mappedFile);
+            MappedCountStore.write(this.classifier.getStore(), this.mappedFile);
+        }
+        this.savedCategoriesTotal = categoriesTotal;
+        LOGGER.info("Saved classifier with {} learns to {}.", categoriesTotal, this.modelFile);
+        return true;
+    }
+
+    /**
+     * Stops saving in intervals and saves the classifier a last time.
+     */
+    @Override
+    public void close()
+    {
+        this.scheduler.shutdownNow();
+        this.saveIfChanged();
+    }
+
+    private synchronized void saveIfChanged()
+    {
+        if (this.classifier.getCategoriesTotal() == this.savedCategoriesTotal) {
+            return;
+        }
+        try {
+            this.save();
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.warn("Could not save classifier to {}.", this.modelFile, ex);
+        }
+    }
+
+    private ConcurrentCountStore load()
+    {
+        if (!Files.exists(this.modelFile)) {
+            LOGGER.info("No classifier file {}, the training file has to be learned.", this.modelFile);
+            return null;
+        }
+        try {
+            CountStoreFile.Header header = CountStoreFile.readHeader(this.modelFile);
+            if (header.getNGramWords() != this.ngramWords || header.getNGramChars() != this.ngramChars) {
+                LOGGER.info("Classifier file {} holds n-grams of {} words and {} chars instead of {} and {}, the "
+                        + "training file has to be learned.", this.modelFile, header.getNGramWords(),
+                        header.getNGramChars(), this.ngramWords, this.ngramChars);
+                return null;
+            }
+            ConcurrentCountStore store = this.stores.get();
+            long trainingLength = CountStoreFile.read(this.modelFile, store);
+            if (trainingLength != this.trainingLength()) {
+                LOGGER.info("Classifier file {} is stale, the training file has to be learned.", this.modelFile);
+                return null;
+            }
+            LOGGER.info("Loaded classifier from {}.", this.modelFile);
+            return store;
+        } catch (IOException ex) {
+            LOGGER.warn("Could not load classifier from {}, the training file has to be learned.",
+                    this.modelFile, ex);
+            return null;
+        }
+    }
+
+    private static void createDirectories(Path file) throws IOException
+    {
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+    }
+
+    private long trainingLength() throws IOException
+    {
+        return Files.exists(this.trainingFile) ? Files.size(this.trainingFile) : 0L;
+    }
+}
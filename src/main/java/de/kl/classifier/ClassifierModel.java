@@ -0,0 +1,263 @@
+package de.kl.classifier;
+
+import de.kl.classifier.store.CountStore;
+import de.kl.classifier.token.Tokenizer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * An immutable snapshot of a trained {@link Classifier}. It classifies exactly like the classifier did at the time of
+ * the snapshot, but it never changes afterwards, so any number of threads can classify with it without locking while
+ * the classifier goes on learning.
+ *
+ * @author konrad
+ */
+public abstract class ClassifierModel
+{
+
+    /**
+     * Score arrays reused by the batch classification, one per thread. They are sized to the model they were used
+     * with last, so they are reused as long as the number of categories does not change.
+     */
+    private static final ThreadLocal<double[]> SCRATCH = new ThreadLocal<>();
+
+    ClassifierModel()
+    {
+    }
+
+    /**
+     * Takes a snapshot of the given store, packed into arrays on the heap.
+     *
+     * @param store The store holding the counts.
+     * @return The snapshot.
+     */
+    static ClassifierModel of(CountStore store)
+    {
+        return PackedClassifierModel.of(store);
+    }
+
+    /**
+     * Retrieves the number of features the model knows about.
+     *
+     * @return The number of features.
+     */
+    public abstract int getFeatureSize();
+
+    /**
+     * Retrieves the number of categories the model knows about.
+     *
+     * @return The number of categories.
+     */
+    public abstract int getCategorySize();
+
+    /**
+     * Retrieves the total category count the model was trained with, which is the number of learns it has seen.
+     *
+     * @return The total category count.
+     */
+    public abstract int getCategoriesTotal();
+
+    /**
+     * Retrieves the category with the given id.
+     *
+     * @param categoryId The id of the category.
+     * @return The category.
+     */
+    abstract String category(int categoryId);
+
+    /**
+     * Calculates the log probabilities that the features can be classified as each category, up to a term common to
+     * all categories.
+     *
+     * @param features The set of features to use.
+     * @param logProbabilities Receives the log probabilities, indexed by category id. Its length is the number of
+     * categories.
+     */
+    abstract void categoryLogProbabilities(Collection<String> features, double[] logProbabilities);
+
+    /**
+     * Calculates the log probabilities that a text can be classified as each category, up to a term common to all
+     * categories, tokenizing the text on the way. The default implementation collects the features of the text
+     * first.
+     *
+     * @param text The text to classify.
+     * @param tokenizer Splits the text into its features.
+     * @param logProbabilities Receives the log probabilities, indexed by category id. Its length is the number of
+     * categories.
+     * @throws IOException If the text can not be tokenized.
+     */
+    void categoryLogProbabilities(String text, Tokenizer tokenizer, double[] logProbabilities) throws IOException
+    {
+        this.categoryLogProbabilities(tokenizer.tokenize(text), logProbabilities);
+    }
+
+    /**
+     * Classifies the given set of features.
+     *
+     * @param features The set of features to classify.
+     * @return The category the set of features is classified as, <code>null</code> if there are no categories.
+     */
+    public Classification classify(Collection<String> features)
+    {
+        List<Classification> best = this.classifyTopK(features, 1);
+        return best.isEmpty() ? null : best.get(0);
+    }
+
+    /**
+     * Classifies the given set of features and returns the k most probable categories.
+     *
+     * @param features The set of features to classify.
+     * @param k The number of categories to return.
+     * @return The k most probable categories, most probable first.
+     */
+    public List<Classification> classifyTopK(Collection<String> features, int k)
+    {
+        return CategoryHeap.topK(features, this.categoryLogProbabilities(features),
+                this::category, k);
+    }
+
+    /**
+     * Tokenizes and classifies the given text and returns the k most probable categories. The features are looked up
+     * as the tokenizer streams them, without collecting them, so the classifications carry no featureset.
+     *
+     * @param text The text to classify.
+     * @param tokenizer Splits the text into its features.
+     * @param k The number of categories to return.
+     * @return The k most probable categories, most probable first.
+     * @throws IOException If the text can not be tokenized.
+     */
+    public List<Classification> classifyTopK(String text, Tokenizer tokenizer, int k) throws IOException
+    {
+        double[] logProbabilities = new double[this.getCategorySize()];
+        this.categoryLogProbabilities(text, tokenizer, logProbabilities);
+        return CategoryHeap.topK(Collections.emptyList(), logProbabilities, this::category, k);
+    }
+
+    /**
+     * Classifies the given set of features and returns the full details of the classification.
+     *
+     * @param features The set of features to classify.
+     * @return The set of categories the set of features is classified as, in ascending order of probability.
+     */
+    public Collection<Classification> classifyDetailed(Collection<String> features)
+    {
+        return this.categoryProbabilities(features);
+    }
+
+    private SortedSet<Classification> categoryProbabilities(Collection<String> features)
+    {
+        return Classifier.toClassifications(features, this.categoryLogProbabilities(features),
+                this::category);
+    }
+
+    /**
+     * Classifies many documents at once. The documents are split into chunks that are tokenized and scored in
+     * parallel on the common fork-join pool, each thread reusing one array of scores for all its documents. Only the
+     * most probable category of each document is turned into a {@link Classification}.
+     *
+     * The returned stream is parallel and keeps the order of the documents. Consume it with a terminal operation like
+     * <code>forEachOrdered</code> or <code>collect</code>; iterating it element by element would classify one
+     * document after another.
+     *
+     * @param <T> The type of the documents.
+     * @param documents The documents to classify.
+     * @param tokenizer Turns a document into its set of features, it is called by many threads at once.
+     * @return The classification of each document, <code>null</code> for all if there are no categories.
+     */
+    public <T> Stream<Classification> classifyBatch(List<T> documents,
+            Function<? super T, ? extends Collection<String>> tokenizer)
+    {
+        return documents.parallelStream().map(document -> this.classifyWithScratch(tokenizer.apply(document)));
+    }
+
+    /**
+     * Classifies many sets of features at once, see {@link #classifyBatch(List, Function)}.
+     *
+     * @param featuresets The sets of features to classify.
+     * @return The classification of each set of features, <code>null</code> for all if there are no categories.
+     */
+    public Stream<Classification> classifyBatch(List<? extends Collection<String>> featuresets)
+    {
+        return this.classifyBatch(featuresets, Function.identity());
+    }
+
+    /**
+     * Classifies many texts at once like {@link #classifyBatch(List, Function)}, but streams the features of each
+     * text from the tokenizer straight into the scores instead of collecting them. Next to the classification itself
+     * hardly anything is allocated per text, and the classifications carry no featureset.
+     *
+     * @param texts The texts to classify.
+     * @param tokenizer Splits the texts into their features, it is called by many threads at once.
+     * @return The classification of each text, <code>null</code> for all if there are no categories.
+     */
+    public Stream<Classification> classifyTexts(List<String> texts, Tokenizer tokenizer)
+    {
+        return texts.parallelStream().map(text -> {
+            double[] logProbabilities = this.scratch();
+            try {
+                this.categoryLogProbabilities(text, tokenizer, logProbabilities);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return this.best(Collections.emptyList(), logProbabilities);
+        });
+    }
+
+    private Classification classifyWithScratch(Collection<String> features)
+    {
+        double[] logProbabilities = this.scratch();
+        this.categoryLogProbabilities(features, logProbabilities);
+        return this.best(features, logProbabilities);
+    }
+
+    private double[] scratch()
+    {
+        double[] logProbabilities = SCRATCH.get();
+        if (logProbabilities == null || logProbabilities.length != this.getCategorySize()) {
+            logProbabilities = new double[this.getCategorySize()];
+            SCRATCH.set(logProbabilities);
+        }
+        return logProbabilities;
+    }
+
+    private Classification best(Collection<String> features, double[] logProbabilities)
+    {
+        int best = -1;
+        for (int categoryId = 0; categoryId < logProbabilities.length; categoryId++) {
+            // equal probabilities go to the greater category, like the last element of the sorted set
+            if (best < 0 || logProbabilities[categoryId] > logProbabilities[best]
+                    || (logProbabilities[categoryId] == logProbabilities[best]
+                    && this.category(categoryId).compareTo(this.category(best)) > 0)) {
+                best = categoryId;
+            }
+        }
+        if (best < 0) {
+            return null;
+        }
+        double normalizer = Classifier.logSumExp(logProbabilities);
+        float probability = (normalizer == Double.NEGATIVE_INFINITY)
+                ? 0.0f
+                : (float) Math.exp(logProbabilities[best] - normalizer);
+        return new Classification(features, this.category(best), probability);
+    }
+
+    /**
+     * Calculates the log probabilities that the features can be classified as each category, up to a term common to
+     * all categories.
+     *
+     * @param features The set of features to use.
+     * @return The log probabilities, indexed by category id.
+     */
+    double[] categoryLogProbabilities(Collection<String> features)
+    {
+        double[] logProbabilities = new double[this.getCategorySize()];
+        this.categoryLogProbabilities(features, logProbabilities);
+        return logProbabilities;
+    }
+}
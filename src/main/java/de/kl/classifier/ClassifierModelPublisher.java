@@ -0,0 +1,172 @@
+package de.kl.classifier;
+
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Separates learning from classifying. All learning goes to a {@link Classifier}, classifying uses the
+ * {@link ClassifierModel} published last, so a request never waits for a learn or a retraining.
+ *
+ * A new snapshot is published in the background once the classifier has learned a given number of times since the
+ * last one, or after a given interval if it has learned anything at all. As each snapshot copies the counts, the
+ * number of learns only brings a publish forward to a minimum interval after the last one, so a burst of learns does
+ * not take a snapshot after the other. Learns that bypass the publisher and go to
+ * the classifier directly are only picked up by the interval. The classifier can be replaced as a whole, e.g. by a
+ * newer version of the file it was read from.
+ *
+ * @author konrad
+ */
+public class ClassifierModelPublisher implements AutoCloseable
+{
+
+    private volatile Classifier classifier;
+    private final int learnsPerPublish;
+    private final long minIntervalNanos;
+    private volatile long lastPublish;
+    private final AtomicReference<ClassifierModel> model;
+    private final AtomicBoolean publishScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Constructs a new publisher and publishes a first snapshot of the classifier. Learns are published as soon as
+     * their number is reached.
+     *
+     * @param classifier The classifier to learn with. It has to be thread-safe, if the publisher is used by more than
+     * one thread, as it takes snapshots while learning goes on.
+     * @param learnsPerPublish The number of learns after which a new snapshot is published.
+     * @param interval The interval in which learns are published at the latest.
+     * @param unit The unit of the interval.
+     */
+    public ClassifierModelPublisher(Classifier classifier, int learnsPerPublish, long interval, TimeUnit unit)
+    {
+        this(classifier, learnsPerPublish, 0, interval, unit);
+    }
+
+    /**
+     * Constructs a new publisher and publishes a first snapshot of the classifier.
+     *
+     * @param classifier The classifier to learn with. It has to be thread-safe, if the publisher is used by more than
+     * one thread, as it takes snapshots while learning goes on.
+     * @param learnsPerPublish The number of learns after which a new snapshot is published.
+     * @param minInterval The interval in which learns are published at the earliest, when their number is reached.
+     * @param interval The interval in which learns are published at the latest.
+     * @param unit The unit of the intervals.
+     */
+    public ClassifierModelPublisher(Classifier classifier, int learnsPerPublish, long minInterval, long interval,
+            TimeUnit unit)
+    {
+        this.classifier = classifier;
+        this.learnsPerPublish = learnsPerPublish;
+        this.minIntervalNanos = unit.toNanos(minInterval);
+        this.model = new AtomicReference<>(classifier.snapshot());
+        this.lastPublish = System.nanoTime();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "classifier-model-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::publishIfChanged, interval, interval, unit);
+    }
+
+    /**
+     * Retrieves the snapshot published last.
+     *
+     * @return The current model.
+     */
+    public ClassifierModel getModel()
+    {
+        return this.model.get();
+    }
+
+    /**
+     * Teaches the classifier a new classification.
+     *
+     * @param category The category the features belong to.
+     * @param features The features that resulted in the given category.
+     */
+    public void learn(String category, Collection<String> features)
+    {
+        this.classifier.learn(category, features);
+        this.learned();
+    }
+
+    /**
+     * Teaches the classifier a new classification.
+     *
+     * @param classification The classification to learn.
+     */
+    public void learn(Classification classification)
+    {
+        this.classifier.learn(classification);
+        this.learned();
+    }
+
+    /**
+     * Teaches the classifier everything another classifier learned, see {@link Classifier#merge(Classifier)}.
+     *
+     * @param other The classifier to merge.
+     */
+    public void merge(Classifier other)
+    {
+        this.classifier.merge(other);
+        this.learned();
+    }
+
+    /**
+     * Takes a snapshot of the classifier and publishes it right away.
+     *
+     * @return The published model.
+     */
+    public synchronized ClassifierModel publish()
+    {
+        ClassifierModel snapshot = this.classifier.snapshot();
+        this.model.set(snapshot);
+        this.lastPublish = System.nanoTime();
+        return snapshot;
+    }
+
+    /**
+     * Replaces the classifier learned with and publishes a snapshot of the new one right away.
+     *
+     * @param classifier The new classifier, see {@link #ClassifierModelPublisher}.
+     * @return The published model.
+     */
+    public synchronized ClassifierModel replace(Classifier classifier)
+    {
+        this.classifier = classifier;
+        return this.publish();
+    }
+
+    /**
+     * Stops publishing in the background.
+     */
+    @Override
+    public void close()
+    {
+        this.scheduler.shutdownNow();
+    }
+
+    private void learned()
+    {
+        int unpublished = this.classifier.getCategoriesTotal() - this.model.get().getCategoriesTotal();
+        if (unpublished >= this.learnsPerPublish && !this.scheduler.isShutdown()
+                && this.publishScheduled.compareAndSet(false, true)) {
+            long delay = this.lastPublish + this.minIntervalNanos - System.nanoTime();
+            this.scheduler.schedule(() -> {
+                this.publishScheduled.set(false);
+                this.publish();
+            }, Math.max(delay, 0), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void publishIfChanged()
+    {
+        if (this.classifier.getCategoriesTotal() != this.model.get().getCategoriesTotal()) {
+            this.publish();
+        }
+    }
+}
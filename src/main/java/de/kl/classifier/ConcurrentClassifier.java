@@ -0,0 +1,82 @@
+package de.kl.classifier;
+
+import de.kl.classifier.store.ConcurrentCountStore;
+
+/**
+ * A classifier that can be trained and queried by many threads at once. The counts live in a
+ * {@link ConcurrentCountStore}, which updates them without a global lock.
+ *
+ * The caches of the base class are plain arrays and would need the same synchronisation as the counts themselves, so
+ * this variant does not use them: the few logs they save are calculated from the counts on every classification.
+ *
+ * @author konrad
+ */
+public class ConcurrentClassifier extends Classifier
+{
+
+    private final ConcurrentCountStore store;
+
+    /**
+     * Constructs a new classifier without any trained knowledge.
+     */
+    public ConcurrentClassifier()
+    {
+        this(new ConcurrentCountStore());
+    }
+
+    /**
+     * Constructs a new classifier working on the given store.
+     *
+     * @param store The store holding the counts.
+     */
+    public ConcurrentClassifier(ConcurrentCountStore store)
+    {
+        super(store);
+        this.store = store;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The total is summed up from the same counts the priors are calculated from, so a concurrent learn can not make
+     * them disagree.
+     */
+    @Override
+    protected double[] categoryLogPriors()
+    {
+        double[] logPriors = new double[this.store.categorySize()];
+        long categoriesTotal = 0;
+        for (int categoryId = 0; categoryId < logPriors.length; categoryId++) {
+            int categoryCount = this.store.categoryCount(categoryId);
+            categoriesTotal += categoryCount;
+            logPriors[categoryId] = Math.log(categoryCount);
+        }
+        if (categoriesTotal == 0) {
+            // only categories a concurrent learn has not counted yet, all priors are already -Infinity
+            return logPriors;
+        }
+        double logCategoriesTotal = Math.log(categoriesTotal);
+        for (int categoryId = 0; categoryId < logPriors.length; categoryId++) {
+            logPriors[categoryId] -= logCategoriesTotal;
+        }
+        return logPriors;
+    }
+
+    @Override
+    protected double absentFeatureLogProbability(int featureId)
+    {
+        return absentFeatureLogProbabilityOf(this.store.featureTotal(featureId));
+    }
+
+    @Override
+    protected void updateAbsentFeatureLogProbability(int featureId)
+    {
+        // not cached
+    }
+
+    @Override
+    protected void updateCategoryLogCount(int categoryId)
+    {
+        // not cached
+    }
+}
@@ -0,0 +1,165 @@
+package de.kl.classifier;
+
+import de.kl.classifier.dict.CsvFeatureDictionary;
+import de.kl.classifier.store.CountDeltaFile;
+import de.kl.classifier.store.CountStore;
+import de.kl.classifier.store.CountStoreFile;
+import de.kl.classifier.store.HashedCountStore;
+import de.kl.classifier.store.InternedCountStore;
+import de.kl.classifier.token.LuceneTokenizer;
+import de.kl.classifier.token.NGramTokenizer;
+import de.kl.classifier.token.Tokenizer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * The command line of sharded training, run by separate JVMs without starting the application:
+ *
+ * <pre>
+ * train &lt;training.tsv&gt; &lt;output.delta&gt; [threads]       learns a shard of the training data into a delta
+ * merge &lt;output.delta&gt; &lt;input.delta&gt;...               adds up deltas into one
+ * apply &lt;model.bin&gt; &lt;training.tsv&gt; &lt;input.delta&gt;...   adds deltas to a model file, created if it does not
+ *                                                     exist, and records the length of the training file
+ * </pre>
+ *
+ * A shard is only read, never written. It is learned with the features and the store the application learns with:
+ * a {@link LuceneTokenizer} with the n-grams of <code>tokenizer.ngrams.words</code> and
+ * <code>tokenizer.ngrams.chars</code>, into features hashed to <code>model.hashing.bits</code>, if above
+ * <code>0</code>. Like the application, the command reads these properties from
+ * <code>config/application.properties</code> in the working directory, and from arguments
+ * <code>--name=value</code>, which take precedence. A model file records the n-grams, deltas are only applied to a
+ * model of the same n-grams.
+ *
+ * A model file keeps the length of the training file it was learned from, so the application does not learn that
+ * file again on startup. The deltas applied to a model are expected to cover the training file given, together with
+ * what the model learned before, and the model records its current length.
+ *
+ * @author konrad
+ */
+public final class DeltaCommand
+{
+
+    private static final List<String> COMMANDS = Arrays.asList("train", "merge", "apply");
+
+    private static final Path PROPERTIES_FILE = Paths.get("config", "application.properties");
+
+    private DeltaCommand()
+    {
+    }
+
+    /**
+     * Tells, whether the arguments of the application are a command of this class.
+     *
+     * @param args The arguments.
+     * @return <code>true</code>, if the first argument names a command.
+     */
+    public static boolean isCommand(String[] args)
+    {
+        return args.length > 0 && COMMANDS.contains(args[0]);
+    }
+
+    /**
+     * Runs a command.
+     *
+     * @param arguments The command followed by its arguments, and properties <code>--name=value</code>.
+     * @param out The stream to report to.
+     * @return The exit status, <code>0</code> on success.
+     * @throws IOException If a file can not be read or written.
+     */
+    public static int run(String[] arguments, PrintStream out) throws IOException
+    {
+        Properties properties = new Properties();
+        if (Files.exists(PROPERTIES_FILE)) {
+            try (InputStream in = Files.newInputStream(PROPERTIES_FILE)) {
+                properties.load(in);
+            }
+        }
+        List<String> positional = new ArrayList<>();
+        for (String argument : arguments) {
+            if (argument.startsWith("--") && argument.indexOf('=') > 2) {
+                properties.setProperty(argument.substring(2, argument.indexOf('=')),
+                        argument.substring(argument.indexOf('=') + 1));
+            } else {
+                positional.add(argument);
+            }
+        }
+        String[] args = positional.toArray(new String[positional.size()]);
+        if (!isCommand(args) || args.length < ("apply".equals(args[0]) ? 4 : 3)) {
+            out.println("Usage: train <training.tsv> <output.delta> [threads] [--name=value]...");
+            out.println("       merge <output.delta> <input.delta>...");
+            out.println("       apply <model.bin> <training.tsv> <input.delta>...");
+            return 2;
+        }
+        long start = System.nanoTime();
+        switch (args[0]) {
+            case "train":
+                train(Paths.get(args[1]), Paths.get(args[2]), (args.length > 3) ? Integer.parseInt(args[3]) : 0,
+                        properties);
+                break;
+            case "merge":
+                CountDeltaFile.write(sum(args, 2), Paths.get(args[1]));
+                break;
+            default:
+                apply(Paths.get(args[1]), Paths.get(args[2]), sum(args, 3), properties);
+                break;
+        }
+        out.printf("%s %s in %,d ms%n", args[0], args[1], (System.nanoTime() - start) / 1000000);
+        return 0;
+    }
+
+    private static void train(Path trainingFile, Path delta, int threads, Properties properties) throws IOException
+    {
+        Tokenizer tokenizer = NGramTokenizer.of(new LuceneTokenizer(),
+                intProperty(properties, "tokenizer.ngrams.words", 1),
+                intProperty(properties, "tokenizer.ngrams.chars", 0));
+        int bits = intProperty(properties, "model.hashing.bits", 0);
+        Supplier<CountStore> stores = (bits > 0) ? () -> new HashedCountStore(bits) : InternedCountStore::new;
+        try (Stream<Classification> entries = CsvFeatureDictionary.read(trainingFile, tokenizer)) {
+            new ParallelTrainer(threads, stores).train(entries).writeDelta(delta);
+        }
+    }
+
+    private static int intProperty(Properties properties, String name, int defaultValue)
+    {
+        String value = properties.getProperty(name);
+        return (value == null || value.trim().isEmpty()) ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static void apply(Path modelFile, Path trainingFile, CountStore store, Properties properties)
+            throws IOException
+    {
+        int words = intProperty(properties, "tokenizer.ngrams.words", 1);
+        int chars = intProperty(properties, "tokenizer.ngrams.chars", 0);
+        if (Files.exists(modelFile)) {
+            CountStoreFile.Header header = CountStoreFile.readHeader(modelFile);
+            if (header.getNGramWords() != words || header.getNGramChars() != chars) {
+                throw new IOException("Model file " + modelFile + " holds n-grams of " + header.getNGramWords()
+                        + " words and " + header.getNGramChars() + " chars, not " + words + " and " + chars);
+            }
+            CountStoreFile.read(modelFile, store);
+        }
+        CountStoreFile.write(store, Files.size(trainingFile), words, chars, modelFile);
+    }
+
+    /**
+     * Adds up the deltas given from the third argument on. The first delta decides, whether the sum is hashed.
+     */
+    private static CountStore sum(String[] args, int first) throws IOException
+    {
+        CountStore returnValue = CountDeltaFile.read(Paths.get(args[first]));
+        for (int i = first + 1; i < args.length; i++) {
+            CountDeltaFile.read(Paths.get(args[i]), returnValue);
+        }
+        return returnValue;
+    }
+}
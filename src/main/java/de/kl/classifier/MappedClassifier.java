@@ -0,0 +1,145 @@
+package de.kl.classifier;
+
+import de.kl.classifier.store.MappedCountStore;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * A read-only classifier working on a memory-mapped {@link MappedCountStore}. It keeps next to nothing on the heap,
+ * no matter how many features the file holds, and several processes classifying with the same file share its pages.
+ *
+ * It can not learn. As it never changes, its snapshots classify on the mapped file as well instead of copying it to
+ * the heap.
+ *
+ * @author konrad
+ */
+public class MappedClassifier extends Classifier
+{
+
+    private final MappedCountStore store;
+    private final double[] categoryLogPriors;
+
+    /**
+     * Constructs a classifier on the given store.
+     *
+     * @param store The store holding the counts.
+     */
+    public MappedClassifier(MappedCountStore store)
+    {
+        super(store);
+        this.store = store;
+        this.categoryLogPriors = super.categoryLogPriors();
+    }
+
+    /**
+     * Constructs a classifier on the given file.
+     *
+     * @param path The file written by {@link MappedCountStore#write}.
+     * @return The classifier.
+     * @throws IOException If the file can not be mapped.
+     */
+    public static MappedClassifier open(Path path) throws IOException
+    {
+        return new MappedClassifier(MappedCountStore.open(path));
+    }
+
+    /**
+     * Not supported, the classifier is read-only.
+     *
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public void learn(String category, Collection<String> features)
+    {
+        throw new UnsupportedOperationException("A mapped classifier can not learn");
+    }
+
+    /**
+     * Not supported, the classifier is read-only.
+     *
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public void learn(Classification classification)
+    {
+        throw new UnsupportedOperationException("A mapped classifier can not learn");
+    }
+
+    /**
+     * Not supported, the classifier is read-only.
+     *
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public void merge(Classifier other)
+    {
+        throw new UnsupportedOperationException("A mapped classifier can not learn");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The snapshot classifies with this classifier, which does not change anyway.
+     */
+    @Override
+    public ClassifierModel snapshot()
+    {
+        return new ClassifierModel()
+        {
+            @Override
+            public int getFeatureSize()
+            {
+                return store.featureSize();
+            }
+
+            @Override
+            public int getCategorySize()
+            {
+                return store.categorySize();
+            }
+
+            @Override
+            public int getCategoriesTotal()
+            {
+                return store.categoriesTotal();
+            }
+
+            @Override
+            String category(int categoryId)
+            {
+                return store.category(categoryId);
+            }
+
+            @Override
+            void categoryLogProbabilities(Collection<String> features, double[] logProbabilities)
+            {
+                double[] calculated = MappedClassifier.this.categoryLogProbabilities(features);
+                System.arraycopy(calculated, 0, logProbabilities, 0, logProbabilities.length);
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The priors never change, they are calculated once.
+     */
+    @Override
+    protected double[] categoryLogPriors()
+    {
+        return this.categoryLogPriors.clone();
+    }
+
+    @Override
+    protected double absentFeatureLogProbability(int featureId)
+    {
+        return absentFeatureLogProbabilityOf(this.store.featureTotal(featureId));
+    }
+
+    @Override
+    protected void updateAbsentFeatureLogProbability(int featureId)
+    {
+        // not cached
+    }
+}
@@ -0,0 +1,126 @@
+package de.kl.classifier;
+
+import de.kl.classifier.store.MappedCountStore;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a {@link MappedClassifier} on the file another process writes with {@link MappedCountStore#write}.
+ *
+ * The writer never changes the file in place but moves a new file over it, so a mapping keeps seeing the file it was
+ * made of. The file is checked in intervals and mapped again once its inode, modification time or size changed; the
+ * listeners get the new classifier. The old mapping is released when nothing uses it any more.
+ *
+ * @author konrad
+ */
+public class MappedClassifierFile implements AutoCloseable
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedClassifierFile.class);
+
+    private final Path path;
+    private final List<Consumer<? super MappedClassifier>> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService scheduler;
+    private volatile MappedClassifier classifier;
+    private List<Object> version;
+
+    /**
+     * Maps the given file.
+     *
+     * @param path The file written by {@link MappedCountStore#write}.
+     * @param reloadInterval The interval in which the file is checked for a new version, not at all if
+     * <code>0</code>.
+     * @param unit The unit of the interval.
+     * @throws IOException If the file can not be mapped.
+     */
+    public MappedClassifierFile(Path path, long reloadInterval, TimeUnit unit) throws IOException
+    {
+        this.path = path;
+        // read before mapping, so a file replaced in between is mapped again by the next check
+        this.version = version(path);
+        this.classifier = MappedClassifier.open(path);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mapped-classifier-file");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (reloadInterval > 0) {
+            this.scheduler.scheduleWithFixedDelay(this::reloadIfChanged, reloadInterval, reloadInterval, unit);
+        }
+    }
+
+    /**
+     * Retrieves the classifier on the version of the file mapped last.
+     *
+     * @return The classifier.
+     */
+    public MappedClassifier getClassifier()
+    {
+        return this.classifier;
+    }
+
+    /**
+     * Adds a listener getting the classifier each time the file is mapped again.
+     *
+     * @param listener The listener.
+     */
+    public void addListener(Consumer<? super MappedClassifier> listener)
+    {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Maps the file again, if it was replaced since it was mapped last.
+     *
+     * @return <code>true</code>, if the file was mapped again.
+     * @throws IOException If the file can not be mapped, the classifier stays on the version mapped before.
+     */
+    public synchronized boolean reload() throws IOException
+    {
+        List<Object> current = version(this.path);
+        if (current.equals(this.version)) {
+            return false;
+        }
+        MappedClassifier reloaded = MappedClassifier.open(this.path);
+        this.version = current;
+        this.classifier = reloaded;
+        LOGGER.info("Mapped {} again with {} learns.", this.path, reloaded.getCategoriesTotal());
+        this.listeners.forEach(listener -> listener.accept(reloaded));
+        return true;
+    }
+
+    /**
+     * Stops checking the file.
+     */
+    @Override
+    public void close()
+    {
+        this.scheduler.shutdownNow();
+    }
+
+    private void reloadIfChanged()
+    {
+        try {
+            this.reload();
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.warn("Could not map {} again.", this.path, ex);
+        }
+    }
+
+    private static List<Object> version(Path path) throws IOException
+    {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return Arrays.asList(attributes.fileKey(), attributes.lastModifiedTime(), attributes.size());
+    }
+}
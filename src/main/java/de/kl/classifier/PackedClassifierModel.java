@@ -0,0 +1,224 @@
+package de.kl.classifier;
+
+import de.kl.classifier.store.CountStore;
+import de.kl.classifier.store.HashedCountStore;
+import de.kl.classifier.store.PostingConsumer;
+import de.kl.classifier.store.Vocabulary;
+import de.kl.classifier.token.Tokenizer;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.ToIntFunction;
+
+/**
+ * A {@link ClassifierModel} packed into frozen arrays on the heap. Everything classifying needs is calculated once.
+ * The postings of all features are laid out back to back (compressed sparse rows): the postings of the feature with
+ * id <code>f</code> are found from <code>postingOffsets[f]</code> to <code>postingOffsets[f + 1]</code>, each one the
+ * id of a category and the difference the feature makes to the log probability of that category. The log probability
+ * a feature adds to every category alike cancels out in the normalisation and is not kept at all.
+ *
+ * The features of a {@link HashedCountStore} are not interned into a vocabulary, they are looked up by hashing them
+ * into the buckets of the store.
+ *
+ * @author konrad
+ */
+final class PackedClassifierModel extends ClassifierModel
+{
+
+    private final ToIntFunction<CharSequence> featureIds;
+    private final int featureSize;
+    private final String[] categories;
+    private final double[] categoryLogPriors;
+    private final int[] postingOffsets;
+    private final int[] postingCategories;
+    private final float[] postingCorrections;
+    private final int categoriesTotal;
+
+    private PackedClassifierModel(ToIntFunction<CharSequence> featureIds, int featureSize, String[] categories,
+            double[] categoryLogPriors, int[] postingOffsets, int[] postingCategories, float[] postingCorrections,
+            int categoriesTotal)
+    {
+        this.featureIds = featureIds;
+        this.featureSize = featureSize;
+        this.categories = categories;
+        this.categoryLogPriors = categoryLogPriors;
+        this.postingOffsets = postingOffsets;
+        this.postingCategories = postingCategories;
+        this.postingCorrections = postingCorrections;
+        this.categoriesTotal = categoriesTotal;
+    }
+
+    /**
+     * Takes a snapshot of the given store. The store may be learning concurrently: the snapshot then holds the
+     * categories known when it was started and each feature as it was when it was copied.
+     *
+     * @param store The store holding the counts.
+     * @return The snapshot.
+     */
+    static PackedClassifierModel of(CountStore store)
+    {
+        int categorySize = store.categorySize();
+        String[] categories = new String[categorySize];
+        int[] categoryCounts = new int[categorySize];
+        double[] categoryLogPriors = new double[categorySize];
+        int categoriesTotal = 0;
+        for (int categoryId = 0; categoryId < categorySize; categoryId++) {
+            categories[categoryId] = store.category(categoryId);
+            categoryCounts[categoryId] = store.categoryCount(categoryId);
+            categoriesTotal += categoryCounts[categoryId];
+        }
+        double logCategoriesTotal = Math.log(categoriesTotal);
+        for (int categoryId = 0; categoryId < categorySize; categoryId++) {
+            categoryLogPriors[categoryId] = (categoryCounts[categoryId] == 0)
+                    ? Double.NEGATIVE_INFINITY
+                    : Math.log(categoryCounts[categoryId]) - logCategoriesTotal;
+        }
+
+        int featureSize = store.featureSize();
+        PostingCollector postings = new PostingCollector(categoryCounts, featureSize);
+        if (store instanceof HashedCountStore) {
+            int bits = ((HashedCountStore) store).getBits();
+            int usedBuckets = 0;
+            for (int bucket = 0; bucket < featureSize; bucket++) {
+                postings.featureTotal = store.featureTotal(bucket);
+                store.forEachPosting(bucket, postings);
+                postings.endFeature();
+                usedBuckets += (postings.featureTotal > 0) ? 1 : 0;
+            }
+            return new PackedClassifierModel(feature -> HashedCountStore.bucket(feature, bits), usedBuckets,
+                    categories, categoryLogPriors, postings.offsets(), postings.categories(), postings.corrections(),
+                    categoriesTotal);
+        }
+        Vocabulary features = new Vocabulary(featureSize);
+        for (int featureId = 0; featureId < featureSize; featureId++) {
+            String feature = store.feature(featureId);
+            if (feature == null) {
+                // not completely registered by a concurrent learn yet
+                continue;
+            }
+            features.intern(feature);
+            postings.featureTotal = store.featureTotal(featureId);
+            store.forEachPosting(featureId, postings);
+            postings.endFeature();
+        }
+        return new PackedClassifierModel(features::id, features.size(), categories, categoryLogPriors,
+                postings.offsets(), postings.categories(), postings.corrections(), categoriesTotal);
+    }
+
+    @Override
+    public int getFeatureSize()
+    {
+        return this.featureSize;
+    }
+
+    @Override
+    public int getCategorySize()
+    {
+        return this.categories.length;
+    }
+
+    @Override
+    public int getCategoriesTotal()
+    {
+        return this.categoriesTotal;
+    }
+
+    @Override
+    String category(int categoryId)
+    {
+        return this.categories[categoryId];
+    }
+
+    @Override
+    void categoryLogProbabilities(Collection<String> features, double[] logProbabilities)
+    {
+        System.arraycopy(this.categoryLogPriors, 0, logProbabilities, 0, logProbabilities.length);
+        for (String feature : features) {
+            this.addCorrections(this.featureIds.applyAsInt(feature), logProbabilities);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Each term streamed by the tokenizer is looked up as it is, no <code>String</code> is created for it.
+     */
+    @Override
+    void categoryLogProbabilities(String text, Tokenizer tokenizer, double[] logProbabilities) throws IOException
+    {
+        System.arraycopy(this.categoryLogPriors, 0, logProbabilities, 0, logProbabilities.length);
+        tokenizer.tokenize(text, term -> this.addCorrections(this.featureIds.applyAsInt(term), logProbabilities));
+    }
+
+    private void addCorrections(int featureId, double[] logProbabilities)
+    {
+        if (featureId < 0) {
+            return;
+        }
+        int end = this.postingOffsets[featureId + 1];
+        for (int posting = this.postingOffsets[featureId]; posting < end; posting++) {
+            logProbabilities[this.postingCategories[posting]] += this.postingCorrections[posting];
+        }
+    }
+
+    /**
+     * Packs the postings of the features one after another into growing arrays.
+     */
+    private static class PostingCollector implements PostingConsumer
+    {
+
+        private final int[] categoryCounts;
+        private final int[] offsets;
+        private int[] categories;
+        private float[] corrections;
+        private int featureSize;
+        private int size;
+        private int featureTotal;
+
+        private PostingCollector(int[] categoryCounts, int expectedFeatures)
+        {
+            this.categoryCounts = categoryCounts;
+            this.offsets = new int[expectedFeatures + 1];
+            this.categories = new int[Math.max(expectedFeatures, 16)];
+            this.corrections = new float[this.categories.length];
+        }
+
+        @Override
+        public void accept(int categoryId, int count)
+        {
+            // categories added by a concurrent learn after the snapshot started are not part of it
+            if (categoryId >= this.categoryCounts.length || this.categoryCounts[categoryId] == 0) {
+                return;
+            }
+            if (this.size == this.categories.length) {
+                this.categories = Arrays.copyOf(this.categories, this.size * 2);
+                this.corrections = Arrays.copyOf(this.corrections, this.size * 2);
+            }
+            this.categories[this.size] = categoryId;
+            this.corrections[this.size] = (float) Classifier.presentFeatureCorrectionOf(this.featureTotal, count,
+                    this.categoryCounts[categoryId]);
+            this.size++;
+        }
+
+        private void endFeature()
+        {
+            this.featureSize++;
+            this.offsets[this.featureSize] = this.size;
+        }
+
+        private int[] offsets()
+        {
+            return Arrays.copyOf(this.offsets, this.featureSize + 1);
+        }
+
+        private int[] categories()
+        {
+            return Arrays.copyOf(this.categories, this.size);
+        }
+
+        private float[] corrections()
+        {
+            return Arrays.copyOf(this.corrections, this.size);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package de.kl.classifier;
+
+import de.kl.classifier.dict.FeatureDictionary;
+import de.kl.classifier.store.CountStore;
+import de.kl.classifier.store.InternedCountStore;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Learns all training texts of a dictionary on a fork-join pool of its own, to build a classifier from scratch
+ * quickly.
+ *
+ * The training file is split into ranges of lines, see {@link FeatureDictionary#streamAllFeature()}. Each range is
+ * read, tokenized and learned by one task into a partial classifier of its own, so the tasks never contend on shared
+ * counts. The partials are merged pairwise as the tasks join, each merge taking time in the vocabulary of a partial.
+ *
+ * @author konrad
+ */
+public class ParallelTrainer
+{
+
+    private final int parallelism;
+    private final Supplier<? extends CountStore> stores;
+
+    /**
+     * Constructs a trainer learning into named features.
+     *
+     * @param parallelism The number of threads learning at once, <code>0</code> for one per processor.
+     */
+    public ParallelTrainer(int parallelism)
+    {
+        this(parallelism, InternedCountStore::new);
+    }
+
+    /**
+     * Constructs a trainer.
+     *
+     * @param parallelism The number of threads learning at once, <code>0</code> for one per processor.
+     * @param stores Creates the store of each partial classifier, e.g. a
+     * {@link de.kl.classifier.store.HashedCountStore}.
+     */
+    public ParallelTrainer(int parallelism, Supplier<? extends CountStore> stores)
+    {
+        this.parallelism = (parallelism > 0) ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.stores = stores;
+    }
+
+    /**
+     * Learns all training texts of the dictionary.
+     *
+     * @param dictionary The dictionary.
+     * @return A classifier, which learned all texts. It is meant to be merged into the classifier in use, see
+     * {@link Classifier#merge(Classifier)}, and does not classify itself.
+     */
+    public Classifier train(FeatureDictionary dictionary)
+    {
+        try (Stream<Classification> entries = dictionary.streamAllFeature()) {
+            return this.train(entries);
+        }
+    }
+
+    /**
+     * Learns all training texts of a stream, which is split for parallel processing like the stream of a
+     * dictionary.
+     *
+     * @param entries The training texts.
+     * @return A classifier, which learned all texts, see {@link #train(FeatureDictionary)}.
+     */
+    public Classifier train(Stream<Classification> entries)
+    {
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+        try {
+            return pool.submit(() -> entries.parallel()
+                    .collect(() -> new PartialClassifier(this.stores.get()), Classifier::learn, Classifier::merge))
+                    .get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while training", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Learns the texts of one range. It never classifies, so it keeps none of the caches for classifying.
+     */
+    private static class PartialClassifier extends Classifier
+    {
+
+        private PartialClassifier(CountStore store)
+        {
+            super(store);
+        }
+
+        @Override
+        protected void updateAbsentFeatureLogProbability(int featureId)
+        {
+            // not cached
+        }
+
+        @Override
+        protected void updateCategoryLogCount(int categoryId)
+        {
+            // not cached
+        }
+    }
+}
@@ -7,86 +7,201 @@ package de.kl.classifier.dict;
 
 import de.kl.classifier.Classification;
 import de.kl.classifier.token.Tokenizer;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.io.UncheckedIOException;
-import java.io.Writer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 /**
+ * Keeps the training texts in a tab separated file, one text per line after its category. New texts are appended
+ * through a {@link TrainingJournal}, so concurrent trainers share the writes instead of opening the file each. The
+ * texts are not kept in memory, they are streamed from the file whenever they are needed.
  *
  * @author konrad
  */
 @Component
-public class CsvFeatureDictionary implements FeatureDictionary
+public class CsvFeatureDictionary implements FeatureDictionary, AutoCloseable
 {
 
-    List<Classification> dictionary = new ArrayList<>();
-    private final String trainingFile;
+    private final Path trainingFile;
     private final Tokenizer tokenizer;
+    private final TrainingJournal journal;
+    private int added;
 
+    /**
+     * Constructs the dictionary and opens its journal.
+     *
+     * @param trainingFile The training file, created if it does not exist.
+     * @param tokenizer The tokenizer of the texts.
+     * @param syncRecords The number of texts after which the training file is forced to the disk.
+     * @param syncInterval The milliseconds after which new texts are forced to the disk.
+     * @throws IOException If the training file can not be opened.
+     */
+    public CsvFeatureDictionary(String trainingFile, Tokenizer tokenizer, int syncRecords, long syncInterval)
+            throws IOException
+    {
+        this(trainingFile, tokenizer, syncRecords, syncInterval, false);
+    }
+
+    /**
+     * Constructs the dictionary and opens its journal, unless it is read-only. A read-only dictionary is used when
+     * another process owns the training file, like with a mapped classifier, and does not add texts.
+     *
+     * @param trainingFile The training file, created if it does not exist and the dictionary is not read-only.
+     * @param tokenizer The tokenizer of the texts.
+     * @param syncRecords The number of texts after which the training file is forced to the disk.
+     * @param syncInterval The milliseconds after which new texts are forced to the disk.
+     * @param readOnly Whether texts can not be added.
+     * @throws IOException If the training file can not be opened.
+     */
     @Autowired
     public CsvFeatureDictionary(
             @Value("${training.file}") String trainingFile,
-            Tokenizer tokenizer
+            Tokenizer tokenizer,
+            @Value("${training.journal.sync.records:1000}") int syncRecords,
+            @Value("${training.journal.sync.interval:1000}") long syncInterval,
+            @Value("${model.mapped:false}") boolean readOnly
     ) throws IOException
     {
         this.tokenizer = tokenizer;
-        this.trainingFile = trainingFile;
-        File file = new File(trainingFile);
-        if (!file.exists()) {
-            file.createNewFile();
+        this.trainingFile = Paths.get(trainingFile);
+        this.journal = readOnly ? null
+                : new TrainingJournal(this.trainingFile, syncRecords, syncInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The call waits until the text is written. Texts added by concurrent calls are written together.
+     *
+     * @throws UnsupportedOperationException If the dictionary is read-only.
+     */
+    @Override
+    public int addFeature(String feature, String category)
+    {
+        if (this.journal == null) {
+            throw new UnsupportedOperationException("Training file " + this.trainingFile + " is read-only");
         }
-        try (Stream<String> stream = Files.lines(Paths.get(trainingFile))) {
-            stream.forEach(line -> {
-                try {
-                    process(line);
-                } catch (IOException ex) {
-                    throw new UncheckedIOException(ex);
-                }
-            });
+        CompletableFuture<Void> written;
+        int returnValue;
+        synchronized (this) {
+            written = this.journal.append(category + "\t" + toLine(feature));
+            returnValue = ++this.added;
+        }
+        try {
+            TrainingJournal.await(written);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not add a text of " + category + " to " + this.trainingFile, ex);
         }
+        return returnValue;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The stream reads the training file as it was when the method was called, a block at a time, and tokenizes each
+     * line when it is reached. Run in parallel, it splits the file into ranges of lines read independently.
+     */
     @Override
-    public int addFeature(String feature, String category)
+    public Stream<Classification> streamAllFeature()
     {
+        FileChannel channel;
+        long size;
         try {
-            Classification classification = new Classification(this.tokenizer.tokenize(feature), category);
-            this.dictionary.add(classification);
-            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
-                    new FileOutputStream(trainingFile, true), "UTF-8"))) {
-                writer.append(category + "\t" + feature.replace("\t", " ")+ "\n");
+            synchronized (this) {
+                // texts added before have to be in the file, and no other text is written while this lock is held
+                if (this.journal != null) {
+                    this.journal.flush();
+                }
+                size = Files.size(this.trainingFile);
             }
+            channel = FileChannel.open(this.trainingFile, StandardOpenOption.READ);
         } catch (IOException ex) {
-            System.out.println(ex.getMessage());
+            throw new UncheckedIOException(ex);
+        }
+        return stream(channel, size, this.tokenizer);
+    }
+
+    /**
+     * Streams the texts of a training file without opening it for writing, like
+     * {@link #streamAllFeature()} does, e.g. to learn a shard of the training data in another process.
+     *
+     * @param trainingFile The training file.
+     * @param tokenizer The tokenizer of the texts.
+     * @return The texts of the file as it was when the method was called. The stream has to be closed.
+     * @throws IOException If the file can not be opened.
+     */
+    public static Stream<Classification> read(Path trainingFile, Tokenizer tokenizer) throws IOException
+    {
+        FileChannel channel = FileChannel.open(trainingFile, StandardOpenOption.READ);
+        try {
+            return stream(channel, channel.size(), tokenizer);
+        } catch (RuntimeException ex) {
+            channel.close();
+            throw ex;
         }
-        return this.dictionary.size();
     }
 
+    private static Stream<Classification> stream(FileChannel channel, long size, Tokenizer tokenizer)
+    {
+        return StreamSupport.stream(new TrainingFileSpliterator(channel, 0, size), false)
+                .filter(line -> !line.isEmpty())
+                .map(line -> process(line, tokenizer))
+                .onClose(() -> {
+                    try {
+                        channel.close();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+    }
+
+    /**
+     * Writes the texts added and closes the journal.
+     *
+     * @throws IOException If the texts could not be written.
+     */
     @Override
-    public List<Classification> getAllFeature()
+    public void close() throws IOException
+    {
+        if (this.journal != null) {
+            this.journal.close();
+        }
+    }
+
+    /**
+     * Replaces the characters separating the columns and lines of the training file.
+     */
+    private static String toLine(String feature)
+    {
+        return feature.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static Collection<String> tokenize(String feature, Tokenizer tokenizer)
     {
-        
-        return this.dictionary;
+        try {
+            return tokenizer.tokenize(feature);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
     }
 
-    private void process(String line) throws IOException
+    private static Classification process(String line, Tokenizer tokenizer)
     {
         String category = line.substring(0, line.indexOf('\t'));
         String feature = line.substring(line.indexOf('\t')+1);
-        Classification classification = new Classification(this.tokenizer.tokenize(feature), category);
-        this.dictionary.add(classification);
+        return new Classification(tokenize(feature, tokenizer), category);
     }
 
 }
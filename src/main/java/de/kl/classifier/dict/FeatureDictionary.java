@@ -7,6 +7,8 @@ package de.kl.classifier.dict;
 
 import de.kl.classifier.Classification;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  *
@@ -14,7 +16,34 @@ import java.util.List;
  */
 public interface FeatureDictionary
 {
+    /**
+     * Adds a training text.
+     *
+     * @param feature The text.
+     * @param category The category of the text.
+     * @return The number of texts added since the dictionary was opened.
+     * @throws java.io.UncheckedIOException If the text could not be written.
+     */
     public int addFeature(String feature, String category);
-    
-    public List<Classification> getAllFeature();
+
+    /**
+     * Streams all training texts, tokenized, in the order they were added. The texts are read lazily, so they never
+     * have to be in memory all at once. The stream has to be closed.
+     *
+     * @return The stream of the texts.
+     */
+    public Stream<Classification> streamAllFeature();
+
+    /**
+     * Collects all training texts into a list. The list holds the whole training data in memory, so
+     * {@link #streamAllFeature()} is to be preferred if the texts are needed once.
+     *
+     * @return The texts, in the order they were added.
+     */
+    public default List<Classification> getAllFeature()
+    {
+        try (Stream<Classification> stream = this.streamAllFeature()) {
+            return stream.collect(Collectors.toList());
+        }
+    }
 }
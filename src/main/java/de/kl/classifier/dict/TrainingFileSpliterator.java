@@ -0,0 +1,204 @@
+package de.kl.classifier.dict;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Reads the lines of a range of the training file, decoded as UTF-8, without loading more than a block at once.
+ *
+ * The range is fixed when the spliterator is created, so lines appended meanwhile are not read, not even in part. It
+ * splits into two halves of the remaining bytes, the second one starting after the first line break past the middle,
+ * so a parallel stream reads and processes the halves independently. All spliterators of a file share its channel,
+ * they only use positional reads.
+ *
+ * @author konrad
+ */
+final class TrainingFileSpliterator implements Spliterator<String>
+{
+
+    private static final byte NEWLINE = '\n';
+
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    /**
+     * The fewest remaining bytes split further, smaller ranges are not worth a task of their own.
+     */
+    private static final long MIN_SPLIT = 1 << 20;
+
+    private final FileChannel channel;
+    private long end;
+    private byte[] block;
+
+    /**
+     * The position of the block in the file.
+     */
+    private long blockStart;
+    private int blockLength;
+    private int index;
+
+    /**
+     * The start of a line continuing beyond the block.
+     */
+    private byte[] line = new byte[0];
+    private int lineLength;
+
+    /**
+     * Constructs a spliterator of the lines in the given range of the file. The range has to start at the beginning
+     * of a line.
+     *
+     * @param channel The channel of the file.
+     * @param start The position of the first byte.
+     * @param end The position after the last byte.
+     */
+    TrainingFileSpliterator(FileChannel channel, long start, long end)
+    {
+        this.channel = channel;
+        this.blockStart = start;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super String> action)
+    {
+        this.lineLength = 0;
+        while (true) {
+            if (this.index == this.blockLength && !this.read()) {
+                // the last line of the range has no line break
+                if (this.lineLength == 0) {
+                    return false;
+                }
+                action.accept(new String(this.line, 0, this.lineLength, StandardCharsets.UTF_8));
+                this.lineLength = 0;
+                return true;
+            }
+            int newline = this.index;
+            while (newline < this.blockLength && this.block[newline] != NEWLINE) {
+                newline++;
+            }
+            if (newline < this.blockLength) {
+                String returnValue;
+                if (this.lineLength == 0) {
+                    returnValue = new String(this.block, this.index, newline - this.index, StandardCharsets.UTF_8);
+                } else {
+                    this.appendToLine(newline);
+                    returnValue = new String(this.line, 0, this.lineLength, StandardCharsets.UTF_8);
+                }
+                this.index = newline + 1;
+                action.accept(returnValue);
+                return true;
+            }
+            this.appendToLine(this.blockLength);
+            this.index = this.blockLength;
+        }
+    }
+
+    @Override
+    public Spliterator<String> trySplit()
+    {
+        long position = this.blockStart + this.index;
+        if (this.end - position < MIN_SPLIT) {
+            return null;
+        }
+        long split = this.nextLine(position + (this.end - position) / 2);
+        if (split >= this.end) {
+            return null;
+        }
+        // the spliterator returned covers the part before the split, so the order stays the same
+        TrainingFileSpliterator returnValue = new TrainingFileSpliterator(this.channel, position, split);
+        returnValue.block = this.block;
+        returnValue.blockStart = this.blockStart;
+        returnValue.blockLength = (int) Math.min(this.blockLength, split - this.blockStart);
+        returnValue.index = this.index;
+        this.block = null;
+        this.blockStart = split;
+        this.blockLength = 0;
+        this.index = 0;
+        return returnValue;
+    }
+
+    /**
+     * Estimates the number of lines as the number of remaining bytes, which is an upper bound.
+     *
+     * @return The number of remaining bytes.
+     */
+    @Override
+    public long estimateSize()
+    {
+        return this.end - this.blockStart - this.index;
+    }
+
+    @Override
+    public int characteristics()
+    {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+    private boolean read()
+    {
+        this.blockStart += this.blockLength;
+        this.blockLength = 0;
+        this.index = 0;
+        int length = (int) Math.min(BLOCK_SIZE, this.end - this.blockStart);
+        if (length <= 0) {
+            return false;
+        }
+        if (this.block == null) {
+            this.block = new byte[BLOCK_SIZE];
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(this.block, 0, length);
+        try {
+            while (buffer.hasRemaining()) {
+                if (this.channel.read(buffer, this.blockStart + buffer.position()) < 0) {
+                    break;
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        this.blockLength = buffer.position();
+        return this.blockLength > 0;
+    }
+
+    private void appendToLine(int to)
+    {
+        int length = to - this.index;
+        if (this.lineLength + length > this.line.length) {
+            this.line = Arrays.copyOf(this.line, Math.max(this.lineLength + length, this.line.length * 2));
+        }
+        System.arraycopy(this.block, this.index, this.line, this.lineLength, length);
+        this.lineLength += length;
+    }
+
+    /**
+     * Finds the start of the first line after the given position.
+     */
+    private long nextLine(long position)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long start = position;
+        try {
+            while (start < this.end) {
+                buffer.clear();
+                int length = this.channel.read(buffer, start);
+                if (length <= 0) {
+                    break;
+                }
+                for (int i = 0; i < length; i++) {
+                    if (buffer.get(i) == NEWLINE) {
+                        return start + i + 1;
+                    }
+                }
+                start += length;
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return this.end;
+    }
+}
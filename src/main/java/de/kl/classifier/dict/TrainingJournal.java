@@ -0,0 +1,348 @@
+package de.kl.classifier.dict;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only file of records, one per line, kept open for the lifetime of the application.
+ *
+ * Records are appended by any number of threads but written by a single writer thread, in the order they were
+ * appended. The writer takes all records waiting at once and writes them with one system call (group commit), so the
+ * more threads append, the more records share a write. The records are forced to the disk once
+ * <code>syncRecords</code> records were written since the last time, or <code>syncInterval</code> has passed: a crash
+ * of the machine loses at most that many records, a crash of the process none that were written.
+ *
+ * A crash in the middle of a write may leave a torn last record without its line break. It is cut off when the
+ * journal is opened again. A write that fails is cut off right away, and all records written with it fail, even those
+ * written before the failure. If the file can not be cut back, the writer stops.
+ *
+ * Once the journal is closed, or its writer stopped because it was interrupted, no record is accepted any more, and
+ * every record still waiting is completed exceptionally, so nobody waits for a record that is never written.
+ *
+ * @author konrad
+ */
+public class TrainingJournal implements AutoCloseable
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TrainingJournal.class);
+
+    private static final byte NEWLINE = '\n';
+
+    /**
+     * The largest number of records written at once.
+     */
+    private static final int MAX_BATCH = 4096;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int syncRecords;
+    private final long syncIntervalNanos;
+    private final BlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * Appended on close, the writer stops after writing it.
+     */
+    private final Record end = new Record(new byte[0]);
+    private final Thread writer;
+
+    /**
+     * Whether records are no longer accepted, guarded by the queue, so no record is queued after the writer stopped.
+     */
+    private boolean closed;
+    private boolean closeCalled;
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private int unsyncedRecords;
+    private long lastSync = System.nanoTime();
+
+    /**
+     * Opens the journal, cutting off a torn last record, and starts its writer.
+     *
+     * @param path The file of the journal, created if it does not exist.
+     * @param syncRecords The number of records after which the file is forced to the disk, <code>1</code> for every
+     * write.
+     * @param syncInterval The time after which written records are forced to the disk.
+     * @param unit The unit of the time.
+     * @throws IOException If the file can not be opened.
+     */
+    public TrainingJournal(Path path, int syncRecords, long syncInterval, TimeUnit unit) throws IOException
+    {
+        this.path = path;
+        this.syncRecords = Math.max(syncRecords, 1);
+        this.syncIntervalNanos = unit.toNanos(syncInterval);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.recover();
+        this.writer = new Thread(this::write, "training-journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Appends a record. It is written after all records appended before.
+     *
+     * @param record The record, without line break.
+     * @return Completes when the record is written, or exceptionally if it could not be written.
+     * @throws IllegalStateException If the journal is closed.
+     */
+    public CompletableFuture<Void> append(String record)
+    {
+        Record returnValue = new Record((record + "\n").getBytes(StandardCharsets.UTF_8));
+        this.enqueue(returnValue);
+        return returnValue.written;
+    }
+
+    /**
+     * Waits until all records appended so far are written.
+     *
+     * @throws IOException If a record could not be written.
+     * @throws IllegalStateException If the journal is closed.
+     */
+    public void flush() throws IOException
+    {
+        Record marker = new Record(new byte[0]);
+        this.enqueue(marker);
+        await(marker.written);
+    }
+
+    /**
+     * Writes all records appended, forces them to the disk and closes the file. Records appended after closing
+     * started are rejected.
+     *
+     * @throws IOException If the records could not be written.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        boolean writing;
+        synchronized (this.queue) {
+            if (this.closeCalled) {
+                return;
+            }
+            this.closeCalled = true;
+            writing = !this.closed;
+            this.closed = true;
+            if (writing) {
+                this.queue.add(this.end);
+            }
+        }
+        try {
+            if (writing) {
+                await(this.end.written);
+            }
+            this.writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    private void enqueue(Record record)
+    {
+        synchronized (this.queue) {
+            if (this.closed) {
+                throw new IllegalStateException("Journal " + this.path + " is closed");
+            }
+            this.queue.add(record);
+        }
+    }
+
+    /**
+     * Waits for a record to be written.
+     *
+     * @param written The future of the record.
+     * @throws IOException If the record could not be written.
+     */
+    static void await(CompletableFuture<Void> written) throws IOException
+    {
+        try {
+            written.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    private void recover() throws IOException
+    {
+        long size = this.channel.size();
+        long end = size;
+        ByteBuffer tail = ByteBuffer.allocate(8192);
+        while (end > 0) {
+            int length = (int) Math.min(tail.capacity(), end);
+            tail.clear().limit(length);
+            this.channel.read(tail, end - length);
+            int newline = length - 1;
+            while (newline >= 0 && tail.get(newline) != NEWLINE) {
+                newline--;
+            }
+            if (newline >= 0) {
+                end = end - length + newline + 1;
+                break;
+            }
+            end -= length;
+        }
+        if (end < size) {
+            LOGGER.warn("Cut off a torn record of {} bytes at the end of {}.", size - end, this.path);
+            this.channel.truncate(end);
+        }
+        this.channel.position(end);
+    }
+
+    private void write()
+    {
+        try {
+            this.writeUntilEnd();
+        } finally {
+            List<Record> remaining = new ArrayList<>();
+            synchronized (this.queue) {
+                this.closed = true;
+                this.queue.drainTo(remaining);
+            }
+            if (!remaining.isEmpty()) {
+                IOException ex = new IOException("The writer of journal " + this.path + " stopped");
+                LOGGER.warn("Discarding {} records not written to {}.", remaining.size(), this.path, ex);
+                remaining.forEach(record -> record.written.completeExceptionally(ex));
+            }
+        }
+    }
+
+    private void writeUntilEnd()
+    {
+        List<Record> batch = new ArrayList<>();
+        boolean ended = false;
+        while (!ended) {
+            Record first;
+            try {
+                first = this.queue.poll(Math.max(this.syncIntervalNanos, 1), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                LOGGER.warn("The writer of journal {} was interrupted.", this.path);
+                return;
+            }
+            if (first != null) {
+                batch.add(first);
+                this.queue.drainTo(batch, MAX_BATCH - 1);
+                ended = batch.contains(this.end);
+                if (!this.writeBatch(batch, ended)) {
+                    return;
+                }
+                batch.clear();
+            } else {
+                try {
+                    // nothing appended for a while, force what was written before the interval passes again
+                    this.sync(false);
+                } catch (IOException ex) {
+                    LOGGER.warn("Could not force {} to the disk.", this.path, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of records. If it can not be written or forced, the file is cut back to where the batch started,
+     * so no part of it is left in the file, and all of its records fail.
+     *
+     * @return <code>false</code> if the file could not be cut back, it can not be written any more.
+     */
+    private boolean writeBatch(List<Record> batch, boolean force)
+    {
+        long start = -1;
+        int unsynced = this.unsyncedRecords;
+        try {
+            start = this.channel.position();
+            this.buffer.clear();
+            int records = 0;
+            for (Record record : batch) {
+                if (record.bytes.length > this.buffer.remaining()) {
+                    this.writeBuffer();
+                    if (record.bytes.length > this.buffer.capacity()) {
+                        this.buffer = ByteBuffer.allocate(Integer.highestOneBit(record.bytes.length) << 1);
+                    }
+                }
+                this.buffer.put(record.bytes);
+                records += (record.bytes.length > 0) ? 1 : 0;
+            }
+            this.writeBuffer();
+            this.unsyncedRecords += records;
+            this.sync(force || this.unsyncedRecords >= this.syncRecords);
+            batch.forEach(record -> record.written.complete(null));
+            return true;
+        } catch (IOException ex) {
+            LOGGER.warn("Could not write {} records to {}.", batch.size(), this.path, ex);
+            // cut the batch off before its records fail, so a record reported as failed is never read back
+            boolean writable = this.rollback(start, unsynced);
+            batch.forEach(record -> record.written.completeExceptionally(ex));
+            return writable;
+        }
+    }
+
+    private boolean rollback(long start, int unsynced)
+    {
+        if (start < 0) {
+            LOGGER.error("Lost the position of journal {}, no more records are written.", this.path);
+            return false;
+        }
+        try {
+            this.channel.truncate(start);
+            this.channel.position(start);
+            this.unsyncedRecords = unsynced;
+            return true;
+        } catch (IOException ex) {
+            LOGGER.error("Could not cut journal {} back to {} bytes, no more records are written.", this.path, start,
+                    ex);
+            return false;
+        }
+    }
+
+    private void writeBuffer() throws IOException
+    {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+    private void sync(boolean force) throws IOException
+    {
+        if (this.unsyncedRecords == 0) {
+            return;
+        }
+        if (!force && System.nanoTime() - this.lastSync < this.syncIntervalNanos) {
+            return;
+        }
+        this.channel.force(false);
+        this.unsyncedRecords = 0;
+        this.lastSync = System.nanoTime();
+    }
+
+    /**
+     * A record waiting to be written.
+     */
+    private static class Record
+    {
+
+        private final byte[] bytes;
+        private final CompletableFuture<Void> written = new CompletableFuture<>();
+
+        private Record(byte[] bytes)
+        {
+            this.bytes = bytes;
+        }
+    }
+}
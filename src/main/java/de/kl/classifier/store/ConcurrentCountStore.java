@@ -0,0 +1,341 @@
+package de.kl.classifier.store;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe {@link CountStore}, so many trainers and readers can work on the same counts in parallel.
+ *
+ * There is no global lock. Features and categories are interned through a <code>ConcurrentHashMap</code>, and all
+ * per-id data lives in fixed size pages that never move once allocated, so growing the store never blocks or loses
+ * an update. The posting list of a feature is an exact-length <code>int[]</code> holding the feature total followed
+ * by the sorted <code>(category id, count)</code> pairs. Increments of a feature are serialised by one of a set of
+ * striped locks, adding a category to a posting list replaces the array (copy-on-write). Readers never lock: they
+ * read the current array once and see a consistent list. A count incremented in place may lag behind a concurrent
+ * increment, but is never torn. Category counts are atomic, the category total is a <code>LongAdder</code>.
+ *
+ * @author konrad
+ */
+public class ConcurrentCountStore implements CountStore
+{
+
+    private static final int PAGE_BITS = 14;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    /**
+     * Number of pages the directories can hold, which limits the number of ids to 2^31.
+     */
+    private static final int MAX_PAGES = 1 << (31 - PAGE_BITS);
+
+    /**
+     * Number of locks striped over the features. A power of two.
+     */
+    private static final int LOCK_STRIPES = 1024;
+
+    /**
+     * The posting list of a feature without any counts: a total of <code>0</code> and no pairs.
+     */
+    private static final int[] NO_POSTINGS = new int[1];
+
+    private final ConcurrentMap<String, Integer> featureIds = new ConcurrentHashMap<>(1024);
+    private final ConcurrentMap<String, Integer> categoryIds = new ConcurrentHashMap<>(16);
+    private final AtomicInteger featureSize = new AtomicInteger();
+    private final Object categoryLock = new Object();
+    private volatile int categorySize;
+    private final AtomicReferenceArray<FeaturePage> featurePages = new AtomicReferenceArray<>(MAX_PAGES);
+    private final AtomicReferenceArray<CategoryPage> categoryPages = new AtomicReferenceArray<>(MAX_PAGES);
+    private final LongAdder categoriesTotal = new LongAdder();
+    private final Object[] locks;
+
+    /**
+     * Whether the features have names, otherwise their pages have no room for them.
+     */
+    private final boolean named;
+
+    /**
+     * Constructs an empty store.
+     */
+    public ConcurrentCountStore()
+    {
+        this(true);
+    }
+
+    private ConcurrentCountStore(boolean named)
+    {
+        this.named = named;
+        this.locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            this.locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Constructs an empty store with the feature ids from <code>0</code> to the given size registered up front,
+     * without names. It is meant for subclasses mapping features to ids by themselves, which have to override the
+     * lookup of features by name. No room is allocated for the names of the features.
+     *
+     * @param featureSize The number of feature ids to register.
+     */
+    protected ConcurrentCountStore(int featureSize)
+    {
+        this(false);
+        for (int featureId = 0; featureId < featureSize; featureId++) {
+            featurePage(featureId).postings.set(featureId & PAGE_MASK, NO_POSTINGS);
+        }
+        this.featureSize.set(featureSize);
+    }
+
+    @Override
+    public int featureId(String feature)
+    {
+        Integer id = this.featureIds.get(feature);
+        return (id == null) ? -1 : id;
+    }
+
+    @Override
+    public int internFeature(String feature)
+    {
+        Integer id = this.featureIds.get(feature);
+        if (id == null) {
+            id = this.featureIds.computeIfAbsent(feature, key -> {
+                int newId = this.featureSize.getAndIncrement();
+                FeaturePage page = featurePage(newId);
+                // the postings before the name, so a reader seeing the name can read the postings
+                page.postings.set(newId & PAGE_MASK, NO_POSTINGS);
+                page.names.set(newId & PAGE_MASK, key);
+                return newId;
+            });
+        }
+        return id;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * A concurrent learn may have handed out an id without having registered the feature yet.
+     */
+    @Override
+    public String feature(int featureId)
+    {
+        FeaturePage page = this.featurePages.get(featureId >>> PAGE_BITS);
+        return (page == null || page.names == null) ? null : page.names.get(featureId & PAGE_MASK);
+    }
+
+    @Override
+    public int featureSize()
+    {
+        return this.featureSize.get();
+    }
+
+    @Override
+    public int categoryId(String category)
+    {
+        Integer id = this.categoryIds.get(category);
+        return (id == null) ? -1 : id;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * New categories are rare, they are registered under a lock, so the ids up to {@link #categorySize()} are always
+     * completely set up.
+     */
+    @Override
+    public int internCategory(String category)
+    {
+        Integer id = this.categoryIds.get(category);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this.categoryLock) {
+            id = this.categoryIds.get(category);
+            if (id == null) {
+                id = this.categorySize;
+                categoryPage(id).names.set(id & PAGE_MASK, category);
+                this.categoryIds.put(category, id);
+                this.categorySize = id + 1;
+            }
+            return id;
+        }
+    }
+
+    @Override
+    public String category(int categoryId)
+    {
+        return this.categoryPages.get(categoryId >>> PAGE_BITS).names.get(categoryId & PAGE_MASK);
+    }
+
+    @Override
+    public int categorySize()
+    {
+        return this.categorySize;
+    }
+
+    @Override
+    public Set<String> features()
+    {
+        return Collections.unmodifiableSet(this.featureIds.keySet());
+    }
+
+    @Override
+    public Set<String> categories()
+    {
+        return Collections.unmodifiableSet(this.categoryIds.keySet());
+    }
+
+    @Override
+    public void incrementFeature(int featureId, int categoryId)
+    {
+        this.addFeatureCount(featureId, categoryId, 1);
+    }
+
+    @Override
+    public void incrementCategory(int categoryId)
+    {
+        this.addCategoryCount(categoryId, 1);
+    }
+
+    @Override
+    public void addFeatureCount(int featureId, int categoryId, int count)
+    {
+        AtomicReferenceArray<int[]> postings = this.featurePages.get(featureId >>> PAGE_BITS).postings;
+        int offset = featureId & PAGE_MASK;
+        synchronized (this.locks[featureId & (LOCK_STRIPES - 1)]) {
+            int[] list = postings.get(offset);
+            int index = search(list, categoryId);
+            if (index >= 0) {
+                list[index * 2 + 2] += count;
+                list[0] += count;
+            } else {
+                index = -index - 1;
+                int[] newList = new int[list.length + 2];
+                newList[0] = list[0] + count;
+                System.arraycopy(list, 1, newList, 1, index * 2);
+                newList[index * 2 + 1] = categoryId;
+                newList[index * 2 + 2] = count;
+                System.arraycopy(list, index * 2 + 1, newList, index * 2 + 3, list.length - index * 2 - 1);
+                list = newList;
+            }
+            // publishing the list again, even if it was updated in place, makes the new counts visible to readers
+            postings.set(offset, list);
+        }
+    }
+
+    @Override
+    public void addCategoryCount(int categoryId, int count)
+    {
+        this.categoriesTotal.add(count);
+        this.categoryPages.get(categoryId >>> PAGE_BITS).counts.addAndGet(categoryId & PAGE_MASK, count);
+    }
+
+    @Override
+    public int featureCount(int featureId, int categoryId)
+    {
+        int[] list = postings(featureId);
+        int index = search(list, categoryId);
+        return (index < 0) ? 0 : list[index * 2 + 2];
+    }
+
+    @Override
+    public void forEachPosting(int featureId, PostingConsumer consumer)
+    {
+        int[] list = postings(featureId);
+        for (int i = 1; i < list.length; i += 2) {
+            consumer.accept(list[i], list[i + 1]);
+        }
+    }
+
+    @Override
+    public int featureTotal(int featureId)
+    {
+        return postings(featureId)[0];
+    }
+
+    @Override
+    public int categoryCount(int categoryId)
+    {
+        return this.categoryPages.get(categoryId >>> PAGE_BITS).counts.get(categoryId & PAGE_MASK);
+    }
+
+    @Override
+    public int categoriesTotal()
+    {
+        return (int) this.categoriesTotal.sum();
+    }
+
+    private int[] postings(int featureId)
+    {
+        return this.featurePages.get(featureId >>> PAGE_BITS).postings.get(featureId & PAGE_MASK);
+    }
+
+    private FeaturePage featurePage(int featureId)
+    {
+        int index = featureId >>> PAGE_BITS;
+        FeaturePage page = this.featurePages.get(index);
+        if (page == null) {
+            this.featurePages.compareAndSet(index, null, new FeaturePage(this.named));
+            page = this.featurePages.get(index);
+        }
+        return page;
+    }
+
+    private CategoryPage categoryPage(int categoryId)
+    {
+        int index = categoryId >>> PAGE_BITS;
+        CategoryPage page = this.categoryPages.get(index);
+        if (page == null) {
+            page = new CategoryPage();
+            this.categoryPages.set(index, page);
+        }
+        return page;
+    }
+
+    /**
+     * Binary search for a category in a posting list.
+     *
+     * @return The index of the pair, or <code>-(insertion point) - 1</code> if the category is not in the list.
+     */
+    private static int search(int[] list, int categoryId)
+    {
+        int low = 0;
+        int high = (list.length - 1) / 2 - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int current = list[middle * 2 + 1];
+            if (current < categoryId) {
+                low = middle + 1;
+            } else if (current > categoryId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static class FeaturePage
+    {
+
+        private final AtomicReferenceArray<String> names;
+        private final AtomicReferenceArray<int[]> postings = new AtomicReferenceArray<>(PAGE_SIZE);
+
+        private FeaturePage(boolean named)
+        {
+            this.names = named ? new AtomicReferenceArray<>(PAGE_SIZE) : null;
+        }
+    }
+
+    private static class CategoryPage
+    {
+
+        private final AtomicReferenceArray<String> names = new AtomicReferenceArray<>(PAGE_SIZE);
+        private final AtomicIntegerArray counts = new AtomicIntegerArray(PAGE_SIZE);
+    }
+}
@@ -0,0 +1,311 @@
+package de.kl.classifier.store;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reads and writes the counts a {@link CountStore} learned as a compact delta, to be added to the counts of another
+ * store. Shards of the training data are learned independently, by threads, processes or machines, each into a delta,
+ * and the deltas are added up into one model afterwards. Adding is commutative, so the order of the deltas does not
+ * matter, and adding a delta takes time in its vocabulary, not in the number of texts it was learned from.
+ *
+ * Unlike a {@link CountStoreFile}, a delta leaves out every feature without counts, and all numbers are written as
+ * variable-length integers of 7 bits per byte, category ids and buckets as the gap to the previous one:
+ *
+ * <pre>
+ * int     magic "XTBD"
+ * int     version
+ * int     bits of a {@link HashedCountStore}, 0 if the features are named
+ * varint  number of categories
+ *         per category: string name, varint count
+ *         per feature with counts: varint number of postings,
+ *                                  string name, or varint gap to the previous bucket if hashed,
+ *                                  per posting: varint gap to the previous category id, varint count
+ * varint  0, the end of the features
+ * long    CRC-32 of everything before
+ * </pre>
+ *
+ * Strings are written as their length in bytes followed by their UTF-8 bytes. Like a count file, a delta is written
+ * to a temporary file first, forced to the disk and moved into place, and checked against its checksum before anything is added.
+ *
+ * @author konrad
+ */
+public final class CountDeltaFile
+{
+
+    private static final int MAGIC = 0x58544244;
+    private static final int VERSION = 1;
+
+    /**
+     * Length of the checksum at the end of the file.
+     */
+    private static final int CHECKSUM_LENGTH = 8;
+
+    private CountDeltaFile()
+    {
+    }
+
+    /**
+     * Writes the counts of the given store as a delta. The store should not learn while it is written.
+     *
+     * @param store The store to write.
+     * @param path The file to write.
+     * @throws IOException If the file can not be written.
+     */
+    public static void write(CountStore store, Path path) throws IOException
+    {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32 checksum = new CRC32();
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream file = Channels.newOutputStream(channel);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(file, checksum), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            int bits = (store instanceof HashedCountStore) ? ((HashedCountStore) store).getBits() : 0;
+            out.writeInt(bits);
+            int categorySize = store.categorySize();
+            writeVarInt(out, categorySize);
+            for (int categoryId = 0; categoryId < categorySize; categoryId++) {
+                writeString(out, store.category(categoryId));
+                writeVarInt(out, store.categoryCount(categoryId));
+            }
+            int featureSize = store.featureSize();
+            PostingWriter postings = new PostingWriter(categorySize);
+            int previousBucket = -1;
+            for (int featureId = 0; featureId < featureSize; featureId++) {
+                String feature = store.feature(featureId);
+                if (store.featureTotal(featureId) == 0 || (bits == 0 && feature == null)) {
+                    continue;
+                }
+                postings.reset();
+                store.forEachPosting(featureId, postings);
+                if (postings.size == 0) {
+                    continue;
+                }
+                writeVarInt(out, postings.size);
+                if (bits > 0) {
+                    writeVarInt(out, featureId - previousBucket);
+                    previousBucket = featureId;
+                } else {
+                    writeString(out, feature);
+                }
+                out.write(postings.bytes, 0, postings.length);
+            }
+            writeVarInt(out, 0);
+            out.flush();
+            new DataOutputStream(file).writeLong(checksum.getValue());
+            channel.force(true);
+        }
+        CountStoreFile.replace(temporary, path);
+    }
+
+    /**
+     * Reads a delta into a new store: a {@link HashedCountStore} of the same size, if the delta is hashed, or an
+     * {@link InternedCountStore} otherwise.
+     *
+     * @param path The file to read.
+     * @return The store holding the counts of the delta.
+     * @throws IOException If the file can not be read, is of another version or is corrupt.
+     */
+    public static CountStore read(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = map(path, channel);
+            int bits = buffer.getInt(8);
+            CountStore returnValue = (bits > 0) ? new HashedCountStore(bits) : new InternedCountStore();
+            add(path, buffer, returnValue);
+            return returnValue;
+        }
+    }
+
+    /**
+     * Adds the counts of a delta to the given store.
+     *
+     * @param path The file to read.
+     * @param store The store to add to.
+     * @throws IOException If the file can not be read, is of another version or is corrupt, or if it is hashed and the
+     * store is not a hashed store of the same size. Then nothing has been added to the store, except if the file is
+     * corrupt in spite of a matching checksum.
+     */
+    public static void read(Path path, CountStore store) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            add(path, map(path, channel), store);
+        }
+    }
+
+    /**
+     * Maps a delta and checks its checksum, magic and version.
+     *
+     * @return The content of the file, positioned after the version.
+     */
+    private static ByteBuffer map(Path path, FileChannel channel) throws IOException
+    {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Delta file " + path + " is too big to be mapped: " + size + " bytes");
+        }
+        if (size < 13 + CHECKSUM_LENGTH) {
+            throw new IOException("Delta file " + path + " is truncated");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        int contentLength = (int) size - CHECKSUM_LENGTH;
+        ByteBuffer content = buffer.duplicate();
+        content.limit(contentLength);
+        CRC32 checksum = new CRC32();
+        checksum.update(content);
+        if (checksum.getValue() != buffer.getLong(contentLength)) {
+            throw new IOException("Delta file " + path + " is corrupt, its checksum does not match");
+        }
+        buffer.limit(contentLength);
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException(path + " is not a delta file");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Delta file " + path + " has version " + version + ", expected " + VERSION);
+        }
+        return buffer;
+    }
+
+    private static void add(Path path, ByteBuffer buffer, CountStore store) throws IOException
+    {
+        int bits = buffer.getInt();
+        if (bits > 0 && !(store instanceof HashedCountStore && ((HashedCountStore) store).getBits() == bits)) {
+            throw new IOException("Delta file " + path + " holds " + bits
+                    + " bit hashed features, which can only be added to a hashed store of the same size");
+        }
+        try {
+            int categorySize = readVarInt(buffer);
+            int[] categoryIds = new int[categorySize];
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < categorySize; i++) {
+                int length = readVarInt(buffer);
+                if (length > bytes.length) {
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                }
+                buffer.get(bytes, 0, length);
+                categoryIds[i] = store.internCategory(new String(bytes, 0, length, StandardCharsets.UTF_8));
+                store.addCategoryCount(categoryIds[i], readVarInt(buffer));
+            }
+            int bucket = -1;
+            for (int postings = readVarInt(buffer); postings > 0; postings = readVarInt(buffer)) {
+                int featureId;
+                if (bits > 0) {
+                    bucket += readVarInt(buffer);
+                    featureId = bucket;
+                } else {
+                    int length = readVarInt(buffer);
+                    if (length > bytes.length) {
+                        bytes = new byte[Math.max(length, bytes.length * 2)];
+                    }
+                    buffer.get(bytes, 0, length);
+                    featureId = store.internFeature(new String(bytes, 0, length, StandardCharsets.UTF_8));
+                }
+                int category = -1;
+                for (int posting = 0; posting < postings; posting++) {
+                    category += readVarInt(buffer);
+                    if (category >= categorySize) {
+                        throw new IOException("Delta file " + path + " refers to unknown category " + category);
+                    }
+                    store.addFeatureCount(featureId, categoryIds[category], readVarInt(buffer));
+                }
+            }
+        } catch (BufferUnderflowException ex) {
+            throw new IOException("Delta file " + path + " is truncated", ex);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException
+    {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) throws IOException
+    {
+        int returnValue = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            returnValue |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return returnValue;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+
+    /**
+     * Encodes the postings of a feature, leaving out categories registered after writing started.
+     */
+    private static class PostingWriter implements PostingConsumer
+    {
+
+        private final int categorySize;
+        private byte[] bytes = new byte[64];
+        private int length;
+        private int size;
+        private int previousCategory;
+
+        private PostingWriter(int categorySize)
+        {
+            this.categorySize = categorySize;
+        }
+
+        private void reset()
+        {
+            this.length = 0;
+            this.size = 0;
+            this.previousCategory = -1;
+        }
+
+        @Override
+        public void accept(int categoryId, int count)
+        {
+            if (categoryId >= this.categorySize || count == 0) {
+                return;
+            }
+            this.put(categoryId - this.previousCategory);
+            this.put(count);
+            this.previousCategory = categoryId;
+            this.size++;
+        }
+
+        private void put(int value)
+        {
+            if (this.length + 5 > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, this.bytes.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                this.bytes[this.length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            this.bytes[this.length++] = (byte) value;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package de.kl.classifier.store;
+
+import java.util.Set;
+
+/**
+ * Stores the counts a classifier learns. Features and categories are interned to dense int ids once, all counting
+ * afterwards happens on these ids.
+ *
+ * @author konrad
+ */
+public interface CountStore
+{
+
+    /**
+     * Retrieves the id of a known feature.
+     *
+     * @param feature The feature.
+     * @return The id of the feature or <code>-1</code>, if the feature is unknown.
+     */
+    int featureId(String feature);
+
+    /**
+     * Retrieves the id of the given feature and registers it, if it is not known yet.
+     *
+     * @param feature The feature.
+     * @return The id of the feature.
+     */
+    int internFeature(String feature);
+
+    /**
+     * Retrieves the feature with the given id.
+     *
+     * @param featureId The id of the feature.
+     * @return The feature or <code>null</code>, if the id is not completely registered yet.
+     */
+    String feature(int featureId);
+
+    /**
+     * Retrieves the number of feature ids handed out. Feature ids range from <code>0</code> to this value.
+     *
+     * @return The number of feature ids.
+     */
+    int featureSize();
+
+    /**
+     * Retrieves the id of a known category.
+     *
+     * @param category The category.
+     * @return The id of the category or <code>-1</code>, if the category is unknown.
+     */
+    int categoryId(String category);
+
+    /**
+     * Retrieves the id of the given category and registers it, if it is not known yet.
+     *
+     * @param category The category.
+     * @return The id of the category.
+     */
+    int internCategory(String category);
+
+    /**
+     * Retrieves the category with the given id.
+     *
+     * @param categoryId The id of the category.
+     * @return The category.
+     */
+    String category(int categoryId);
+
+    /**
+     * Retrieves the number of categories registered. Category ids range from <code>0</code> to this value.
+     *
+     * @return The number of categories.
+     */
+    int categorySize();
+
+    /**
+     * Returns a read-only view of the features the store knows about.
+     *
+     * @return The features.
+     */
+    Set<String> features();
+
+    /**
+     * Returns a read-only view of the categories the store knows about.
+     *
+     * @return The categories.
+     */
+    Set<String> categories();
+
+    /**
+     * Increments the count of the given feature in the given category and the total count of the feature.
+     *
+     * @param featureId The id of the feature.
+     * @param categoryId The id of the category.
+     */
+    void incrementFeature(int featureId, int categoryId);
+
+    /**
+     * Increments the count of the given category.
+     *
+     * @param categoryId The id of the category.
+     */
+    void incrementCategory(int categoryId);
+
+    /**
+     * Adds to the count of the given feature in the given category and to the total count of the feature.
+     *
+     * @param featureId The id of the feature.
+     * @param categoryId The id of the category.
+     * @param count The number of occurrences to add, not negative.
+     */
+    void addFeatureCount(int featureId, int categoryId, int count);
+
+    /**
+     * Adds to the count of the given category.
+     *
+     * @param categoryId The id of the category.
+     * @param count The number of occurrences to add, not negative.
+     */
+    void addCategoryCount(int categoryId, int count);
+
+    /**
+     * Retrieves the number of occurrences of the given feature in the given category.
+     *
+     * @param featureId The id of the feature.
+     * @param categoryId The id of the category.
+     * @return The number of occurrences.
+     */
+    int featureCount(int featureId, int categoryId);
+
+    /**
+     * Passes each category the given feature occurred in, together with the count, to the consumer. Categories the
+     * feature never occurred in are skipped, so this touches only the non-zero counts of the feature.
+     *
+     * @param featureId The id of the feature.
+     * @param consumer The consumer of the postings, called in ascending order of category id.
+     */
+    void forEachPosting(int featureId, PostingConsumer consumer);
+
+    /**
+     * Retrieves the number of occurrences of the given feature over all categories.
+     *
+     * @param featureId The id of the feature.
+     * @return The number of occurrences.
+     */
+    int featureTotal(int featureId);
+
+    /**
+     * Retrieves the number of occurrences of the given category.
+     *
+     * @param categoryId The id of the category.
+     * @return The number of occurrences.
+     */
+    int categoryCount(int categoryId);
+
+    /**
+     * Retrieves the sum of the occurrences of all categories. It is kept up to date on every increment, so this is
+     * constant time.
+     *
+     * @return The total category count.
+     */
+    int categoriesTotal();
+}
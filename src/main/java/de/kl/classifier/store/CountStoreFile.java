@@ -0,0 +1,487 @@
+package de.kl.classifier.store;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reads and writes the counts of a {@link CountStore} as a binary file, so a trained store can be restored without
+ * learning everything again.
+ *
+ * The file is a sequence of big-endian values:
+ *
+ * <pre>
+ * int     magic "XTBR"
+ * int     version
+ * long    length of the training file the counts were learned from
+ * int     bits of a {@link HashedCountStore}, 0 if the features are named
+ * int     longest word n-grams of the features, 1 for single terms
+ * int     longest character n-grams of the features, 0 for none
+ * int     number of categories
+ *         per category: string name, int count
+ * int     number of feature ids
+ *         named:  per feature id: string name (length -1 for an unused id), int number of postings,
+ *                                 per posting: int category id, int count
+ *         hashed: per bucket with counts: int bucket, int number of postings,
+ *                                         per posting: int category id, int count
+ *                 int -1, the end of the buckets
+ * long    CRC-32 of everything before
+ * </pre>
+ *
+ * The features of a hashed store are its buckets, they have no name and their id is their position. Only the
+ * buckets with counts are written, so the file grows with the features learned, not with the number of buckets.
+ * Named features can be read into a hashed store, which hashes them, but a hashed file can only be read into a hashed
+ * store of the same size. The n-grams the features were made of are recorded as well, for the owner of the file to
+ * tell whether the counts match its tokenizer, see {@link #readHeader(Path)}.
+ *
+ * Strings are written as their length in bytes followed by their UTF-8 bytes. The file is written to a temporary
+ * file first, forced to the disk and moved into place, so a crash, even of the machine, never leaves a half written
+ * file behind. It is checked against the
+ * checksum before anything is restored, and read through a buffer, so its size is not limited to what can be mapped
+ * at once.
+ *
+ * @author konrad
+ */
+public final class CountStoreFile
+{
+
+    private static final int MAGIC = 0x58544252;
+    private static final int VERSION = 4;
+
+    /**
+     * Length of the values before the categories.
+     */
+    private static final int HEADER_LENGTH = 28;
+
+    /**
+     * Length of the checksum at the end of the file.
+     */
+    private static final int CHECKSUM_LENGTH = 8;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private CountStoreFile()
+    {
+    }
+
+    /**
+     * Writes the counts of the given store to a file, with features of single terms.
+     *
+     * @param store The store to write.
+     * @param sourceLength The length of the training file the counts were learned from.
+     * @param path The file to write.
+     * @throws IOException If the file can not be written.
+     * @see #write(CountStore, long, int, int, Path)
+     */
+    public static void write(CountStore store, long sourceLength, Path path) throws IOException
+    {
+        write(store, sourceLength, 1, 0, path);
+    }
+
+    /**
+     * Writes the counts of the given store to a file. The store may be learning concurrently, the file then holds the
+     * categories known when writing started and each feature as it was when it was written.
+     *
+     * @param store The store to write.
+     * @param sourceLength The length of the training file the counts were learned from.
+     * @param ngramWords The longest word n-grams of the features, <code>1</code> for single terms.
+     * @param ngramChars The longest character n-grams of the features, <code>0</code> for none.
+     * @param path The file to write.
+     * @throws IOException If the file can not be written.
+     */
+    public static void write(CountStore store, long sourceLength, int ngramWords, int ngramChars, Path path)
+            throws IOException
+    {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32 checksum = new CRC32();
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream file = Channels.newOutputStream(channel);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(file, checksum), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sourceLength);
+            int bits = (store instanceof HashedCountStore) ? ((HashedCountStore) store).getBits() : 0;
+            out.writeInt(bits);
+            out.writeInt(ngramWords);
+            out.writeInt(ngramChars);
+            int categorySize = store.categorySize();
+            out.writeInt(categorySize);
+            for (int categoryId = 0; categoryId < categorySize; categoryId++) {
+                writeString(out, store.category(categoryId));
+                out.writeInt(store.categoryCount(categoryId));
+            }
+            int featureSize = store.featureSize();
+            out.writeInt(featureSize);
+            PostingBuffer postings = new PostingBuffer(categorySize);
+            for (int featureId = 0; featureId < featureSize; featureId++) {
+                String feature = store.feature(featureId);
+                if (bits > 0) {
+                    postings.size = 0;
+                    store.forEachPosting(featureId, postings);
+                    if (postings.size > 0) {
+                        out.writeInt(featureId);
+                        writePostings(out, postings);
+                    }
+                    continue;
+                } else if (feature == null) {
+                    // not completely registered by a concurrent learn yet
+                    out.writeInt(-1);
+                    out.writeInt(0);
+                    continue;
+                } else {
+                    writeString(out, feature);
+                }
+                postings.size = 0;
+                store.forEachPosting(featureId, postings);
+                writePostings(out, postings);
+            }
+            if (bits > 0) {
+                out.writeInt(-1);
+            }
+            out.flush();
+            new DataOutputStream(file).writeLong(checksum.getValue());
+            channel.force(true);
+        }
+        replace(temporary, path);
+    }
+
+    /**
+     * Moves a written temporary file over the given file and forces the directory to the disk, so the new file is
+     * found after a crash of the machine. The temporary file has to be forced before.
+     *
+     * @param temporary The temporary file.
+     * @param path The file to replace.
+     * @throws IOException If the file can not be moved.
+     */
+    static void replace(Path temporary, Path path) throws IOException
+    {
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Path directory = path.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ex) {
+            // not every platform opens a directory, the move is then as durable as the platform makes it
+        }
+    }
+
+    /**
+     * Reads the counts of a file into the given store. The store should be empty, otherwise the counts are added to
+     * the counts already there.
+     *
+     * @param path The file to read.
+     * @param store The store to read into.
+     * @return The length of the training file the counts were learned from.
+     * @throws IOException If the file can not be read, is of another version or is corrupt. If the checksum or the
+     * version does not match, nothing has been read into the store.
+     */
+    public static long read(Path path, CountStore store) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_LENGTH + CHECKSUM_LENGTH) {
+                throw new IOException("Count file " + path + " is truncated");
+            }
+            long contentLength = size - CHECKSUM_LENGTH;
+            ByteBuffer expected = ByteBuffer.allocate(CHECKSUM_LENGTH);
+            while (expected.hasRemaining()) {
+                if (channel.read(expected, contentLength + expected.position()) < 0) {
+                    throw new IOException("Count file " + path + " is truncated");
+                }
+            }
+            if (checksum(channel, contentLength) != expected.getLong(0)) {
+                throw new IOException("Count file " + path + " is corrupt, its checksum does not match");
+            }
+            ChannelReader buffer = new ChannelReader(channel, contentLength);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(path + " is not a count file");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Count file " + path + " has version " + version + ", expected " + VERSION);
+            }
+            long sourceLength = buffer.getLong();
+            int bits = buffer.getInt();
+            // the n-grams are checked by the owner of the file, see readHeader
+            buffer.getInt();
+            buffer.getInt();
+            if (bits > 0 && !(store instanceof HashedCountStore && ((HashedCountStore) store).getBits() == bits)) {
+                throw new IOException("Count file " + path + " holds " + bits
+                        + " bit hashed features, which can only be read into a hashed store of the same size");
+            }
+            int categorySize = buffer.getInt();
+            int[] categoryIds = new int[categorySize];
+            for (int i = 0; i < categorySize; i++) {
+                categoryIds[i] = store.internCategory(buffer.getString());
+                store.addCategoryCount(categoryIds[i], buffer.getInt());
+            }
+            int featureSize = buffer.getInt();
+            if (bits > 0) {
+                for (int bucket = buffer.getInt(); bucket >= 0; bucket = buffer.getInt()) {
+                    if (bucket >= featureSize) {
+                        throw new IOException("Count file " + path + " refers to unknown bucket " + bucket);
+                    }
+                    readPostings(buffer, path, store, bucket, categoryIds);
+                }
+            } else {
+                for (int i = 0; i < featureSize; i++) {
+                    String feature = buffer.getString();
+                    if (feature == null) {
+                        buffer.getInt();
+                        continue;
+                    }
+                    readPostings(buffer, path, store, store.internFeature(feature), categoryIds);
+                }
+            }
+            return sourceLength;
+        }
+    }
+
+    /**
+     * Reads the values at the start of a file, without checking the rest of it.
+     *
+     * @param path The file to read.
+     * @return The header of the file.
+     * @throws IOException If the file can not be read, is not a count file or of another version.
+     */
+    public static Header readHeader(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Count file " + path + " is truncated");
+                }
+            }
+            buffer.flip();
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(path + " is not a count file");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Count file " + path + " has version " + version + ", expected " + VERSION);
+            }
+            return new Header(buffer.getLong(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+        }
+    }
+
+    private static void readPostings(ChannelReader buffer, Path path, CountStore store, int featureId,
+            int[] categoryIds) throws IOException
+    {
+        int postings = buffer.getInt();
+        for (int posting = 0; posting < postings; posting++) {
+            int category = buffer.getInt();
+            if (category < 0 || category >= categoryIds.length) {
+                throw new IOException("Count file " + path + " refers to unknown category " + category);
+            }
+            store.addFeatureCount(featureId, categoryIds[category], buffer.getInt());
+        }
+    }
+
+    private static long checksum(FileChannel channel, long length) throws IOException
+    {
+        CRC32 checksum = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = 0;
+        while (position < length) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), length - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            buffer.flip();
+            checksum.update(buffer);
+            position += read;
+        }
+        return checksum.getValue();
+    }
+
+    private static void writePostings(DataOutputStream out, PostingBuffer postings) throws IOException
+    {
+        out.writeInt(postings.size / 2);
+        for (int i = 0; i < postings.size; i++) {
+            out.writeInt(postings.pairs[i]);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * The values at the start of a count file, describing the counts it holds.
+     */
+    public static final class Header
+    {
+
+        private final long sourceLength;
+        private final int bits;
+        private final int ngramWords;
+        private final int ngramChars;
+
+        private Header(long sourceLength, int bits, int ngramWords, int ngramChars)
+        {
+            this.sourceLength = sourceLength;
+            this.bits = bits;
+            this.ngramWords = ngramWords;
+            this.ngramChars = ngramChars;
+        }
+
+        /**
+         * Gets the length of the training file the counts were learned from.
+         *
+         * @return The length in bytes.
+         */
+        public long getSourceLength()
+        {
+            return this.sourceLength;
+        }
+
+        /**
+         * Gets the bits of the hashed features.
+         *
+         * @return The bits, <code>0</code> if the features are named.
+         */
+        public int getBits()
+        {
+            return this.bits;
+        }
+
+        /**
+         * Gets the longest word n-grams of the features.
+         *
+         * @return The number of words, <code>1</code> for single terms.
+         */
+        public int getNGramWords()
+        {
+            return this.ngramWords;
+        }
+
+        /**
+         * Gets the longest character n-grams of the features.
+         *
+         * @return The number of characters, <code>0</code> for none.
+         */
+        public int getNGramChars()
+        {
+            return this.ngramChars;
+        }
+    }
+
+    /**
+     * Reads the values of a channel through a buffer, up to a given length, decoding strings from one reused array of
+     * bytes.
+     */
+    private static class ChannelReader
+    {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long unread;
+        private byte[] bytes = new byte[256];
+
+        private ChannelReader(FileChannel channel, long length) throws IOException
+        {
+            this.channel = channel;
+            this.unread = length;
+            this.channel.position(0);
+            this.buffer.limit(0);
+        }
+
+        private int getInt() throws IOException
+        {
+            this.require(Integer.BYTES);
+            return this.buffer.getInt();
+        }
+
+        private long getLong() throws IOException
+        {
+            this.require(Long.BYTES);
+            return this.buffer.getLong();
+        }
+
+        private String getString() throws IOException
+        {
+            int length = this.getInt();
+            if (length < 0) {
+                return null;
+            }
+            if (length > this.bytes.length) {
+                this.bytes = new byte[Math.max(length, this.bytes.length * 2)];
+            }
+            for (int offset = 0; offset < length;) {
+                this.require(1);
+                int chunk = Math.min(this.buffer.remaining(), length - offset);
+                this.buffer.get(this.bytes, offset, chunk);
+                offset += chunk;
+            }
+            return new String(this.bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private void require(int length) throws IOException
+        {
+            if (this.buffer.remaining() >= length) {
+                return;
+            }
+            this.buffer.compact();
+            while (this.buffer.position() < length) {
+                if (this.unread == 0) {
+                    throw new EOFException("Count file is truncated");
+                }
+                this.buffer.limit((int) Math.min(this.buffer.capacity(), this.buffer.position() + this.unread));
+                int read = this.channel.read(this.buffer);
+                if (read < 0) {
+                    throw new EOFException("Count file is truncated");
+                }
+                this.unread -= read;
+            }
+            this.buffer.flip();
+        }
+    }
+
+    /**
+     * Collects the postings of a feature, leaving out categories registered after writing started.
+     */
+    private static class PostingBuffer implements PostingConsumer
+    {
+
+        private final int categorySize;
+        private int[] pairs = new int[16];
+        private int size;
+
+        private PostingBuffer(int categorySize)
+        {
+            this.categorySize = categorySize;
+        }
+
+        @Override
+        public void accept(int categoryId, int count)
+        {
+            if (categoryId >= this.categorySize) {
+                return;
+            }
+            if (this.size == this.pairs.length) {
+                this.pairs = Arrays.copyOf(this.pairs, this.size * 2);
+            }
+            this.pairs[this.size++] = categoryId;
+            this.pairs[this.size++] = count;
+        }
+    }
+}
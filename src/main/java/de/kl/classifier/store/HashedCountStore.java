@@ -0,0 +1,112 @@
+package de.kl.classifier.store;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A thread-safe {@link CountStore} for vocabularies that never stop growing. Features are not interned, they are
+ * hashed into a fixed number of <code>2^bits</code> buckets (the hashing trick), and the bucket is the feature id. The
+ * store neither keeps the names of the features nor grows with them: its size only depends on the number of buckets
+ * and on the postings they collect, which are bounded by the number of categories.
+ *
+ * Features falling into the same bucket are counted as one. The fewer bits, the more features collide and the less
+ * accurate the classifier gets; <code>MatrixTest</code> compares the accuracy and memory of different sizes on the
+ * training data.
+ *
+ * The names of the features are not kept, so {@link #feature(int)} is always <code>null</code> and
+ * {@link #features()} is empty.
+ *
+ * @author konrad
+ */
+public class HashedCountStore extends ConcurrentCountStore
+{
+
+    /**
+     * The largest number of bits supported.
+     */
+    public static final int MAX_BITS = 28;
+
+    private final int bits;
+
+    /**
+     * Constructs an empty store with <code>2^bits</code> buckets.
+     *
+     * @param bits The number of bits of the bucket of a feature, from <code>1</code> to {@link #MAX_BITS}.
+     * @throws IllegalArgumentException If the number of bits is out of range.
+     */
+    public HashedCountStore(int bits)
+    {
+        super(1 << checkBits(bits));
+        this.bits = bits;
+    }
+
+    /**
+     * Retrieves the number of bits of the bucket of a feature.
+     *
+     * @return The number of bits.
+     */
+    public int getBits()
+    {
+        return this.bits;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Every feature is known: this is its bucket.
+     */
+    @Override
+    public int featureId(String feature)
+    {
+        return bucket(feature, this.bits);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * This is the bucket of the feature, nothing is registered.
+     */
+    @Override
+    public int internFeature(String feature)
+    {
+        return bucket(feature, this.bits);
+    }
+
+    @Override
+    public Set<String> features()
+    {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Calculates the bucket of a feature: the upper bits of a 64 bit hash of its characters. The hash is FNV-1a over
+     * the characters, finished by the mixing step of MurmurHash3, so even short features spread over all bits.
+     *
+     * @param feature The feature.
+     * @param bits The number of bits of the bucket.
+     * @return The bucket, from <code>0</code> to <code>2^bits - 1</code>.
+     */
+    public static int bucket(CharSequence feature, int bits)
+    {
+        long hash = 0xCBF29CE484222325L;
+        int length = feature.length();
+        for (int i = 0; i < length; i++) {
+            hash ^= feature.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return (int) (hash >>> (64 - bits));
+    }
+
+    private static int checkBits(int bits)
+    {
+        if (bits < 1 || bits > MAX_BITS) {
+            throw new IllegalArgumentException("Bits must be from 1 to " + MAX_BITS + ", not " + bits);
+        }
+        return bits;
+    }
+}
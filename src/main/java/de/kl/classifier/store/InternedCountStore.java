@@ -0,0 +1,236 @@
+package de.kl.classifier.store;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * A {@link CountStore} keeping all counts in primitive arrays. Feature totals and category counts are plain
+ * <code>int[]</code> indexed by id. The per category feature counts are held feature-major as an inverted index: each
+ * feature has a posting list of <code>(category id, count)</code> pairs, sorted by category id, packed into one
+ * <code>int[]</code>. Categories a feature never occurred in take no space at all.
+ *
+ * This store is not thread-safe.
+ *
+ * @author konrad
+ */
+public class InternedCountStore implements CountStore
+{
+
+    /**
+     * Initial capacity of category dictionaries.
+     */
+    private static final int INITIAL_CATEGORY_CAPACITY = 16;
+
+    /**
+     * Initial capacity of feature dictionaries. It should be quite big, because the features will quickly outnumber
+     * the categories.
+     */
+    private static final int INITIAL_FEATURE_CAPACITY = 1024;
+
+    /**
+     * Shared by all features without postings yet.
+     */
+    private static final int[] NO_POSTINGS = new int[0];
+
+    private final Vocabulary features;
+    private final Vocabulary categories;
+    private int[] featureTotals;
+    private int[] categoryCounts;
+    private int categoriesTotal;
+
+    /**
+     * The posting lists, indexed by feature id. Each list holds the category id at even and the count at odd
+     * positions.
+     */
+    private int[][] postings;
+
+    /**
+     * The number of postings in use in each posting list, indexed by feature id.
+     */
+    private int[] postingSizes;
+
+    /**
+     * Constructs an empty store.
+     */
+    public InternedCountStore()
+    {
+        this.features = new Vocabulary(INITIAL_FEATURE_CAPACITY);
+        this.categories = new Vocabulary(INITIAL_CATEGORY_CAPACITY);
+        this.featureTotals = new int[INITIAL_FEATURE_CAPACITY];
+        this.categoryCounts = new int[INITIAL_CATEGORY_CAPACITY];
+        this.postings = new int[INITIAL_FEATURE_CAPACITY][];
+        this.postingSizes = new int[INITIAL_FEATURE_CAPACITY];
+    }
+
+    @Override
+    public int featureId(String feature)
+    {
+        return this.features.id(feature);
+    }
+
+    @Override
+    public int internFeature(String feature)
+    {
+        int id = this.features.intern(feature);
+        if (id == this.featureTotals.length) {
+            this.featureTotals = Arrays.copyOf(this.featureTotals, id * 2);
+            this.postings = Arrays.copyOf(this.postings, id * 2);
+            this.postingSizes = Arrays.copyOf(this.postingSizes, id * 2);
+        }
+        if (this.postings[id] == null) {
+            this.postings[id] = NO_POSTINGS;
+        }
+        return id;
+    }
+
+    @Override
+    public String feature(int featureId)
+    {
+        return this.features.term(featureId);
+    }
+
+    @Override
+    public int featureSize()
+    {
+        return this.features.size();
+    }
+
+    @Override
+    public int categoryId(String category)
+    {
+        return this.categories.id(category);
+    }
+
+    @Override
+    public int internCategory(String category)
+    {
+        int id = this.categories.intern(category);
+        if (id == this.categoryCounts.length) {
+            this.categoryCounts = Arrays.copyOf(this.categoryCounts, id * 2);
+        }
+        return id;
+    }
+
+    @Override
+    public String category(int categoryId)
+    {
+        return this.categories.term(categoryId);
+    }
+
+    @Override
+    public int categorySize()
+    {
+        return this.categories.size();
+    }
+
+    @Override
+    public Set<String> features()
+    {
+        return this.features.asSet();
+    }
+
+    @Override
+    public Set<String> categories()
+    {
+        return this.categories.asSet();
+    }
+
+    @Override
+    public void incrementFeature(int featureId, int categoryId)
+    {
+        this.addFeatureCount(featureId, categoryId, 1);
+    }
+
+    @Override
+    public void incrementCategory(int categoryId)
+    {
+        this.addCategoryCount(categoryId, 1);
+    }
+
+    @Override
+    public void addFeatureCount(int featureId, int categoryId, int count)
+    {
+        int[] list = this.postings[featureId];
+        int size = this.postingSizes[featureId];
+        int index = search(list, size, categoryId);
+        if (index >= 0) {
+            list[index * 2 + 1] += count;
+        } else {
+            index = -index - 1;
+            if (size * 2 == list.length) {
+                list = Arrays.copyOf(list, Math.max(2, list.length * 2));
+                this.postings[featureId] = list;
+            }
+            System.arraycopy(list, index * 2, list, index * 2 + 2, (size - index) * 2);
+            list[index * 2] = categoryId;
+            list[index * 2 + 1] = count;
+            this.postingSizes[featureId] = size + 1;
+        }
+        this.featureTotals[featureId] += count;
+    }
+
+    @Override
+    public void addCategoryCount(int categoryId, int count)
+    {
+        this.categoryCounts[categoryId] += count;
+        this.categoriesTotal += count;
+    }
+
+    @Override
+    public int featureCount(int featureId, int categoryId)
+    {
+        int index = search(this.postings[featureId], this.postingSizes[featureId], categoryId);
+        return (index < 0) ? 0 : this.postings[featureId][index * 2 + 1];
+    }
+
+    @Override
+    public void forEachPosting(int featureId, PostingConsumer consumer)
+    {
+        int[] list = this.postings[featureId];
+        int end = this.postingSizes[featureId] * 2;
+        for (int i = 0; i < end; i += 2) {
+            consumer.accept(list[i], list[i + 1]);
+        }
+    }
+
+    @Override
+    public int featureTotal(int featureId)
+    {
+        return this.featureTotals[featureId];
+    }
+
+    @Override
+    public int categoryCount(int categoryId)
+    {
+        return this.categoryCounts[categoryId];
+    }
+
+    @Override
+    public int categoriesTotal()
+    {
+        return this.categoriesTotal;
+    }
+
+    /**
+     * Binary search for a category in a posting list.
+     *
+     * @return The index of the posting, or <code>-(insertion point) - 1</code> if the category is not in the list.
+     */
+    private static int search(int[] list, int size, int categoryId)
+    {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int current = list[middle * 2];
+            if (current < categoryId) {
+                low = middle + 1;
+            } else if (current > categoryId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+}
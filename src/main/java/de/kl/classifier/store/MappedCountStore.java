@@ -0,0 +1,522 @@
+package de.kl.classifier.store;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read-only {@link CountStore} working directly on a memory-mapped file. Apart from the categories, which are few,
+ * nothing is copied to the heap: the features are looked up in a hash table in the file and their counts are read from
+ * the file on demand. The operating system pages the file in as it is used, and all processes mapping the same file
+ * share the same pages.
+ *
+ * The file starts with a fixed header, followed by the categories, the hash table of feature ids, the offsets of the
+ * feature records indexed by feature id and finally the feature records themselves. A record holds the hash, the
+ * total count, the number of postings and the UTF-8 name of a feature, followed by its sorted
+ * <code>(category id, count)</code> pairs. All values are big-endian and aligned to their size, so no value crosses
+ * the boundary between two of the mapped segments.
+ *
+ * Unlike the {@link CountStoreFile} there is no checksum, as checking it would read the whole file on opening.
+ *
+ * @author konrad
+ */
+public class MappedCountStore implements CountStore
+{
+
+    private static final int MAGIC = 0x5854424D;
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 64;
+
+    /**
+     * Marker for an unused slot of the hash table.
+     */
+    private static final int EMPTY = -1;
+
+    private static final byte[] PADDING = new byte[3];
+
+    /**
+     * The file is mapped in segments of this size, as a single buffer can not be larger than 2 GB.
+     */
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    private final MappedByteBuffer[] segments;
+    private final int featureSize;
+    private final int tableMask;
+    private final long tablePosition;
+    private final long offsetsPosition;
+    private final int categoriesTotal;
+    private final String[] categories;
+    private final int[] categoryCounts;
+    private final Map<String, Integer> categoryIds;
+
+    private MappedCountStore(MappedByteBuffer[] segments) throws IOException
+    {
+        this.segments = segments;
+        if (this.getInt(0) != MAGIC) {
+            throw new IOException("Not a mapped count file");
+        }
+        if (this.getInt(4) != VERSION) {
+            throw new IOException("Mapped count file has version " + this.getInt(4) + ", expected " + VERSION);
+        }
+        int categorySize = this.getInt(8);
+        this.featureSize = this.getInt(12);
+        this.tableMask = this.getInt(16) - 1;
+        this.categoriesTotal = (int) this.getLong(24);
+        this.tablePosition = this.getLong(32);
+        this.offsetsPosition = this.getLong(40);
+        this.categories = new String[categorySize];
+        this.categoryCounts = new int[categorySize];
+        this.categoryIds = new HashMap<>();
+        long position = HEADER_LENGTH;
+        for (int categoryId = 0; categoryId < categorySize; categoryId++) {
+            this.categoryCounts[categoryId] = this.getInt(position);
+            int length = this.getInt(position + 4);
+            this.categories[categoryId] = this.getString(position + 8, length);
+            this.categoryIds.put(this.categories[categoryId], categoryId);
+            position += 8 + padded(length);
+        }
+    }
+
+    /**
+     * Maps the given file.
+     *
+     * @param path The file written by {@link #write(CountStore, Path)}.
+     * @return The store.
+     * @throws IOException If the file can not be mapped or is not a mapped count file of this version.
+     */
+    public static MappedCountStore open(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_LENGTH) {
+                throw new IOException("Mapped count file " + path + " is truncated");
+            }
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start,
+                        1L << SEGMENT_BITS));
+            }
+            return new MappedCountStore(segments);
+        }
+    }
+
+    /**
+     * Writes the counts of the given store to a file that can be mapped. The store may be learning concurrently, the
+     * file then holds the categories known when writing started and each feature as it was when it was written.
+     *
+     * @param store The store to write.
+     * @param path The file to write.
+     * @throws IOException If the file can not be written.
+     * @throws IllegalArgumentException If the store is a {@link HashedCountStore}, whose features have no names to
+     * look them up by.
+     */
+    public static void write(CountStore store, Path path) throws IOException
+    {
+        if (store instanceof HashedCountStore) {
+            throw new IllegalArgumentException("A hashed count store can not be written as mapped count store");
+        }
+        int categorySize = store.categorySize();
+        int featureCapacity = store.featureSize();
+        int tableSize = Vocabulary.tableSizeFor(featureCapacity);
+        int[] table = new int[tableSize];
+        Arrays.fill(table, EMPTY);
+        long[] offsets = new long[featureCapacity];
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        ByteBuffer categoryBuffer = ByteBuffer.allocate(1024);
+        long categoriesTotal = 0;
+        for (int categoryId = 0; categoryId < categorySize; categoryId++) {
+            int count = store.categoryCount(categoryId);
+            byte[] name = store.category(categoryId).getBytes(StandardCharsets.UTF_8);
+            if (categoryBuffer.remaining() < 8 + padded(name.length)) {
+                categoryBuffer = ByteBuffer.allocate((categoryBuffer.capacity() + 8 + padded(name.length)) * 2)
+                        .put((ByteBuffer) categoryBuffer.flip());
+            }
+            categoryBuffer.putInt(count).putInt(name.length).put(name);
+            categoryBuffer.position(categoryBuffer.position() + padded(name.length) - name.length);
+            categoriesTotal += count;
+        }
+        categoryBuffer.flip();
+        long tablePosition = align8(HEADER_LENGTH + categoryBuffer.remaining());
+        long offsetsPosition = tablePosition + 4L * tableSize;
+        long recordsPosition = offsetsPosition + 8L * featureCapacity;
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(recordsPosition);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(channel), 1 << 16));
+            long position = recordsPosition;
+            int featureSize = 0;
+            PairCollector postings = new PairCollector(categorySize);
+            for (int featureId = 0; featureId < featureCapacity; featureId++) {
+                String feature = store.feature(featureId);
+                if (feature == null) {
+                    // not completely registered by a concurrent learn yet
+                    continue;
+                }
+                postings.size = 0;
+                postings.total = 0;
+                store.forEachPosting(featureId, postings);
+                byte[] name = feature.getBytes(StandardCharsets.UTF_8);
+                int hash = feature.hashCode();
+                for (int slot = Vocabulary.mix(hash) & (tableSize - 1);; slot = (slot + 1) & (tableSize - 1)) {
+                    if (table[slot] == EMPTY) {
+                        table[slot] = featureSize;
+                        break;
+                    }
+                }
+                offsets[featureSize++] = position;
+                out.writeInt(hash);
+                out.writeInt(postings.total);
+                out.writeInt(postings.size / 2);
+                out.writeInt(name.length);
+                out.write(name);
+                out.write(PADDING, 0, padded(name.length) - name.length);
+                for (int i = 0; i < postings.size; i++) {
+                    out.writeInt(postings.pairs[i]);
+                }
+                position += 16 + padded(name.length) + 4L * postings.size;
+            }
+            out.flush();
+
+            header.putInt(MAGIC).putInt(VERSION).putInt(categorySize).putInt(featureSize).putInt(tableSize).putInt(0)
+                    .putLong(categoriesTotal).putLong(tablePosition).putLong(offsetsPosition)
+                    .putLong(recordsPosition).putLong(position);
+            header.flip();
+            writeFully(channel, header, 0);
+            writeFully(channel, categoryBuffer, HEADER_LENGTH);
+            ByteBuffer chunk = ByteBuffer.allocate(1 << 16);
+            long chunkPosition = tablePosition;
+            for (int slot = 0; slot < tableSize; slot++) {
+                if (!chunk.hasRemaining()) {
+                    chunkPosition += flushChunk(channel, chunk, chunkPosition);
+                }
+                chunk.putInt(table[slot]);
+            }
+            chunkPosition += flushChunk(channel, chunk, chunkPosition);
+            for (int featureId = 0; featureId < featureCapacity; featureId++) {
+                if (!chunk.hasRemaining()) {
+                    chunkPosition += flushChunk(channel, chunk, chunkPosition);
+                }
+                chunk.putLong(offsets[featureId]);
+            }
+            flushChunk(channel, chunk, chunkPosition);
+            channel.force(true);
+        }
+        CountStoreFile.replace(temporary, path);
+    }
+
+    @Override
+    public int featureId(String feature)
+    {
+        int hash = feature.hashCode();
+        byte[] name = null;
+        for (int slot = Vocabulary.mix(hash) & this.tableMask;; slot = (slot + 1) & this.tableMask) {
+            int id = this.getInt(this.tablePosition + 4L * slot);
+            if (id == EMPTY) {
+                return -1;
+            }
+            long record = this.record(id);
+            if (this.getInt(record) != hash) {
+                continue;
+            }
+            if (name == null) {
+                name = feature.getBytes(StandardCharsets.UTF_8);
+            }
+            if (this.nameEquals(record, name)) {
+                return id;
+            }
+        }
+    }
+
+    @Override
+    public int internFeature(String feature)
+    {
+        throw new UnsupportedOperationException("A mapped count store is read-only");
+    }
+
+    @Override
+    public String feature(int featureId)
+    {
+        long record = this.record(featureId);
+        return this.getString(record + 16, this.getInt(record + 12));
+    }
+
+    @Override
+    public int featureSize()
+    {
+        return this.featureSize;
+    }
+
+    @Override
+    public int categoryId(String category)
+    {
+        Integer id = this.categoryIds.get(category);
+        return (id == null) ? -1 : id;
+    }
+
+    @Override
+    public int internCategory(String category)
+    {
+        throw new UnsupportedOperationException("A mapped count store is read-only");
+    }
+
+    @Override
+    public String category(int categoryId)
+    {
+        return this.categories[categoryId];
+    }
+
+    @Override
+    public int categorySize()
+    {
+        return this.categories.length;
+    }
+
+    @Override
+    public Set<String> features()
+    {
+        return new AbstractSet<String>()
+        {
+            @Override
+            public Iterator<String> iterator()
+            {
+                return new Iterator<String>()
+                {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return this.next < featureSize;
+                    }
+
+                    @Override
+                    public String next()
+                    {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return feature(this.next++);
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o)
+            {
+                return (o instanceof String) && featureId((String) o) >= 0;
+            }
+
+            @Override
+            public int size()
+            {
+                return featureSize;
+            }
+        };
+    }
+
+    @Override
+    public Set<String> categories()
+    {
+        return Collections.unmodifiableSet(this.categoryIds.keySet());
+    }
+
+    @Override
+    public void incrementFeature(int featureId, int categoryId)
+    {
+        throw new UnsupportedOperationException("A mapped count store is read-only");
+    }
+
+    @Override
+    public void incrementCategory(int categoryId)
+    {
+        throw new UnsupportedOperationException("A mapped count store is read-only");
+    }
+
+    @Override
+    public void addFeatureCount(int featureId, int categoryId, int count)
+    {
+        throw new UnsupportedOperationException("A mapped count store is read-only");
+    }
+
+    @Override
+    public void addCategoryCount(int categoryId, int count)
+    {
+        throw new UnsupportedOperationException("A mapped count store is read-only");
+    }
+
+    @Override
+    public int featureCount(int featureId, int categoryId)
+    {
+        long record = this.record(featureId);
+        long pairs = this.pairs(record);
+        int low = 0;
+        int high = this.getInt(record + 8) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int current = this.getInt(pairs + 8L * middle);
+            if (current < categoryId) {
+                low = middle + 1;
+            } else if (current > categoryId) {
+                high = middle - 1;
+            } else {
+                return this.getInt(pairs + 8L * middle + 4);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public void forEachPosting(int featureId, PostingConsumer consumer)
+    {
+        long record = this.record(featureId);
+        long pairs = this.pairs(record);
+        long end = pairs + 8L * this.getInt(record + 8);
+        for (long pair = pairs; pair < end; pair += 8) {
+            consumer.accept(this.getInt(pair), this.getInt(pair + 4));
+        }
+    }
+
+    @Override
+    public int featureTotal(int featureId)
+    {
+        return this.getInt(this.record(featureId) + 4);
+    }
+
+    @Override
+    public int categoryCount(int categoryId)
+    {
+        return this.categoryCounts[categoryId];
+    }
+
+    @Override
+    public int categoriesTotal()
+    {
+        return this.categoriesTotal;
+    }
+
+    private long record(int featureId)
+    {
+        return this.getLong(this.offsetsPosition + 8L * featureId);
+    }
+
+    private long pairs(long record)
+    {
+        return record + 16 + padded(this.getInt(record + 12));
+    }
+
+    private boolean nameEquals(long record, byte[] name)
+    {
+        if (this.getInt(record + 12) != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (this.getByte(record + 16 + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String getString(long position, int length)
+    {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = this.getByte(position + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private byte getByte(long position)
+    {
+        return this.segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK));
+    }
+
+    private int getInt(long position)
+    {
+        return this.segments[(int) (position >>> SEGMENT_BITS)].getInt((int) (position & SEGMENT_MASK));
+    }
+
+    private long getLong(long position)
+    {
+        return this.segments[(int) (position >>> SEGMENT_BITS)].getLong((int) (position & SEGMENT_MASK));
+    }
+
+    private static int padded(int length)
+    {
+        return (length + 3) & ~3;
+    }
+
+    private static long align8(long position)
+    {
+        return (position + 7) & ~7L;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static int flushChunk(FileChannel channel, ByteBuffer chunk, long position) throws IOException
+    {
+        chunk.flip();
+        int length = chunk.remaining();
+        writeFully(channel, chunk, position);
+        chunk.clear();
+        return length;
+    }
+
+    /**
+     * Collects the postings of a feature and their total, leaving out categories registered after writing started.
+     */
+    private static class PairCollector implements PostingConsumer
+    {
+
+        private final int categorySize;
+        private int[] pairs = new int[16];
+        private int size;
+        private int total;
+
+        private PairCollector(int categorySize)
+        {
+            this.categorySize = categorySize;
+        }
+
+        @Override
+        public void accept(int categoryId, int count)
+        {
+            if (categoryId >= this.categorySize) {
+                return;
+            }
+            if (this.size == this.pairs.length) {
+                this.pairs = Arrays.copyOf(this.pairs, this.size * 2);
+            }
+            this.pairs[this.size++] = categoryId;
+            this.pairs[this.size++] = count;
+            this.total += count;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package de.kl.classifier.store;
+
+/**
+ * Receives the entries of the posting list of a feature, that is each category the feature occurred in together with
+ * its count.
+ *
+ * @author konrad
+ */
+@FunctionalInterface
+public interface PostingConsumer
+{
+
+    /**
+     * Accepts one posting.
+     *
+     * @param categoryId The id of the category the feature occurred in.
+     * @param count The number of occurrences of the feature in this category.
+     */
+    void accept(int categoryId, int count);
+}
@@ -0,0 +1,252 @@
+package de.kl.classifier.store;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Interns terms to dense int ids. The ids are handed out in order of first appearance, starting with <code>0</code>,
+ * so they can be used directly as index into primitive arrays.
+ *
+ * The lookup table uses open addressing with linear probing and stores only the id of a term in each slot. The term
+ * and its hash are kept in arrays indexed by id, which keeps the whole structure free of per-entry objects.
+ *
+ * @author konrad
+ */
+public class Vocabulary
+{
+
+    /**
+     * Marker for an unused slot.
+     */
+    private static final int EMPTY = -1;
+
+    /**
+     * The table is grown when it is filled up to this ratio.
+     */
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] slots;
+    private String[] terms;
+    private int[] hashes;
+    private int size;
+
+    /**
+     * Constructs an empty vocabulary that can hold the given number of terms before it has to grow.
+     *
+     * @param expectedSize The number of terms expected.
+     */
+    public Vocabulary(int expectedSize)
+    {
+        int capacity = tableSizeFor(expectedSize);
+        this.slots = new int[capacity];
+        Arrays.fill(this.slots, EMPTY);
+        this.terms = new String[Math.max(expectedSize, 1)];
+        this.hashes = new int[Math.max(expectedSize, 1)];
+    }
+
+    /**
+     * Retrieves the id of the given term.
+     *
+     * @param term The term to look up.
+     * @return The id of the term or <code>-1</code>, if the term is unknown.
+     */
+    public int id(String term)
+    {
+        int hash = term.hashCode();
+        int mask = this.slots.length - 1;
+        for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+            int id = this.slots[slot];
+            if (id == EMPTY) {
+                return -1;
+            }
+            if (this.hashes[id] == hash && this.terms[id].equals(term)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Retrieves the id of the given term without turning it into a <code>String</code>. Its hash is calculated like
+     * <code>String.hashCode</code> and compared character by character, so it finds exactly the terms
+     * {@link #id(String)} finds.
+     *
+     * @param term The term to look up.
+     * @return The id of the term or <code>-1</code>, if the term is unknown.
+     */
+    public int id(CharSequence term)
+    {
+        if (term instanceof String) {
+            return this.id((String) term);
+        }
+        int length = term.length();
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + term.charAt(i);
+        }
+        int mask = this.slots.length - 1;
+        for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+            int id = this.slots[slot];
+            if (id == EMPTY) {
+                return -1;
+            }
+            if (this.hashes[id] == hash && contentEquals(this.terms[id], term, length)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Retrieves the id of the given term and assigns the next free id, if the term is not known yet.
+     *
+     * @param term The term to intern.
+     * @return The id of the term.
+     */
+    public int intern(String term)
+    {
+        int hash = term.hashCode();
+        int mask = this.slots.length - 1;
+        int slot = mix(hash) & mask;
+        for (;; slot = (slot + 1) & mask) {
+            int id = this.slots[slot];
+            if (id == EMPTY) {
+                break;
+            }
+            if (this.hashes[id] == hash && this.terms[id].equals(term)) {
+                return id;
+            }
+        }
+        int id = this.size++;
+        if (id == this.terms.length) {
+            this.terms = Arrays.copyOf(this.terms, id * 2);
+            this.hashes = Arrays.copyOf(this.hashes, id * 2);
+        }
+        this.terms[id] = term;
+        this.hashes[id] = hash;
+        this.slots[slot] = id;
+        if (this.size > this.slots.length * LOAD_FACTOR) {
+            this.rehash(this.slots.length * 2);
+        }
+        return id;
+    }
+
+    /**
+     * Retrieves the term with the given id.
+     *
+     * @param id The id of the term.
+     * @return The term.
+     */
+    public String term(int id)
+    {
+        return this.terms[id];
+    }
+
+    /**
+     * Retrieves the number of terms known.
+     *
+     * @return The number of terms, which is also the next id to be assigned.
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Provides a read-only <code>Set</code> view of all terms, in order of their ids.
+     *
+     * @return The terms as set.
+     */
+    public Set<String> asSet()
+    {
+        return new AbstractSet<String>()
+        {
+            @Override
+            public Iterator<String> iterator()
+            {
+                return new Iterator<String>()
+                {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return this.next < size;
+                    }
+
+                    @Override
+                    public String next()
+                    {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return terms[this.next++];
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o)
+            {
+                return (o instanceof String) && id((String) o) >= 0;
+            }
+
+            @Override
+            public int size()
+            {
+                return size;
+            }
+        };
+    }
+
+    private void rehash(int capacity)
+    {
+        int[] newSlots = new int[capacity];
+        Arrays.fill(newSlots, EMPTY);
+        int mask = capacity - 1;
+        for (int id = 0; id < this.size; id++) {
+            int slot = mix(this.hashes[id]) & mask;
+            while (newSlots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            newSlots[slot] = id;
+        }
+        this.slots = newSlots;
+    }
+
+    private static boolean contentEquals(String known, CharSequence term, int length)
+    {
+        if (known.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (known.charAt(i) != term.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Spreads the bits of <code>String.hashCode</code>, which are poorly distributed in the lower bits for short
+     * terms.
+     */
+    static int mix(int hash)
+    {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Calculates a power of two table size that holds the given number of entries below the load factor.
+     */
+    static int tableSizeFor(int expectedSize)
+    {
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -2,14 +2,25 @@ package de.kl.classifier.test;
 
 import de.kl.classifier.Classification;
 import de.kl.classifier.Classifier;
+import de.kl.classifier.ConcurrentClassifier;
 import de.kl.classifier.dict.CategoryDictionary;
 import de.kl.classifier.dict.FeatureDictionary;
+import de.kl.classifier.store.HashedCountStore;
+import de.kl.classifier.token.NGramTokenizer;
+import de.kl.classifier.token.Tokenizer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 /**
@@ -24,15 +35,27 @@ public class MatrixTest
 
     private final FeatureDictionary featureDictionary;
     private final CategoryDictionary categoryDictionary;
+    private final int hashingBits;
+    private final int[] comparedHashingBits;
+    private final Tokenizer tokenizer;
+    private final String[] comparedNGrams;
 
     @Autowired
     public MatrixTest(
             FeatureDictionary featureDictionary,
-            CategoryDictionary categoryDictionary
+            CategoryDictionary categoryDictionary,
+            @Value("${model.hashing.bits:0}") int hashingBits,
+            @Value("${model.hashing.compare:12,16,20}") int[] comparedHashingBits,
+            Tokenizer tokenizer,
+            @Value("${tokenizer.ngrams.compare:2:0,3:0,1:3}") String[] comparedNGrams
     )
     {
         this.featureDictionary = featureDictionary;
         this.categoryDictionary = categoryDictionary;
+        this.hashingBits = hashingBits;
+        this.comparedHashingBits = comparedHashingBits;
+        this.tokenizer = tokenizer;
+        this.comparedNGrams = comparedNGrams;
     }
 
     public int[][] getTestMatrix()
@@ -53,28 +76,210 @@ public class MatrixTest
         return returnValue;
     }
 
-    private int[][] getTestCounts()
+    /**
+     * Compares the interned feature space with hashed feature spaces of the configured sizes. Each classifier learns
+     * every other entry of the training data and classifies the rest; its accuracy is measured together with the
+     * heap it retains after learning.
+     *
+     * @return The result of each feature space, the interned one first.
+     */
+    public List<FeatureSpace> getFeatureSpaceComparison()
     {
-        Classifier classifier = new Classifier();
-        List<String> categories = this.categoryDictionary.getCategories();
-        int[][] returnValue = new int[categories.size()][categories.size()];
-        int i = 0;
+        List<Classification> trainList = new ArrayList<>();
         List<Classification> testList = new ArrayList<>();
-        for (Classification entry : featureDictionary.getAllFeature()) {
-            if (i % 2 == 0) {
-                classifier.learn(entry);
-            } else {
-                testList.add(entry);
-            }
-            i++;
+        this.split(trainList, testList);
+        List<FeatureSpace> returnValue = new ArrayList<>();
+        returnValue.add(measure("interned", () -> newClassifier(0), Function.identity(), trainList, testList));
+        for (int bits : this.comparedHashingBits) {
+            returnValue.add(measure("hashed 2^" + bits, () -> newClassifier(bits), Function.identity(), trainList,
+                    testList));
+        }
+        return returnValue;
+    }
+
+    /**
+     * Compares learning the plain terms of the training data with learning them together with word and character
+     * n-grams, in the configured combinations of <code>words:chars</code>. The accuracy is measured like for
+     * {@link #getFeatureSpaceComparison()}, the speed of learning includes extracting the n-grams.
+     *
+     * @return The result of each combination, the plain terms first.
+     */
+    public List<FeatureSpace> getNGramComparison()
+    {
+        List<Classification> trainList = new ArrayList<>();
+        List<Classification> testList = new ArrayList<>();
+        this.split(trainList, testList);
+        Function<Collection<String>, Collection<String>> terms = features -> features.stream()
+                .filter(feature -> !NGramTokenizer.isNGram(feature))
+                .collect(Collectors.toList());
+        List<FeatureSpace> returnValue = new ArrayList<>();
+        returnValue.add(measure("terms", () -> newClassifier(this.hashingBits), terms, trainList, testList));
+        for (String compared : this.comparedNGrams) {
+            String[] lengths = compared.split(":");
+            NGramTokenizer nGrams = new NGramTokenizer(this.tokenizer, Integer.parseInt(lengths[0].trim()),
+                    Integer.parseInt(lengths[1].trim()));
+            returnValue.add(measure(lengths[0].trim() + " words, " + lengths[1].trim() + " chars",
+                    () -> newClassifier(this.hashingBits), terms.andThen(nGrams::extend), trainList, testList));
+        }
+        return returnValue;
+    }
+
+    private FeatureSpace measure(String name, Supplier<Classifier> classifiers,
+            Function<Collection<String>, Collection<String>> features, List<Classification> trainList,
+            List<Classification> testList)
+    {
+        long baseline = usedHeap();
+        Classifier classifier = classifiers.get();
+        long start = System.nanoTime();
+        for (Classification entry : trainList) {
+            classifier.learn(entry.getCategory(), features.apply(entry.getFeatureset()));
         }
+        long nanos = Math.max(System.nanoTime() - start, 1);
+        long bytes = usedHeap() - baseline;
+        int correct = 0;
         for (Classification testEntry : testList) {
+            Classification result = classifier.classify(features.apply(testEntry.getFeatureset()));
+            if (result != null && testEntry.getCategory().equals(result.getCategory())) {
+                correct++;
+            }
+        }
+        FeatureSpace returnValue = new FeatureSpace(name, classifier.snapshot().getFeatureSize(),
+                testList.isEmpty() ? 0 : correct * 100.0f / testList.size(), bytes,
+                trainList.size() * 1000000000L / nanos);
+        LOGGER.info("{}: {} features, {}% correct, {} bytes, {} learns/s.", returnValue.getName(),
+                returnValue.getFeatures(), returnValue.getAccuracy(), returnValue.getBytes(),
+                returnValue.getLearnsPerSecond());
+        return returnValue;
+    }
+
+    private int[][] getTestCounts()
+    {
+        Classifier classifier = newClassifier(this.hashingBits);
+        List<String> categories = this.categoryDictionary.getCategories();
+        int[][] returnValue = new int[categories.size()][categories.size()];
+        // two passes over the training data, so it never has to be in memory
+        this.forEachEntry(true, classifier::learn);
+        this.forEachEntry(false, testEntry -> {
             Classification result = classifier.classify(testEntry.getFeatureset());
             returnValue[categories.indexOf(testEntry.getCategory())][categories.indexOf(result.getCategory())]++;
             if (!testEntry.getCategory().equals(result.getCategory())) {
                 LOGGER.info("expected: {}, actual: {} for {}.", testEntry.getCategory(), result.getCategory(), testEntry.getFeatureset());
             }
-        }
+        });
         return returnValue;
     }
+
+    /**
+     * Streams either the entries to train with, every other entry of the training data starting with the first, or
+     * the entries to test with, the rest.
+     */
+    private void forEachEntry(boolean train, Consumer<Classification> action)
+    {
+        int[] i = {0};
+        try (Stream<Classification> entries = this.featureDictionary.streamAllFeature()) {
+            entries.forEachOrdered(entry -> {
+                if ((i[0]++ % 2 == 0) == train) {
+                    action.accept(entry);
+                }
+            });
+        }
+    }
+
+    /**
+     * Splits the training data like {@link #forEachEntry(boolean, Consumer)}. The comparisons learn the same entries
+     * with several classifiers, so they are tokenized once and kept.
+     */
+    private void split(List<Classification> trainList, List<Classification> testList)
+    {
+        int[] i = {0};
+        try (Stream<Classification> entries = this.featureDictionary.streamAllFeature()) {
+            entries.forEachOrdered(entry -> (i[0]++ % 2 == 0 ? trainList : testList).add(entry));
+        }
+    }
+
+    private static Classifier newClassifier(int hashingBits)
+    {
+        return (hashingBits > 0) ? new ConcurrentClassifier(new HashedCountStore(hashingBits)) : new Classifier();
+    }
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * The accuracy, memory and speed of one feature space.
+     */
+    public static class FeatureSpace
+    {
+
+        private final String name;
+        private final int features;
+        private final float accuracy;
+        private final long bytes;
+        private final long learnsPerSecond;
+
+        private FeatureSpace(String name, int features, float accuracy, long bytes, long learnsPerSecond)
+        {
+            this.name = name;
+            this.features = features;
+            this.accuracy = accuracy;
+            this.bytes = bytes;
+            this.learnsPerSecond = learnsPerSecond;
+        }
+
+        /**
+         * Retrieves the name of the feature space.
+         *
+         * @return The name.
+         */
+        public String getName()
+        {
+            return this.name;
+        }
+
+        /**
+         * Retrieves the number of features, or used buckets, learned.
+         *
+         * @return The number of features.
+         */
+        public int getFeatures()
+        {
+            return this.features;
+        }
+
+        /**
+         * Retrieves the share of the test entries classified correctly.
+         *
+         * @return The share in percent.
+         */
+        public float getAccuracy()
+        {
+            return this.accuracy;
+        }
+
+        /**
+         * Retrieves the heap retained by the classifier after learning, as measured between garbage collections.
+         *
+         * @return The number of bytes.
+         */
+        public long getBytes()
+        {
+            return this.bytes;
+        }
+
+        /**
+         * Retrieves the number of training entries learned per second.
+         *
+         * @return The number of learns per second.
+         */
+        public long getLearnsPerSecond()
+        {
+            return this.learnsPerSecond;
+        }
+    }
 }
@@ -0,0 +1,138 @@
+package de.kl.classifier.token;
+
+import java.io.IOException;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.en.PorterStemFilter;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.util.CharArraySet;
+
+/**
+ * Removes stop words and stems the remaining terms like a <code>StopFilter</code> followed by a
+ * <code>PorterStemFilter</code>, but looks each term up in a {@link StemCache} first. Text keeps using the same few
+ * thousand words, so almost every term is found there: a stop word is dropped and any other term replaced by its stem
+ * without running the stemmer. Only a term missing from the cache is checked against the stop words and stemmed, by a
+ * <code>PorterStemFilter</code> of its own, and the result is put into the cache. That stemmer is reset, ended and
+ * closed along with this filter, like any other stream of an analysis chain.
+ *
+ * @author konrad
+ */
+final class CachedStemFilter extends TokenFilter
+{
+
+    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+    private final PositionIncrementAttribute positionIncrementAttribute
+            = addAttribute(PositionIncrementAttribute.class);
+    private final StemCache cache;
+    private final CharArraySet stopWords;
+    private final SingleTermStream missing = new SingleTermStream();
+    private final PorterStemFilter stemmer = new PorterStemFilter(this.missing);
+
+    /**
+     * Constructs a filter on the given stream.
+     *
+     * @param input The stream of terms to filter.
+     * @param cache The cache of stems, it may be shared by many filters.
+     * @param stopWords The words to remove.
+     */
+    CachedStemFilter(TokenStream input, StemCache cache, CharArraySet stopWords)
+    {
+        super(input);
+        this.cache = cache;
+        this.stopWords = stopWords;
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException
+    {
+        int skippedPositions = 0;
+        while (this.input.incrementToken()) {
+            char[] buffer = this.termAttribute.buffer();
+            int length = this.termAttribute.length();
+            int hash = StemCache.hash(buffer, length);
+            StemCache.Entry entry = this.cache.get(hash, buffer, length);
+            if (entry == null) {
+                entry = this.analyse(hash, buffer, length);
+                this.cache.put(entry);
+            }
+            if (entry.isStopWord()) {
+                // like the stop filter, the positions of the dropped words are added to the next term
+                skippedPositions += this.positionIncrementAttribute.getPositionIncrement();
+                continue;
+            }
+            this.termAttribute.copyBuffer(entry.stem, 0, entry.stem.length);
+            if (skippedPositions > 0) {
+                this.positionIncrementAttribute.setPositionIncrement(
+                        this.positionIncrementAttribute.getPositionIncrement() + skippedPositions);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void reset() throws IOException
+    {
+        super.reset();
+        this.stemmer.reset();
+    }
+
+    @Override
+    public void end() throws IOException
+    {
+        super.end();
+        this.stemmer.end();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try {
+            super.close();
+        } finally {
+            this.stemmer.close();
+        }
+    }
+
+    private StemCache.Entry analyse(int hash, char[] buffer, int length) throws IOException
+    {
+        if (this.stopWords.contains(buffer, 0, length)) {
+            return new StemCache.Entry(hash, buffer, length, null, 0);
+        }
+        this.missing.set(buffer, length);
+        this.stemmer.incrementToken();
+        return new StemCache.Entry(hash, buffer, length, this.missing.term.buffer(), this.missing.term.length());
+    }
+
+    /**
+     * Hands a single term to the stemmer.
+     */
+    private static final class SingleTermStream extends TokenStream
+    {
+
+        private final CharTermAttribute term = addAttribute(CharTermAttribute.class);
+        private boolean pending;
+
+        private void set(char[] buffer, int length)
+        {
+            this.term.copyBuffer(buffer, 0, length);
+            this.pending = true;
+        }
+
+        @Override
+        public boolean incrementToken()
+        {
+            boolean returnValue = this.pending;
+            this.pending = false;
+            return returnValue;
+        }
+
+        @Override
+        public void reset() throws IOException
+        {
+            super.reset();
+            this.pending = false;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package de.kl.classifier.token;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Caches the terms of the texts tokenized by another tokenizer, so a text seen before skips the analysis entirely.
+ *
+ * The cache is bounded by weight: each text weighs its own length plus the lengths of its terms, roughly the number
+ * of characters kept for it. Caffeine decides which texts to keep with its W-TinyLFU policy, which keeps the texts
+ * asked for often and does not let a burst of texts seen only once flush them out. The terms are returned as an
+ * unmodifiable list shared by all callers.
+ *
+ * @author konrad
+ */
+public class CachingTokenizer implements Tokenizer
+{
+
+    private final Tokenizer tokenizer;
+    private final Cache<String, List<String>> cache;
+
+    /**
+     * Constructs a tokenizer caching the terms of the given one.
+     *
+     * @param tokenizer The tokenizer to cache.
+     * @param maximumWeight The number of characters of texts and terms the cache holds at most.
+     */
+    public CachingTokenizer(Tokenizer tokenizer, long maximumWeight)
+    {
+        this.tokenizer = tokenizer;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher(CachingTokenizer::weigh)
+                // evictions run on the calling thread instead of the common pool, they are cheap
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public Collection<String> tokenize(String featureString) throws IOException
+    {
+        try {
+            return this.cache.get(featureString, this::analyse);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The terms are passed from the cache.
+     */
+    @Override
+    public void tokenize(String featureString, TermConsumer consumer) throws IOException
+    {
+        for (String term : this.tokenize(featureString)) {
+            consumer.accept(term);
+        }
+    }
+
+    /**
+     * Retrieves the statistics of the cache: hits, misses, evictions and the time spent tokenizing on a miss.
+     *
+     * @return The statistics since the tokenizer was constructed.
+     */
+    public CacheStats stats()
+    {
+        return this.cache.stats();
+    }
+
+    /**
+     * Retrieves the number of texts cached.
+     *
+     * @return The approximate number of texts.
+     */
+    public long size()
+    {
+        return this.cache.estimatedSize();
+    }
+
+    private List<String> analyse(String featureString)
+    {
+        try {
+            return Collections.unmodifiableList(new ArrayList<>(this.tokenizer.tokenize(featureString)));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static int weigh(String featureString, List<String> terms)
+    {
+        long weight = featureString.length();
+        for (String term : terms) {
+            weight += term.length();
+        }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+}
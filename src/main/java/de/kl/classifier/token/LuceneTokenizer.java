@@ -1,56 +1,79 @@
 package de.kl.classifier.token;
 
 import java.io.IOException;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.core.StopAnalyzer;
-import org.apache.lucene.analysis.core.StopFilter;
-import org.apache.lucene.analysis.en.PorterStemFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.lucene.analysis.standard.StandardTokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
-import org.apache.lucene.util.AttributeFactory;
 
 /**
  * This tokenizer uses lucene to split the feature string into tokens, filers out english stop words and stems them.
  *
+ * The tokenizer is thread-safe without locking. The analysis chain is built by an {@link Analyzer}, which keeps one
+ * chain per thread and reuses it for every call of that thread. Stop words and stems are looked up in a
+ * {@link StemCache} shared by all chains, see {@link CachedStemFilter}.
+ *
  * @author konrad
  */
 public class LuceneTokenizer implements Tokenizer
 {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(LuceneTokenizer.class);
-    private final StandardTokenizer tokenizer;
-    private final CharTermAttribute attr;
-    private final PorterStemFilter porterStemFilter;
 
-    public LuceneTokenizer()
-    {
-        AttributeFactory factory = AttributeFactory.DEFAULT_ATTRIBUTE_FACTORY;
-        this.tokenizer = new StandardTokenizer(factory);
-        StopFilter stopFilter = new StopFilter(tokenizer, StopAnalyzer.ENGLISH_STOP_WORDS_SET);
-        this.porterStemFilter = new PorterStemFilter(stopFilter);
-        this.attr = porterStemFilter.addAttribute(CharTermAttribute.class);
+    /**
+     * The name of the field analysed. The chain is the same for all fields, so any name will do.
+     */
+    private static final String FIELD = "feature";
 
-    }
+    /**
+     * The number of terms the stem cache holds at most, enough for the vocabulary of everyday English.
+     */
+    private static final int STEM_CACHE_CAPACITY = 1 << 16;
+
+    private final StemCache stemCache = new StemCache(STEM_CACHE_CAPACITY);
+
+    private final Analyzer analyzer = new Analyzer()
+    {
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName)
+        {
+            StandardTokenizer tokenizer = new StandardTokenizer();
+            return new TokenStreamComponents(tokenizer,
+                    new CachedStemFilter(tokenizer, stemCache, StopAnalyzer.ENGLISH_STOP_WORDS_SET));
+        }
+    };
 
     @Override
     public Collection<String> tokenize(String featureString) throws IOException
     {
         List<String> returnValue = new ArrayList<>();
-        synchronized (this) {
-            tokenizer.setReader(new StringReader(featureString));
-            tokenizer.reset();
-            while (porterStemFilter.incrementToken()) {
-                returnValue.add(attr.toString());
-            }
-            tokenizer.close();
-        }
+        this.tokenize(featureString, term -> returnValue.add(term.toString()));
         LOGGER.debug("Tokenized {} into {}.", featureString, returnValue);
         return returnValue;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The term passed is the term attribute of the analysis chain of the calling thread.
+     */
+    @Override
+    public void tokenize(String featureString, TermConsumer consumer) throws IOException
+    {
+        try (TokenStream stream = this.analyzer.tokenStream(FIELD, featureString)) {
+            CharTermAttribute attr = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                consumer.accept(attr);
+            }
+            stream.end();
+        }
+    }
+
 }
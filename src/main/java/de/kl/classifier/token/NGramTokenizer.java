@@ -0,0 +1,289 @@
+package de.kl.classifier.token;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Adds word and character n-grams to the terms of another tokenizer. Next to each term, it passes the word n-grams
+ * ending with the term, up to the given number of words, and the character n-grams of the given length within the
+ * term.
+ *
+ * The n-grams are never put together as strings. Each one is a 64 bit polynomial hash, rolled along the words and
+ * characters: moving the window by one drops the oldest element and adds the newest in constant time, no matter how
+ * long the n-gram is. An n-gram is passed on as a short key made of {@link #MARKER} followed by its hash spread over
+ * five characters, which no tokenizer produces on its own. Equal n-grams give equal keys, so they are counted like any
+ * other feature, and a {@link de.kl.classifier.store.HashedCountStore} hashes the short key cheaply once more.
+ *
+ * The tokenizer is thread-safe if the wrapped one is, all state lives in the call.
+ *
+ * @author konrad
+ */
+public class NGramTokenizer implements Tokenizer
+{
+
+    /**
+     * The first character of the key of every n-gram.
+     */
+    public static final char MARKER = '\u0001';
+
+    /**
+     * The multiplier of the polynomial hash. Odd, so no bits get lost.
+     */
+    private static final long BASE = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Stands for the boundary of a term in its character n-grams, so prefixes and suffixes differ from the same
+     * characters inside a term.
+     */
+    private static final char BOUNDARY = '\u0002';
+
+    private static final int KEY_LENGTH = 6;
+    private static final int KEY_BITS = 13;
+
+    private final Tokenizer tokenizer;
+    private final int words;
+    private final int chars;
+
+    /**
+     * <code>BASE^n</code> for each n-gram length <code>n</code> of words, to drop the oldest word of a window.
+     */
+    private final long[] wordPowers;
+
+    /**
+     * <code>BASE^chars</code>, to drop the oldest character of a window.
+     */
+    private final long charPower;
+
+    /**
+     * Adds n-grams to the terms of a tokenizer, if any n-grams are asked for.
+     *
+     * @param tokenizer The tokenizer of the terms.
+     * @param words The longest word n-grams, <code>1</code> for the terms only.
+     * @param chars The length of character n-grams, <code>0</code> for none.
+     * @return The tokenizer itself, if there are no n-grams to add, or an n-gram tokenizer around it.
+     */
+    public static Tokenizer of(Tokenizer tokenizer, int words, int chars)
+    {
+        return (words > 1 || chars > 0) ? new NGramTokenizer(tokenizer, words, chars) : tokenizer;
+    }
+
+    /**
+     * Constructs a tokenizer adding n-grams to the terms of the given one.
+     *
+     * @param tokenizer The tokenizer splitting the text into terms.
+     * @param words The largest number of words in a word n-gram, <code>1</code> for none.
+     * @param chars The number of characters in a character n-gram, <code>0</code> for none.
+     * @throws IllegalArgumentException If words is less than <code>1</code> or chars is negative.
+     */
+    public NGramTokenizer(Tokenizer tokenizer, int words, int chars)
+    {
+        if (words < 1 || chars < 0) {
+            throw new IllegalArgumentException("Invalid n-gram lengths " + words + " words, " + chars + " chars");
+        }
+        this.tokenizer = tokenizer;
+        this.words = words;
+        this.chars = chars;
+        this.wordPowers = new long[words + 1];
+        for (int n = 1; n <= words; n++) {
+            this.wordPowers[n] = power(n);
+        }
+        this.charPower = power(chars);
+    }
+
+    @Override
+    public Collection<String> tokenize(String featureString) throws IOException
+    {
+        List<String> returnValue = new ArrayList<>();
+        this.tokenize(featureString, term -> returnValue.add(term.toString()));
+        return returnValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Each term is followed by the n-grams it completes.
+     */
+    @Override
+    public void tokenize(String featureString, TermConsumer consumer) throws IOException
+    {
+        this.tokenizer.tokenize(featureString, new Extractor(consumer));
+    }
+
+    /**
+     * Adds the n-grams to terms tokenized already.
+     *
+     * @param terms The terms in order of their occurrence, without n-grams.
+     * @return The terms, each followed by the n-grams it completes.
+     */
+    public Collection<String> extend(Collection<String> terms)
+    {
+        List<String> returnValue = new ArrayList<>();
+        Extractor extractor = new Extractor(term -> returnValue.add(term.toString()));
+        for (String term : terms) {
+            extractor.accept(term);
+        }
+        return returnValue;
+    }
+
+    /**
+     * Tells, whether a feature is the key of an n-gram.
+     *
+     * @param feature The feature.
+     * @return <code>true</code>, if the feature is an n-gram added by this tokenizer.
+     */
+    public static boolean isNGram(CharSequence feature)
+    {
+        return feature.length() == KEY_LENGTH && feature.charAt(0) == MARKER;
+    }
+
+    private static long power(int exponent)
+    {
+        long returnValue = 1;
+        for (int i = 0; i < exponent; i++) {
+            returnValue *= BASE;
+        }
+        return returnValue;
+    }
+
+    /**
+     * Finishes the hash of an n-gram: the kind and length of the n-gram are mixed in, so a word bigram does not
+     * collide with a character bigram of the same hash, and the bits are spread with the mixing step of MurmurHash3.
+     */
+    private static long finish(long hash, int length, boolean words)
+    {
+        long h = hash + length * 2 + (words ? 1 : 0);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * The character at the given position of a term enclosed in boundaries.
+     */
+    private static char boundedCharAt(CharSequence term, int index)
+    {
+        return (index == 0 || index == term.length() + 1) ? BOUNDARY : term.charAt(index - 1);
+    }
+
+    /**
+     * Passes the terms of one text on together with their n-grams. It keeps the hashes of the last words and the
+     * rolling hash of each word n-gram length.
+     */
+    private class Extractor implements TermConsumer
+    {
+
+        private final TermConsumer consumer;
+        private final long[] recentWords = new long[words];
+        private final long[] wordNGramHashes = new long[words + 1];
+        private final Key key = new Key();
+        private int wordCount;
+
+        private Extractor(TermConsumer consumer)
+        {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void accept(CharSequence term)
+        {
+            this.consumer.accept(term);
+            // the term stays valid until this call returns
+            if (chars > 0) {
+                this.charNGrams(term);
+            }
+            if (words > 1) {
+                this.wordNGrams(term);
+            }
+        }
+
+        private void charNGrams(CharSequence term)
+        {
+            int length = term.length() + 2;
+            long hash = 0;
+            for (int i = 0; i < length; i++) {
+                hash = hash * BASE + boundedCharAt(term, i);
+                if (i >= chars) {
+                    hash -= boundedCharAt(term, i - chars) * charPower;
+                }
+                if (i + 1 >= chars) {
+                    this.consumer.accept(this.key.of(finish(hash, chars, false)));
+                }
+            }
+        }
+
+        private void wordNGrams(CharSequence term)
+        {
+            long wordHash = 0xCBF29CE484222325L;
+            int length = term.length();
+            for (int i = 0; i < length; i++) {
+                wordHash ^= term.charAt(i);
+                wordHash *= 0x100000001B3L;
+            }
+            for (int n = 2; n <= words; n++) {
+                long hash = this.wordNGramHashes[n] * BASE + wordHash;
+                if (this.wordCount >= n) {
+                    // the word leaving the window of n words came n words before this one
+                    hash -= this.recentWords[(this.wordCount - n) % words] * wordPowers[n];
+                }
+                this.wordNGramHashes[n] = hash;
+                if (this.wordCount + 1 >= n) {
+                    this.consumer.accept(this.key.of(finish(hash, n, true)));
+                }
+            }
+            this.recentWords[this.wordCount % words] = wordHash;
+            this.wordCount++;
+        }
+    }
+
+    /**
+     * The key of an n-gram: the marker followed by the 64 bits of its hash in five characters of 13 bits each. The
+     * characters stay below the surrogates, so the key survives being encoded as UTF-8.
+     */
+    private static class Key implements CharSequence
+    {
+
+        private final char[] chars = new char[KEY_LENGTH];
+
+        private Key()
+        {
+            this.chars[0] = MARKER;
+        }
+
+        private Key of(long hash)
+        {
+            for (int i = 1; i < KEY_LENGTH; i++) {
+                this.chars[i] = (char) ((hash >>> ((i - 1) * KEY_BITS)) & ((1 << KEY_BITS) - 1));
+            }
+            return this;
+        }
+
+        @Override
+        public int length()
+        {
+            return KEY_LENGTH;
+        }
+
+        @Override
+        public char charAt(int index)
+        {
+            return this.chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end)
+        {
+            return new String(this.chars, start, end - start);
+        }
+
+        @Override
+        public String toString()
+        {
+            return new String(this.chars);
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package de.kl.classifier.token;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import org.springframework.stereotype.Component;
@@ -18,13 +17,79 @@ public class SplitTokenizer implements Tokenizer
     public Collection<String> tokenize(String featureString)
     {
         List<String> returnValue = new ArrayList<>();
-        for (String part : featureString.split("\\s")) {
-            if (part != null && !part.isEmpty())
-            {
-                returnValue.add(part);
+        this.tokenize(featureString, term -> returnValue.add(term.toString()));
+        return returnValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The terms are the parts of the text between whitespace, passed as one window on the text that is moved from
+     * term to term.
+     */
+    @Override
+    public void tokenize(String featureString, TermConsumer consumer)
+    {
+        Window window = new Window(featureString);
+        int start = 0;
+        int length = featureString.length();
+        for (int i = 0; i <= length; i++) {
+            if (i == length || isWhitespace(featureString.charAt(i))) {
+                if (i > start) {
+                    window.start = start;
+                    window.end = i;
+                    consumer.accept(window);
+                }
+                start = i + 1;
             }
         }
-        return returnValue;
     }
-    
+
+    /**
+     * Tells, whether the character is whitespace as matched by <code>\s</code> in a regular expression.
+     */
+    private static boolean isWhitespace(char c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * A part of a string.
+     */
+    private static class Window implements CharSequence
+    {
+
+        private final String text;
+        private int start;
+        private int end;
+
+        private Window(String text)
+        {
+            this.text = text;
+        }
+
+        @Override
+        public int length()
+        {
+            return this.end - this.start;
+        }
+
+        @Override
+        public char charAt(int index)
+        {
+            return this.text.charAt(this.start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end)
+        {
+            return this.text.substring(this.start + start, this.start + end);
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.text.substring(this.start, this.end);
+        }
+    }
 }
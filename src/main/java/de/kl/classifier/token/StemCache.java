@@ -0,0 +1,121 @@
+package de.kl.classifier.token;
+
+import java.util.Arrays;
+
+/**
+ * A bounded cache from the characters of a term to its stem, shared by all threads without locking.
+ *
+ * The cache is a direct-mapped table: the hash of a term selects its only slot, and a new entry replaces whatever was
+ * there. The entries are immutable and published through their final fields, so a thread reading a slot while another
+ * replaces it sees either entry completely, or an empty slot. A lost update only costs stemming the term once more.
+ *
+ * @author konrad
+ */
+final class StemCache
+{
+
+    private final Entry[] entries;
+    private final int mask;
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param capacity The number of slots, rounded up to a power of two.
+     */
+    StemCache(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.entries = new Entry[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Retrieves the entry of a term.
+     *
+     * @param hash The hash of the term, see {@link #hash(char[], int)}.
+     * @param buffer The characters of the term.
+     * @param length The number of characters of the term.
+     * @return The entry or <code>null</code>, if the term is not cached.
+     */
+    Entry get(int hash, char[] buffer, int length)
+    {
+        Entry entry = this.entries[hash & this.mask];
+        return (entry != null && entry.matches(hash, buffer, length)) ? entry : null;
+    }
+
+    /**
+     * Puts an entry into the cache, replacing the entry in its slot.
+     *
+     * @param entry The entry.
+     */
+    void put(Entry entry)
+    {
+        this.entries[entry.hash & this.mask] = entry;
+    }
+
+    /**
+     * Calculates the hash of a term, spread so the lower bits select the slot.
+     *
+     * @param buffer The characters of the term.
+     * @param length The number of characters of the term.
+     * @return The hash.
+     */
+    static int hash(char[] buffer, int length)
+    {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * A term and its stem.
+     */
+    static final class Entry
+    {
+
+        private final int hash;
+        private final char[] term;
+
+        /**
+         * The stem, <code>null</code> if the term is a stop word.
+         */
+        final char[] stem;
+
+        /**
+         * Constructs an entry, copying the characters.
+         *
+         * @param hash The hash of the term.
+         * @param term The characters of the term.
+         * @param termLength The number of characters of the term.
+         * @param stem The characters of the stem, <code>null</code> if the term is a stop word.
+         * @param stemLength The number of characters of the stem.
+         */
+        Entry(int hash, char[] term, int termLength, char[] stem, int stemLength)
+        {
+            this.hash = hash;
+            this.term = Arrays.copyOf(term, termLength);
+            this.stem = (stem == null) ? null : Arrays.copyOf(stem, stemLength);
+        }
+
+        boolean isStopWord()
+        {
+            return this.stem == null;
+        }
+
+        private boolean matches(int hash, char[] buffer, int length)
+        {
+            if (this.hash != hash || this.term.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (this.term[i] != buffer[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package de.kl.classifier.token;
+
+/**
+ * Receives the terms of a text one after another, as the text is tokenized.
+ *
+ * The term passed is only valid during the call: tokenizers reuse it for the next term to avoid creating a
+ * <code>String</code> for each term. A consumer keeping a term has to copy it, e.g. with <code>toString()</code>.
+ *
+ * @author konrad
+ */
+@FunctionalInterface
+public interface TermConsumer
+{
+
+    /**
+     * Accepts the next term of the text.
+     *
+     * @param term The term, only valid during the call.
+     */
+    void accept(CharSequence term);
+}
@@ -10,4 +10,21 @@ import java.util.Collection;
 public interface Tokenizer
 {
      Collection<String> tokenize(String featureString) throws IOException;
+
+    /**
+     * Tokenizes the given text and passes each term to the consumer as soon as it is found, without collecting the
+     * terms. Implementations pass a reused <code>CharSequence</code>, so no <code>String</code> is created per term.
+     *
+     * The default implementation passes the terms of {@link #tokenize(String)}.
+     *
+     * @param featureString The text to tokenize.
+     * @param consumer The consumer of the terms, in order of their occurrence.
+     * @throws IOException If the text can not be tokenized.
+     */
+    default void tokenize(String featureString, TermConsumer consumer) throws IOException
+    {
+        for (String term : this.tokenize(featureString)) {
+            consumer.accept(term);
+        }
+    }
 }
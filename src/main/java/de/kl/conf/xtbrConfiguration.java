@@ -1,12 +1,30 @@
 package de.kl.conf;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import de.flapdoodle.embed.mongo.config.IMongodConfig;
 import de.flapdoodle.embed.mongo.config.MongodConfigBuilder;
 import de.flapdoodle.embed.mongo.distribution.Version;
 import de.kl.classifier.Classifier;
+import de.kl.classifier.ClassifierModelPublisher;
+import de.kl.classifier.MappedClassifierFile;
+import de.kl.classifier.ClassifierFile;
+import de.kl.classifier.store.ConcurrentCountStore;
+import de.kl.classifier.store.HashedCountStore;
+import de.kl.classifier.token.CachingTokenizer;
 import de.kl.classifier.token.LuceneTokenizer;
+import de.kl.classifier.token.NGramTokenizer;
 import de.kl.classifier.token.Tokenizer;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -19,16 +37,122 @@ public class xtbrConfiguration
 {
 
     @Bean
-    public Classifier getClassifier()
+    @ConditionalOnProperty(name = "model.mapped", havingValue = "false", matchIfMissing = true)
+    public ClassifierFile classifierFile(
+            @Value("${training.file}") String trainingFile,
+            @Value("${model.file:data/model.bin}") String modelFile,
+            @Value("${model.mapped.file:}") String mappedFile,
+            @Value("${model.save.interval:300000}") long saveInterval,
+            @Value("${model.hashing.bits:0}") int hashingBits,
+            @Value("${tokenizer.ngrams.words:1}") int ngramWords,
+            @Value("${tokenizer.ngrams.chars:0}") int ngramChars
+    )
     {
-        Classifier returnValue = new Classifier();
+        if (hashingBits > 0 && !mappedFile.isEmpty()) {
+            throw new IllegalArgumentException("model.hashing.bits and model.mapped.file can not be combined, hashed "
+                    + "features have no names to look them up by in a mapped file");
+        }
+        Supplier<ConcurrentCountStore> stores = (hashingBits > 0)
+                ? () -> new HashedCountStore(hashingBits)
+                : ConcurrentCountStore::new;
+        return new ClassifierFile(Paths.get(modelFile), mappedFile.isEmpty() ? null : Paths.get(mappedFile),
+                Paths.get(trainingFile), stores, ngramWords, ngramChars, saveInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "model.mapped", havingValue = "false", matchIfMissing = true)
+    public Classifier getClassifier(ClassifierFile classifierFile)
+    {
+        Classifier returnValue = classifierFile.getClassifier();
+        return returnValue;
+    }
+
+    /**
+     * The file another process writes to <code>model.mapped.file</code>. The writer replaces the file with each save,
+     * it is checked for a new version every <code>model.mapped.reload.interval</code> milliseconds and mapped again.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "model.mapped", havingValue = "true")
+    public MappedClassifierFile mappedClassifierFile(
+            @Value("${model.mapped.file}") String mappedFile,
+            @Value("${model.mapped.reload.interval:10000}") long reloadInterval
+    ) throws IOException
+    {
+        return new MappedClassifierFile(Paths.get(mappedFile), reloadInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A read-only classifier on the file another process writes to <code>model.mapped.file</code>. It can not learn,
+     * so training requests are rejected and the training file is only read.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "model.mapped", havingValue = "true")
+    public Classifier getMappedClassifier(MappedClassifierFile mappedClassifierFile)
+    {
+        return mappedClassifierFile.getClassifier();
+    }
+
+    /**
+     * Publishes the learns every <code>classifier.publish.interval</code> milliseconds, or after
+     * <code>classifier.publish.learns</code> learns, but no sooner than <code>classifier.publish.min.interval</code>
+     * milliseconds after the last snapshot.
+     */
+    @Bean
+    public ClassifierModelPublisher classifierModelPublisher(
+            Classifier classifier,
+            Optional<MappedClassifierFile> mappedClassifierFile,
+            @Value("${classifier.publish.learns:1000}") int learnsPerPublish,
+            @Value("${classifier.publish.min.interval:100}") long minPublishInterval,
+            @Value("${classifier.publish.interval:1000}") long publishInterval
+    )
+    {
+        ClassifierModelPublisher returnValue = new ClassifierModelPublisher(classifier, learnsPerPublish,
+                minPublishInterval, publishInterval, TimeUnit.MILLISECONDS);
+        mappedClassifierFile.ifPresent(file -> file.addListener(returnValue::replace));
+        return returnValue;
+    }
+
+    /**
+     * The tokenizer for training and classifying. With <code>tokenizer.ngrams.words</code> above <code>1</code> or
+     * <code>tokenizer.ngrams.chars</code> above <code>0</code> it adds word and character n-grams to the terms. The
+     * classifier file records the n-grams it was learned with, when they change the training file is learned again.
+     * With <code>tokenizer.cache.weight</code> above <code>0</code> the features of texts seen before are taken from
+     * a cache holding up to that many characters.
+     */
+    @Bean
+    Tokenizer tokenizer(
+            @Value("${tokenizer.ngrams.words:1}") int words,
+            @Value("${tokenizer.ngrams.chars:0}") int chars,
+            @Value("${tokenizer.cache.weight:0}") long cacheWeight
+    )
+    {
+        Tokenizer returnValue = NGramTokenizer.of(new LuceneTokenizer(), words, chars);
+        if (cacheWeight > 0) {
+            returnValue = new CachingTokenizer(returnValue, cacheWeight);
+        }
         return returnValue;
     }
 
+    /**
+     * Publishes the statistics of the tokenizer cache as <code>tokenizer.cache.*</code> on the metrics endpoint, if
+     * the tokenizer is cached.
+     */
     @Bean
-    Tokenizer tokenizer()
+    PublicMetrics tokenizerCacheMetrics(Tokenizer tokenizer)
     {
-        return new LuceneTokenizer();
+        return () -> {
+            if (!(tokenizer instanceof CachingTokenizer)) {
+                return Collections.emptyList();
+            }
+            CachingTokenizer cachingTokenizer = (CachingTokenizer) tokenizer;
+            CacheStats stats = cachingTokenizer.stats();
+            return Arrays.<Metric<?>>asList(
+                    new Metric<>("tokenizer.cache.size", cachingTokenizer.size()),
+                    new Metric<>("tokenizer.cache.hits", stats.hitCount()),
+                    new Metric<>("tokenizer.cache.misses", stats.missCount()),
+                    new Metric<>("tokenizer.cache.evictions", stats.evictionCount()),
+                    new Metric<>("tokenizer.cache.hitRatio", stats.hitRate()));
+        };
     }
 
 }
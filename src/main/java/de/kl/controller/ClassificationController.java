@@ -1,20 +1,28 @@
 package de.kl.controller;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import de.kl.classifier.Classification;
-import de.kl.classifier.Classifier;
+import de.kl.classifier.ClassifierModel;
+import de.kl.classifier.ClassifierModelPublisher;
 import de.kl.classifier.token.Tokenizer;
 import de.kl.classifier.dict.CategoryDictionary;
 import de.kl.classifier.dict.FeatureDictionary;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.io.UncheckedIOException;
 import java.util.Collections;
 import java.util.List;
+import javax.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
  *
@@ -24,23 +32,35 @@ import org.springframework.web.bind.annotation.RequestMethod;
 public class ClassificationController
 {
 
-    private final Classifier classifier;
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final ClassifierModelPublisher classifier;
     private final CategoryDictionary categoryDictionary;
     private final FeatureDictionary featureDictionary;
     private final Tokenizer tokenizer;
+    private final int resultSize;
+
+    /**
+     * Whether the classifier can learn, it can not on a file mapped from another process.
+     */
+    private final boolean trainable;
 
     @Autowired
     public ClassificationController(
-            Classifier classifier,
+            ClassifierModelPublisher classifier,
             CategoryDictionary categoryDictionary,
             FeatureDictionary featureDictionary,
-            Tokenizer tokenizer
+            Tokenizer tokenizer,
+            @Value("${classification.result.size:10}") int resultSize,
+            @Value("${model.mapped:false}") boolean mapped
     )
     {
         this.classifier = classifier;
         this.categoryDictionary = categoryDictionary;
         this.featureDictionary = featureDictionary;
         this.tokenizer = tokenizer;
+        this.resultSize = resultSize;
+        this.trainable = !mapped;
     }
 
     @RequestMapping("")
@@ -53,29 +73,77 @@ public class ClassificationController
     @RequestMapping(value = "/classify", method = RequestMethod.POST)
     public String classifyRawText(String inputText, Model model) throws IOException
     {
-        Collection<Classification> result = this.classifier.classifyDetailed(tokenizer.tokenize(inputText));
-        List<Classification> resultAsList = new ArrayList<>();
-        resultAsList.addAll(result);
-        Collections.sort(resultAsList, (Classification o1, Classification o2) -> {
-            return -1 * Float.compare(o1.getProbability(), o2.getProbability());
-        });
-
-        model.addAttribute("result", resultAsList);
+        List<Classification> result = this.classifier.getModel().classifyTopK(inputText, this.tokenizer,
+                this.resultSize);
+        model.addAttribute("result", result);
         return this.addDefaultValuesToModel(model);
     }
 
+    /**
+     * Classifies a JSON array of texts. The texts are tokenized and classified in parallel, the most probable category
+     * of each text is written back in the same order as a JSON array of
+     * <code>{"category": ..., "probability": ...}</code> objects while the remaining texts are still classified.
+     *
+     * @param inputTexts The texts to classify.
+     * @return The response body writing the classifications.
+     */
+    @RequestMapping(value = "/classify/batch", method = RequestMethod.POST,
+            consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public StreamingResponseBody classifyBatch(@RequestBody List<String> inputTexts)
+    {
+        ClassifierModel model = this.classifier.getModel();
+        return out -> {
+            try (JsonGenerator json = JSON.createGenerator(out)) {
+                json.writeStartArray();
+                model.classifyTexts(inputTexts, this.tokenizer).forEachOrdered(classification -> {
+                    try {
+                        json.writeStartObject();
+                        if (classification != null) {
+                            json.writeStringField("category", classification.getCategory());
+                            json.writeNumberField("probability", classification.getProbability());
+                        }
+                        json.writeEndObject();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+                json.writeEndArray();
+            }
+        };
+    }
+
+    /**
+     * Adds a training text to the training file, then learns it. A text that could not be written is not learned, so
+     * the classifier never holds a text that is lost with the next restart. A mapped classifier is trained by the
+     * process writing its file, the text is rejected with <code>403 Forbidden</code>.
+     *
+     * @param inputText The text.
+     * @param category The category of the text.
+     * @param model The model of the view.
+     * @param response The response, to reject the text.
+     * @return The view.
+     * @throws IOException If the text could not be tokenized.
+     */
     @RequestMapping(value = "/train", method = RequestMethod.POST)
-    public String classifyRawText(String inputText, String category, Model model) throws IOException
+    public String classifyRawText(String inputText, String category, Model model, HttpServletResponse response)
+            throws IOException
     {
-        this.classifier.learn(category, tokenizer.tokenize(inputText));
-        this.featureDictionary.addFeature(inputText, category);
         model.addAttribute("result", Collections.EMPTY_LIST);
+        if (!this.trainable) {
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            model.addAttribute("message", "The classifier is read from a mapped file and can not be trained here.");
+            return this.addDefaultValuesToModel(model);
+        }
+        this.featureDictionary.addFeature(inputText, category);
+        this.classifier.learn(category, tokenizer.tokenize(inputText));
         return this.addDefaultValuesToModel(model);
     }
 
     private String addDefaultValuesToModel(Model model)
     {
         model.addAttribute("categories", this.categoryDictionary.getCategories());
+        model.addAttribute("trainable", this.trainable);
         return "overview";
     }
 }
@@ -35,4 +35,16 @@ public class TestController
         model.addAttribute("categories", this.categoryDictionary.getCategories());
         return "testScreen";
     }
+
+    @RequestMapping("featurespace")
+    public String getFeatureSpaceComparison(Model model) {
+        model.addAttribute("featureSpaces", this.matrixTest.getFeatureSpaceComparison());
+        return "featureSpaceScreen";
+    }
+
+    @RequestMapping("ngrams")
+    public String getNGramComparison(Model model) {
+        model.addAttribute("featureSpaces", this.matrixTest.getNGramComparison());
+        return "featureSpaceScreen";
+    }
 }
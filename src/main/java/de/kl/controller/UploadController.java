@@ -7,12 +7,17 @@ package de.kl.controller;
 
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
-import com.mongodb.DBObject;
 import de.kl.io.csv.CsvReader;
 import de.kl.io.csv.CsvReader.UserSettings;
+import de.kl.io.csv.ParallelCsvReader;
+import de.kl.io.mongo.BulkInserter;
+import de.kl.io.mongo.MongoBatchWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Map;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -33,13 +38,34 @@ public class UploadController
     private final MongoTemplate mongoTemplate;
     private final DBCollection rawDataCollection;
 
+    /**
+     * Uploads of at least this many bytes are parsed by a {@link ParallelCsvReader}.
+     */
+    private final long parallelThreshold;
+    private final int parallelism;
+    private final int batchSize;
+    private final int queueCapacity;
+    private final int writers;
+    private final long reportInterval;
+
     @Autowired
-    public UploadController(MongoTemplate mongoTemplate
+    public UploadController(MongoTemplate mongoTemplate,
+            @Value("${upload.parallel.threshold:67108864}") long parallelThreshold,
+            @Value("${upload.parallelism:0}") int parallelism,
+            @Value("${upload.batch.size:1000}") int batchSize,
+            @Value("${upload.queue.capacity:16}") int queueCapacity,
+            @Value("${upload.writers:2}") int writers,
+            @Value("${upload.report.interval:10000}") long reportInterval
     )
     {
         this.mongoTemplate = mongoTemplate;
         this.rawDataCollection = this.mongoTemplate.getCollection("rawData");
-
+        this.parallelThreshold = parallelThreshold;
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.writers = writers;
+        this.reportInterval = reportInterval;
     }
 
     @RequestMapping(value = "", method = RequestMethod.GET)
@@ -53,16 +79,42 @@ public class UploadController
             RedirectAttributes redirectAttributes) throws IOException
     {
 
-        try (CsvReader reader = new CsvReader(file.getInputStream(), new UserSettings())) {
-            for (Map<String, String> csvLine : reader) {
-                DBObject dbObject = new BasicDBObject(csvLine);
-                this.rawDataCollection.insert(dbObject);
+        BulkInserter.Summary summary;
+        try (BulkInserter inserter = new BulkInserter(new MongoBatchWriter(this.rawDataCollection), this.batchSize,
+                this.queueCapacity, this.writers, this.reportInterval)) {
+            if (file.getSize() >= this.parallelThreshold) {
+                this.insertInParallel(file, inserter);
+            } else {
+                try (CsvReader reader = new CsvReader(file.getInputStream(), new UserSettings())) {
+                    for (Map<String, String> csvLine : reader) {
+                        inserter.add(new BasicDBObject(csvLine));
+                    }
+                }
             }
-            redirectAttributes.addFlashAttribute("successMessage",
-                    "You successfully uploaded " + file.getOriginalFilename() + "! Added " + reader.getCurrentLineNumber()
-                            + " records to the document store");
+            summary = inserter.finish();
         }
+        redirectAttributes.addFlashAttribute("successMessage",
+                "You successfully uploaded " + file.getOriginalFilename() + "! Added " + summary.getRows()
+                        + " records to the document store in " + String.format("%.1f", summary.getSeconds())
+                        + " s, " + summary.getRowsPerSecond() + " records/s");
 
         return "redirect:/data/upload";
     }
+
+    /**
+     * Stores a large upload in a temporary file and parses it with several threads, which add the records in any
+     * order.
+     */
+    private void insertInParallel(MultipartFile file, BulkInserter inserter) throws IOException
+    {
+        Path upload = Files.createTempFile("upload", ".csv");
+        try {
+            file.transferTo(upload.toFile());
+            try (ParallelCsvReader reader = new ParallelCsvReader(upload, new UserSettings(), this.parallelism)) {
+                reader.forEach(csvLine -> inserter.add(new BasicDBObject(csvLine)), false);
+            }
+        } finally {
+            Files.deleteIfExists(upload);
+        }
+    }
 }
@@ -0,0 +1,46 @@
+package de.kl.io.csv;
+
+/**
+ * A header resolved to the index of its column once, to look up a column of each {@link CsvRow} without comparing
+ * headers.
+ *
+ * @author konrad
+ */
+public final class CsvColumn
+{
+
+    private final String header;
+    private final int index;
+
+    CsvColumn(String header, int index)
+    {
+        this.header = header;
+        this.index = index;
+    }
+
+    /**
+     * Gets the header of the column.
+     *
+     * @return The header.
+     */
+    public String getHeader()
+    {
+        return this.header;
+    }
+
+    /**
+     * Gets the index of the column.
+     *
+     * @return The index, starting at <code>0</code>.
+     */
+    public int getIndex()
+    {
+        return this.index;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.header + "@" + this.index;
+    }
+}
@@ -4,13 +4,20 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A stream based parser for parsing delimited text data from a file or a stream.
@@ -18,14 +25,51 @@ import java.util.stream.IntStream;
  * The CsvReader implements Iterable to make it as convinient as possible to loop over an csv file. A CsvReader can be
  * used exactly one time for a file. After reaching the end of the file, the reader should be closed. If the file has to
  * be read a second time, a new reader has to be created.
+ *
+ * The stream is read in blocks and decoded by a {@link CharsetDecoder} into a window of chars, UTF-8 unless configured
+ * otherwise. Each column is scanned in the window for the next qualifier, delimiter or line delimiter; the chars in
+ * between are copied as a whole into a {@link CsvRow}, which is reused for all lines.
+ *
+ * Besides iterating over maps from header to value, the lines can be read as the row itself through {@link #rows()},
+ * with the columns looked up by index or by a {@link CsvColumn} resolved once. This allocates nothing per line, which
+ * matters for wide data, where building the maps takes most of the time.
  */
 public class CsvReader implements Closeable, Iterable<Map<String, String>>
 {
 
+    private static final int BLOCK_SIZE = 1 << 16;
+
     private final UserSettings userSettings;
     private final List<String> headers;
-    private final ReadingStatus readingStatus;
-    private final ReadingBuffer readingBuffer;
+    private final InputStream inputStream;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes = ByteBuffer.allocate(BLOCK_SIZE);
+    private final char[] window = new char[BLOCK_SIZE];
+    private final CharBuffer windowBuffer = CharBuffer.wrap(this.window);
+
+    /**
+     * The next char of the window to scan.
+     */
+    private int position;
+
+    /**
+     * The number of chars decoded into the window.
+     */
+    private int limit;
+    private boolean endOfBytes;
+    private boolean endOfChars;
+
+    private final CsvRow row;
+
+    /**
+     * The number of lines read, the header included.
+     */
+    private long lineNumber;
+
+    /**
+     * The number of the line returned last.
+     */
+    private long currentLineNumber;
 
     /**
      * Constructs a {@link CsvReader} wiht all dependencies set
@@ -36,110 +80,208 @@ public class CsvReader implements Closeable, Iterable<Map<String, String>>
      * @throws java.io.IOException
      */
     public CsvReader(InputStream inputStream, UserSettings userSettings) throws IOException
+    {
+        this(checkAvailable(inputStream), userSettings, null);
+    }
+
+    /**
+     * Constructs a {@link CsvReader} for a part of the data, which does not start with the header.
+     *
+     * @param inputStream The stream to use as the data source, possibly empty.
+     * @param userSettings defines custom settings for the csv reading.
+     * @param headers The headers of the data, or <code>null</code> to read them from the first line of the stream.
+     * @throws java.io.IOException
+     */
+    CsvReader(InputStream inputStream, UserSettings userSettings, List<String> headers) throws IOException
     {
         this.userSettings = userSettings;
         checkArgument(inputStream == null, "Parameter inputStream must not be null.");
-        checkArgument(inputStream.available() == 0, "The given input stream is either closed or empty.");
         checkArgument(userSettings == null, "Parameter userSettings must not be null.");
-        this.readingBuffer = new ReadingBuffer(inputStream);
-        this.readingStatus = new ReadingStatus();
-        this.headers = new ArrayList<>(this.readLine());
+        this.inputStream = inputStream;
+        this.decoder = userSettings.charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes.flip();
+        this.headers = new ArrayList<>();
+        this.row = new CsvRow(this.headers);
+        if (headers != null) {
+            this.headers.addAll(headers);
+        } else if (this.readLine()) {
+            for (int i = 0; i < this.row.size(); i++) {
+                this.headers.add(this.row.getString(i));
+            }
+        }
+    }
+
+    private static InputStream checkAvailable(InputStream inputStream) throws IOException
+    {
+        checkArgument(inputStream == null, "Parameter inputStream must not be null.");
+        checkArgument(inputStream.available() == 0, "The given input stream is either closed or empty.");
+        return inputStream;
     }
 
     /**
-     * Gets the number of the current line.
+     * Gets the headers of the data.
      *
-     * @return The index of the current line.
+     * @return The headers, in the order of the columns.
      */
-    public long getCurrentLineNumber()
+    List<String> getHeaders()
+    {
+        return this.headers;
+    }
+
+    /**
+     * Resolves a header to its column, to look up the column in each {@link CsvRow}.
+     *
+     * @param header The header.
+     * @return The column of the header, the first one if the header is not unique.
+     * @throws IllegalArgumentException If there is no such header.
+     */
+    public CsvColumn column(String header)
     {
-        return this.readingStatus.lineNumber - 1;
+        int index = this.headers.indexOf(header);
+        checkArgument(index < 0, "Unknown header " + header);
+        return new CsvColumn(header, index);
     }
 
-    private Map<String, String> getLine() throws IOException
+    /**
+     * Gets the number of the current line.
+     *
+     * @return The index of the current line.
+     */
+    public long getCurrentLineNumber()
     {
-        return IntStream.range(0, headers.size()).boxed().collect(Collectors.toMap(headers::get, this.readLine()::get));
+        return this.currentLineNumber;
     }
 
     /**
-     * Reads another line .
+     * Reads another line, skipping empty lines if configured.
      *
-     * @return the list of columns of the current line
+     * @return <code>true</code>, if the line was read into the row, <code>false</code> at the end of the data
      * @exception IOException Thrown if an error occurs while reading data from the source stream.
      */
-    private List<String> readLine() throws IOException
+    private boolean readLine() throws IOException
     {
-        readingStatus.returnValue.clear();
-        readingStatus.lineIsEnded = false;
-        while (!readingStatus.lineIsEnded && !readingBuffer.isExhausted()) {
-            if (this.readingStatus.startedColumn) {
-                readInStartedColumn(readingBuffer.getCurrentChar());
-            } else {
-                startColumn(readingBuffer.getCurrentChar());
+        while (this.position < this.limit || this.fill()) {
+            this.row.clear(this.lineNumber);
+            while (!this.readColumn()) {
+                // next column
             }
-        }
-        if (readingBuffer.isExhausted()) {
-            if (!readingStatus.lineIsEnded) {
-                endLine();
+            if (!this.userSettings.skipEmptyLines || !this.row.isEmpty()) {
+                this.lineNumber++;
+                return true;
             }
-            readingStatus.hasMoreData = false;
         }
-        return readingStatus.returnValue;
+        return false;
     }
 
-    private void readInStartedColumn(int currentChar)
+    /**
+     * Reads a column up to the next delimiter, the end of the line or the end of the data. A column starting with the
+     * qualifier is qualified: delimiters and line delimiters are part of it up to the next qualifier. Two qualifiers
+     * in a row stand for the qualifier itself. The value is trimmed.
+     *
+     * @return <code>true</code>, if the column ended the line
+     */
+    private boolean readColumn() throws IOException
     {
-        if (currentChar == userSettings.textQualifier) {
-            if (!readingStatus.isEscaped) {
-                readingStatus.isEscaped = true;
-            } else {
-                readingStatus.columnBuffer.append((char) currentChar);
-                readingStatus.isEscaped = false;
-            }
-        } else if (currentChar == userSettings.columnDelimiter) {
-            if (readingStatus.isEscaped || !readingStatus.isQualified) {
-                endColumn();
-            } else {
-                this.readingStatus.columnBuffer.append((char) currentChar);
+        int qualifier = this.userSettings.textQualifier;
+        int delimiter = this.userSettings.columnDelimiter;
+        int lineDelimiter = this.userSettings.lineDelimiter;
+        char[] chars = this.window;
+        CsvRow target = this.row;
+        int mark = target.mark();
+        boolean qualified = false;
+        boolean escaped = false;
+        if (this.position == this.limit && !this.fill()) {
+            target.endColumn(mark);
+            return true;
+        }
+        if (chars[this.position] == qualifier) {
+            qualified = true;
+            this.position++;
+        }
+        // the chars of the column in the window not copied into the row yet
+        int runStart = this.position;
+        int current = this.position;
+        int end = this.limit;
+        while (true) {
+            if (current == end) {
+                target.append(chars, runStart, current - runStart);
+                this.position = current;
+                if (!this.fill()) {
+                    target.endColumn(mark);
+                    return true;
+                }
+                runStart = 0;
+                current = 0;
+                end = this.limit;
             }
-        } else if (currentChar == userSettings.lineDelimiter) {
-            if (readingStatus.isEscaped || !readingStatus.isQualified) {
-                endLine();
-                checkSkipLine();
+            char c = chars[current];
+            if (c == qualifier) {
+                target.append(chars, runStart, current - runStart);
+                if (escaped) {
+                    target.append(c);
+                }
+                escaped = !escaped;
+                runStart = ++current;
+            } else if (c == delimiter && (escaped || !qualified)) {
+                target.append(chars, runStart, current - runStart);
+                target.endColumn(mark);
+                this.position = current + 1;
+                return false;
+            } else if (c == lineDelimiter && (escaped || !qualified)) {
+                target.append(chars, runStart, current - runStart);
+                target.endColumn(mark);
+                this.position = current + 1;
+                return true;
             } else {
-                readingStatus.columnBuffer.append((char) currentChar);
+                current++;
             }
-        } else {
-            readingStatus.columnBuffer.append((char) currentChar);
         }
     }
 
-    private void startColumn(int currentChar)
+    /**
+     * Decodes the next chars into the window, replacing its content.
+     *
+     * @return <code>false</code> at the end of the data
+     */
+    private boolean fill() throws IOException
     {
-        if (currentChar == userSettings.columnDelimiter) {
-            readingStatus.returnValue.add("");
-        } else {
-            readingStatus.startedColumn = true;
-            if (currentChar == userSettings.textQualifier) {
-                readingStatus.isQualified = true;
-            } else {
-                readingStatus.isQualified = false;
-                readingStatus.columnBuffer.append((char) currentChar);
+        this.position = 0;
+        this.limit = 0;
+        if (this.endOfChars) {
+            return false;
+        }
+        this.windowBuffer.clear();
+        while (this.windowBuffer.position() == 0) {
+            CoderResult result = this.decoder.decode(this.bytes, this.windowBuffer, this.endOfBytes);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (this.windowBuffer.position() > 0) {
+                break;
             }
+            if (this.endOfBytes) {
+                this.decoder.flush(this.windowBuffer);
+                this.endOfChars = true;
+                break;
+            }
+            this.readBytes();
         }
+        this.limit = this.windowBuffer.position();
+        return this.limit > 0;
     }
 
-    /**
-     */
-    private void endColumn()
+    private void readBytes() throws IOException
     {
-        // must be called before setting startedColumn = false
-        String currentValue = readingStatus.columnBuffer.toString().trim();
-        readingStatus.columnBuffer.setLength(0);
-        readingStatus.startedColumn = false;
-        readingStatus.isQualified = false;
-        readingStatus.isEscaped = false;
-        readingStatus.returnValue.add(currentValue);
+        this.bytes.compact();
+        int read = this.inputStream.read(this.bytes.array(), this.bytes.position(), this.bytes.remaining());
+        if (read < 0) {
+            this.endOfBytes = true;
+        } else {
+            this.bytes.position(this.bytes.position() + read);
+        }
+        this.bytes.flip();
     }
 
     /**
@@ -148,24 +290,7 @@ public class CsvReader implements Closeable, Iterable<Map<String, String>>
     @Override
     public void close() throws IOException
     {
-        this.readingBuffer.close();
-    }
-
-    private void endLine()
-    {
-        endColumn();
-        readingStatus.lineNumber++;
-        readingStatus.lineIsEnded = true;
-    }
-
-    private void checkSkipLine()
-    {
-        if (userSettings.skipEmptyLines
-                && Collections.frequency(readingStatus.returnValue, "") == readingStatus.returnValue.size()) {
-            readingStatus.returnValue.clear();
-            readingStatus.lineNumber--;
-            readingStatus.lineIsEnded = false;
-        }
+        this.inputStream.close();
     }
 
     /**
@@ -180,76 +305,95 @@ public class CsvReader implements Closeable, Iterable<Map<String, String>>
         return new Iterator<Map<String, String>>()
         {
 
+            private Map<String, String> next;
+            private long nextLineNumber;
+
             @Override
             public boolean hasNext()
             {
-                return readingStatus.hasMoreData;
+                if (this.next == null) {
+                    try {
+                        if (readLine()) {
+                            this.next = row.toMap();
+                            this.nextLineNumber = row.getLineNumber();
+                        }
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+                return this.next != null;
             }
 
             @Override
             public Map<String, String> next()
             {
-                try {
-                    return getLine();
-                } catch (IOException ex) {
-                    throw new UncheckedIOException(ex);
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
                 }
+                Map<String, String> returnValue = this.next;
+                this.next = null;
+                currentLineNumber = this.nextLineNumber;
+                return returnValue;
             }
         };
 
     }
 
     /**
-     * This class is necessary because the buffer must always read one char ahead of the current char because the end of
-     * file must be detected before the iterator returns true on hasNext
+     * Provides a stream of all lines of the csv file, as maps from header to value like {@link #iterator()}. A
+     * parallel stream reads the lines on one thread at a time, in batches, and processes the batches on several, see
+     * {@link CsvSpliterator}. Closing the stream closes the reader.
+     *
+     * @return The stream of the remaining lines.
      */
-    private class ReadingBuffer implements Closeable
+    public Stream<Map<String, String>> stream()
     {
-
-        private final InputStream inputStream;
-
-        private ReadingBuffer(InputStream inputStream) throws IOException
-        {
-            this.inputStream = inputStream;
-            this.currentChar = inputStream.read();
-        }
-
-        private int currentChar;
-
-        private boolean isExhausted()
-        {
-            return (currentChar == -1);
-        }
-
-        private int getCurrentChar() throws IOException
-        {
-            int returnValue = currentChar;
-            this.currentChar = inputStream.read();
-            return returnValue;
-        }
-
-        @Override
-        public void close() throws IOException
-        {
-            inputStream.close();
-        }
+        return StreamSupport.stream(new CsvSpliterator(this.iterator()), false).onClose(() -> {
+            try {
+                this.close();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
     }
 
     /**
+     * Provides the lines as one {@link CsvRow}, which is read again for each line. The row is valid until
+     * <code>hasNext</code> is called again, which reads ahead.
      *
+     * @return The rows, which can be iterated over once.
      */
-    private class ReadingStatus
+    public Iterable<CsvRow> rows()
     {
+        return () -> new Iterator<CsvRow>()
+        {
+
+            private boolean ahead;
 
-        private boolean hasMoreData = true;
-        private boolean startedColumn = false;
-        private long lineNumber = 0;
-        private final StringBuilder columnBuffer = new StringBuilder();
-        boolean isQualified = false;
-        boolean isEscaped = false;
-        boolean lineIsEnded = false;
-        List<String> returnValue = new ArrayList<>();
+            @Override
+            public boolean hasNext()
+            {
+                if (!this.ahead) {
+                    try {
+                        this.ahead = readLine();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+                return this.ahead;
+            }
 
+            @Override
+            public CsvRow next()
+            {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                this.ahead = false;
+                currentLineNumber = row.getLineNumber();
+                return row;
+            }
+        };
     }
 
     /**
@@ -262,6 +406,7 @@ public class CsvReader implements Closeable, Iterable<Map<String, String>>
         private int columnDelimiter = ';';
         private int lineDelimiter = '\n';
         private boolean skipEmptyLines = false;
+        private Charset charset = StandardCharsets.UTF_8;
 
         /**
          * Set the character that is used to qualify a cell.
@@ -308,6 +453,38 @@ public class CsvReader implements Closeable, Iterable<Map<String, String>>
         {
             this.skipEmptyLines = skipEmptyLines;
         }
+
+        /**
+         * Sets the encoding of the data.
+         *
+         * The default is UTF-8
+         *
+         * @param charset
+         */
+        public void setCharset(Charset charset)
+        {
+            this.charset = charset;
+        }
+
+        Charset getCharset()
+        {
+            return this.charset;
+        }
+
+        int getTextQualifier()
+        {
+            return this.textQualifier;
+        }
+
+        int getColumnDelimiter()
+        {
+            return this.columnDelimiter;
+        }
+
+        int getLineDelimiter()
+        {
+            return this.lineDelimiter;
+        }
     }
 
     /**
@@ -316,7 +493,7 @@ public class CsvReader implements Closeable, Iterable<Map<String, String>>
      * @param condition must be true, if false, a IllegalArgumentexeption is thrown.
      * @param message The message if the exception, if the condition is not met.
      */
-    private void checkArgument(boolean condition, String message)
+    private static void checkArgument(boolean condition, String message)
     {
         if (condition) {
             throw new IllegalArgumentException(message);
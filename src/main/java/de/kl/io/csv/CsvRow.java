@@ -0,0 +1,221 @@
+package de.kl.io.csv;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A line of csv data, as read by {@link CsvReader#rows()}. The reader reuses one row for all lines: the chars of all
+ * columns are kept in one buffer, and each column is handed out as a {@link CharSequence} view of that buffer, so
+ * reading a line allocates nothing once the buffer is large enough. A row and its views are only valid until the
+ * reader moves on to the next line; copy what has to be kept, with {@link #getString(int)} or {@link #toMap()}.
+ *
+ * Columns missing from a line are empty, columns beyond the headers can be read by their index.
+ *
+ * @author konrad
+ */
+public final class CsvRow
+{
+
+    private final List<String> headers;
+    private char[] chars = new char[1024];
+    private int length;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private Column[] views = new Column[16];
+    private int size;
+    private long lineNumber;
+
+    CsvRow(List<String> headers)
+    {
+        this.headers = headers;
+    }
+
+    /**
+     * Gets the number of columns of the line.
+     *
+     * @return The number of columns, which may differ from the number of headers.
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Gets the number of the line, counted like {@link CsvReader#getCurrentLineNumber()}.
+     *
+     * @return The number of the line.
+     */
+    public long getLineNumber()
+    {
+        return this.lineNumber;
+    }
+
+    /**
+     * Gets a column as a view, valid until the reader moves on.
+     *
+     * @param index The index of the column.
+     * @return The trimmed value of the column, empty if the line has no such column.
+     */
+    public CharSequence get(int index)
+    {
+        if (index >= this.size) {
+            return "";
+        }
+        Column returnValue = this.views[index];
+        if (returnValue == null) {
+            returnValue = new Column(index);
+            this.views[index] = returnValue;
+        }
+        return returnValue;
+    }
+
+    /**
+     * Gets a column as a view, valid until the reader moves on.
+     *
+     * @param column The column, see {@link CsvReader#column(String)}.
+     * @return The trimmed value of the column, empty if the line has no such column.
+     */
+    public CharSequence get(CsvColumn column)
+    {
+        return this.get(column.getIndex());
+    }
+
+    /**
+     * Gets a column as a string of its own.
+     *
+     * @param index The index of the column.
+     * @return The trimmed value of the column, empty if the line has no such column.
+     */
+    public String getString(int index)
+    {
+        if (index >= this.size || this.starts[index] == this.ends[index]) {
+            return "";
+        }
+        return new String(this.chars, this.starts[index], this.ends[index] - this.starts[index]);
+    }
+
+    /**
+     * Copies the line into a map from header to value, like {@link CsvReader#iterator()} returns it.
+     *
+     * @return A new map. Missing columns are empty, columns beyond the headers are left out.
+     */
+    public Map<String, String> toMap()
+    {
+        Map<String, String> returnValue = new HashMap<>(this.headers.size() * 4 / 3 + 1);
+        for (int i = 0; i < this.headers.size(); i++) {
+            returnValue.put(this.headers.get(i), this.getString(i));
+        }
+        return returnValue;
+    }
+
+    boolean isEmpty()
+    {
+        for (int i = 0; i < this.size; i++) {
+            if (this.starts[i] != this.ends[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void clear(long lineNumber)
+    {
+        this.length = 0;
+        this.size = 0;
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * Gets the position in the buffer the next column starts at.
+     */
+    int mark()
+    {
+        return this.length;
+    }
+
+    void append(char[] source, int offset, int count)
+    {
+        this.ensureCapacity(count);
+        System.arraycopy(source, offset, this.chars, this.length, count);
+        this.length += count;
+    }
+
+    void append(char c)
+    {
+        this.ensureCapacity(1);
+        this.chars[this.length++] = c;
+    }
+
+    /**
+     * Ends the column started at the given mark, trimming it.
+     */
+    void endColumn(int mark)
+    {
+        int start = mark;
+        int end = this.length;
+        while (start < end && this.chars[start] <= ' ') {
+            start++;
+        }
+        while (end > start && this.chars[end - 1] <= ' ') {
+            end--;
+        }
+        if (this.size == this.starts.length) {
+            this.starts = Arrays.copyOf(this.starts, this.size * 2);
+            this.ends = Arrays.copyOf(this.ends, this.size * 2);
+            this.views = Arrays.copyOf(this.views, this.size * 2);
+        }
+        this.starts[this.size] = start;
+        this.ends[this.size] = end;
+        this.size++;
+    }
+
+    private void ensureCapacity(int count)
+    {
+        if (this.length + count > this.chars.length) {
+            this.chars = Arrays.copyOf(this.chars, Math.max(this.length + count, this.chars.length * 2));
+        }
+    }
+
+    /**
+     * A column of the current line.
+     */
+    private final class Column implements CharSequence
+    {
+
+        private final int index;
+
+        private Column(int index)
+        {
+            this.index = index;
+        }
+
+        @Override
+        public int length()
+        {
+            return ends[this.index] - starts[this.index];
+        }
+
+        @Override
+        public char charAt(int offset)
+        {
+            if (offset < 0 || offset >= this.length()) {
+                throw new IndexOutOfBoundsException("Index " + offset + " of column of length " + this.length());
+            }
+            return chars[starts[this.index] + offset];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end)
+        {
+            return this.toString().substring(start, end);
+        }
+
+        @Override
+        public String toString()
+        {
+            return getString(this.index);
+        }
+    }
+}
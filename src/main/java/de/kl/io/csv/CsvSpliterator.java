@@ -0,0 +1,85 @@
+package de.kl.io.csv;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Hands out the lines of a {@link CsvReader} to a stream, splitting off batches of lines for parallel streams.
+ *
+ * A stream can not be split by position, so like the lines of <code>Files.lines</code>, a batch is read into an array
+ * on the splitting thread and processed by another. The batches grow by {@value #BATCH_UNIT} lines up to
+ * {@value #MAX_BATCH} lines, instead of growing without bound: a fork-join task splits off a batch, processes it and
+ * only then splits off more, so capping the batch caps the lines in memory at a few batches per thread, however
+ * large the data is.
+ *
+ * @author konrad
+ */
+final class CsvSpliterator implements Spliterator<Map<String, String>>
+{
+
+    static final int BATCH_UNIT = 1 << 10;
+
+    static final int MAX_BATCH = 1 << 14;
+
+    private final Iterator<Map<String, String>> lines;
+    private int batch;
+
+    /**
+     * Constructs a spliterator of the remaining lines of a reader.
+     *
+     * @param lines The iterator of the reader.
+     */
+    CsvSpliterator(Iterator<Map<String, String>> lines)
+    {
+        this.lines = lines;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Map<String, String>> action)
+    {
+        if (!this.lines.hasNext()) {
+            return false;
+        }
+        action.accept(this.lines.next());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Map<String, String>> action)
+    {
+        this.lines.forEachRemaining(action);
+    }
+
+    @Override
+    public Spliterator<Map<String, String>> trySplit()
+    {
+        if (!this.lines.hasNext()) {
+            return null;
+        }
+        this.batch = Math.min(this.batch + BATCH_UNIT, MAX_BATCH);
+        Object[] lines = new Object[this.batch];
+        int size = 0;
+        while (size < lines.length && this.lines.hasNext()) {
+            lines[size++] = this.lines.next();
+        }
+        return Spliterators.spliterator(lines, 0, size, this.characteristics());
+    }
+
+    /**
+     * Unknown, as the lines are only counted while they are read.
+     */
+    @Override
+    public long estimateSize()
+    {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics()
+    {
+        return ORDERED | NONNULL;
+    }
+}
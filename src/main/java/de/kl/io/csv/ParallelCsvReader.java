@@ -0,0 +1,447 @@
+package de.kl.io.csv;
+
+import de.kl.io.csv.CsvReader.UserSettings;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Parses a csv file, or a region of memory, with several threads at once, as an alternative to a single
+ * {@link CsvReader} for large uploads.
+ *
+ * The data after the header is split into chunks of about 8 MB, ending at record boundaries, and each chunk is parsed
+ * by a {@link CsvReader} of its own. A line delimiter is a record boundary only outside of qualified values, and
+ * whether a byte is inside one depends on all bytes before it: a qualifier opens a qualified value only at the start
+ * of a column, and a stray qualifier inside an unqualified value, like <code>24" monitor</code>, opens nothing. So a
+ * first pass runs the column states of the {@link CsvReader} over the bytes, chunk by chunk in parallel, from each
+ * state a chunk could start in. Chaining the resulting state of one chunk into the next gives the exact state at the
+ * start of each chunk, and the chunk ends at the first record boundary from there, just where the {@link CsvReader}
+ * would end the record. This requires an encoding in which the qualifier, the column delimiter and the line
+ * delimiter are single bytes that occur in no other character, like UTF-8 or ISO-8859-1. Data in any other encoding
+ * is parsed in one chunk.
+ *
+ * The records are handed to the caller either in the order of the data, by the calling thread, or in any order, by
+ * the parsing threads as they go. Either way, only a few chunks per thread are in memory at once.
+ *
+ * @author konrad
+ */
+public class ParallelCsvReader implements Closeable
+{
+
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static final long CHUNK_SIZE = 8 << 20;
+
+    /**
+     * The states of the column a byte is in, as the {@link CsvReader} parses it.
+     */
+    private static final int COLUMN_START = 0;
+    private static final int UNQUALIFIED = 1;
+    private static final int QUALIFIED = 2;
+
+    /**
+     * After a qualifier inside a qualified value, which either closes the value or escapes a following qualifier.
+     */
+    private static final int CLOSED = 3;
+    private static final int STATES = 4;
+
+    /**
+     * The classes of bytes.
+     */
+    private static final int OTHER = 0;
+    private static final int QUALIFIER = 1;
+    private static final int DELIMITER = 2;
+    private static final int LINE_DELIMITER = 3;
+
+    /**
+     * The state after a byte, by state before and class of the byte. A line delimiter ends the record in every state
+     * but {@link #QUALIFIED}.
+     */
+    private static final int[][] TRANSITIONS = {
+        {UNQUALIFIED, QUALIFIED, COLUMN_START, COLUMN_START},
+        {UNQUALIFIED, UNQUALIFIED, COLUMN_START, COLUMN_START},
+        {QUALIFIED, CLOSED, QUALIFIED, QUALIFIED},
+        {CLOSED, QUALIFIED, COLUMN_START, COLUMN_START}
+    };
+
+    /**
+     * The same transitions, by class of the byte and state before.
+     */
+    private static final int[][] TRANSITIONS_BY_CLASS = new int[4][STATES];
+
+    static {
+        for (int state = 0; state < STATES; state++) {
+            for (int byteClass = 0; byteClass < 4; byteClass++) {
+                TRANSITIONS_BY_CLASS[byteClass][state] = TRANSITIONS[state][byteClass];
+            }
+        }
+    }
+
+    private final FileChannel channel;
+    private final ByteBuffer region;
+    private final long size;
+    private final UserSettings userSettings;
+    private final int parallelism;
+    private final long chunkSize;
+    private final List<String> headers;
+
+    /**
+     * The class of each byte.
+     */
+    private final int[] classes = new int[256];
+
+    /**
+     * Where the data after the header starts, or <code>-1</code> if the data can not be split.
+     */
+    private final long dataStart;
+
+    /**
+     * Constructs a reader of a file.
+     *
+     * @param file The csv file.
+     * @param userSettings defines custom settings for the csv reading.
+     * @param parallelism The number of threads parsing at once, <code>0</code> for one per processor.
+     * @throws IOException If the file can not be opened or its header can not be read.
+     */
+    public ParallelCsvReader(Path file, UserSettings userSettings, int parallelism) throws IOException
+    {
+        this(FileChannel.open(file, StandardOpenOption.READ), null, userSettings, parallelism, CHUNK_SIZE);
+    }
+
+    /**
+     * Constructs a reader of a region of memory, like a mapped file.
+     *
+     * @param region The csv data, from the position to the limit of the buffer.
+     * @param userSettings defines custom settings for the csv reading.
+     * @param parallelism The number of threads parsing at once, <code>0</code> for one per processor.
+     * @throws IOException If the header can not be read.
+     */
+    public ParallelCsvReader(ByteBuffer region, UserSettings userSettings, int parallelism) throws IOException
+    {
+        this(null, region.slice(), userSettings, parallelism, CHUNK_SIZE);
+    }
+
+    ParallelCsvReader(FileChannel channel, ByteBuffer region, UserSettings userSettings, int parallelism,
+            long chunkSize) throws IOException
+    {
+        if (userSettings == null) {
+            throw new IllegalArgumentException("Parameter userSettings must not be null.");
+        }
+        this.channel = channel;
+        this.region = region;
+        this.size = (channel != null) ? channel.size() : region.limit();
+        this.userSettings = userSettings;
+        this.parallelism = (parallelism > 0) ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.chunkSize = chunkSize;
+        // the qualifier comes first, as the reader compares it first
+        this.classes[userSettings.getLineDelimiter() & 0xFF] = LINE_DELIMITER;
+        this.classes[userSettings.getColumnDelimiter() & 0xFF] = DELIMITER;
+        this.classes[userSettings.getTextQualifier() & 0xFF] = QUALIFIER;
+        if (this.isSplittable()) {
+            this.dataStart = this.boundaryAfter(0, COLUMN_START);
+        } else {
+            this.dataStart = -1;
+        }
+        try (CsvReader reader = new CsvReader(new RangeInputStream(0, (this.dataStart < 0) ? this.size
+                : this.dataStart), userSettings, null)) {
+            this.headers = reader.getHeaders();
+        }
+    }
+
+    /**
+     * Gets the headers of the data.
+     *
+     * @return The headers, in the order of the columns.
+     */
+    public List<String> getHeaders()
+    {
+        return this.headers;
+    }
+
+    /**
+     * Parses all records and hands each to the given action, as a map from header to value like a {@link CsvReader}
+     * does. The data can be parsed any number of times.
+     *
+     * @param action The action for each record. If the records are not ordered, it is called by several threads at
+     * once.
+     * @param ordered <code>true</code> to hand over the records in the order of the data, by the calling thread.
+     * @return The number of records.
+     * @throws IOException If the data can not be read.
+     */
+    public long forEach(Consumer<? super Map<String, String>> action, boolean ordered) throws IOException
+    {
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+        try {
+            List<long[]> chunks = this.split(pool);
+            if (ordered) {
+                return this.forEachOrdered(pool, chunks, action);
+            }
+            List<Future<Long>> tasks = new ArrayList<>();
+            for (long[] chunk : chunks) {
+                tasks.add(pool.submit(() -> this.parse(chunk, action)));
+            }
+            long returnValue = 0;
+            for (Future<Long> task : tasks) {
+                returnValue += join(task);
+            }
+            return returnValue;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Parses the chunks in parallel, but at most two per thread ahead of the chunk handed over next.
+     */
+    private long forEachOrdered(ForkJoinPool pool, List<long[]> chunks, Consumer<? super Map<String, String>> action)
+            throws IOException
+    {
+        Deque<Future<List<Map<String, String>>>> pending = new ArrayDeque<>();
+        Iterator<long[]> next = chunks.iterator();
+        long returnValue = 0;
+        while (next.hasNext() || !pending.isEmpty()) {
+            while (next.hasNext() && pending.size() < 2 * this.parallelism) {
+                long[] chunk = next.next();
+                pending.add(pool.submit(() -> {
+                    List<Map<String, String>> records = new ArrayList<>();
+                    this.parse(chunk, records::add);
+                    return records;
+                }));
+            }
+            List<Map<String, String>> records = join(pending.poll());
+            records.forEach(action);
+            returnValue += records.size();
+        }
+        return returnValue;
+    }
+
+    private long parse(long[] chunk, Consumer<? super Map<String, String>> action) throws IOException
+    {
+        long returnValue = 0;
+        try (CsvReader reader = new CsvReader(new RangeInputStream(chunk[0], chunk[1]), this.userSettings,
+                (this.dataStart < 0) ? null : this.headers)) {
+            for (Map<String, String> record : reader) {
+                action.accept(record);
+                returnValue++;
+            }
+        }
+        return returnValue;
+    }
+
+    /**
+     * Splits the data after the header into chunks of whole records.
+     *
+     * @return The chunks, each as its start and end.
+     */
+    private List<long[]> split(ForkJoinPool pool) throws IOException
+    {
+        List<long[]> returnValue = new ArrayList<>();
+        if (this.dataStart < 0) {
+            returnValue.add(new long[]{0, this.size});
+            return returnValue;
+        }
+        long dataLength = this.size - this.dataStart;
+        int count = (int) Math.max(1, (dataLength + this.chunkSize - 1) / this.chunkSize);
+        List<Future<int[]>> transitions = new ArrayList<>();
+        for (int i = 0; i < count - 1; i++) {
+            long start = this.dataStart + i * this.chunkSize;
+            transitions.add(pool.submit(() -> this.transitions(start, start + this.chunkSize)));
+        }
+        long start = this.dataStart;
+        int state = COLUMN_START;
+        for (int i = 1; i < count; i++) {
+            state = join(transitions.get(i - 1))[state];
+            long end = this.boundaryAfter(this.dataStart + i * this.chunkSize, state);
+            if (end > start) {
+                returnValue.add(new long[]{start, end});
+                start = end;
+            }
+        }
+        if (start < this.size) {
+            returnValue.add(new long[]{start, this.size});
+        }
+        return returnValue;
+    }
+
+    /**
+     * Runs the column states over a range of bytes, from each state at once.
+     *
+     * @return The state at the end of the range, by the state at its start.
+     */
+    private int[] transitions(long start, long end) throws IOException
+    {
+        int[] returnValue = new int[STATES];
+        for (int state = 0; state < STATES; state++) {
+            returnValue[state] = state;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        for (long position = start; position < end;) {
+            buffer.clear();
+            buffer.limit((int) Math.min(BLOCK_SIZE, end - position));
+            int read = this.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < read; i++) {
+                int[] next = TRANSITIONS_BY_CLASS[this.classes[bytes[i] & 0xFF]];
+                for (int state = 0; state < STATES; state++) {
+                    returnValue[state] = next[returnValue[state]];
+                }
+            }
+            position += read;
+        }
+        return returnValue;
+    }
+
+    /**
+     * Finds the first record boundary at or after the given position.
+     *
+     * @param start The position to start at.
+     * @param state The column state at the position.
+     * @return The position after the next line delimiter ending a record, or the end of the data.
+     */
+    private long boundaryAfter(long start, int state) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        for (long position = start; position < this.size;) {
+            buffer.clear();
+            int read = this.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < read; i++) {
+                int byteClass = this.classes[bytes[i] & 0xFF];
+                if (byteClass == LINE_DELIMITER && state != QUALIFIED) {
+                    return position + i + 1;
+                }
+                state = TRANSITIONS[state][byteClass];
+            }
+            position += read;
+        }
+        return this.size;
+    }
+
+    /**
+     * Tells, whether the qualifier, the column delimiter and the line delimiter are single bytes in the encoding.
+     */
+    private boolean isSplittable()
+    {
+        for (int special : new int[]{this.userSettings.getTextQualifier(), this.userSettings.getColumnDelimiter(),
+            this.userSettings.getLineDelimiter()}) {
+            byte[] encoded = String.valueOf((char) special).getBytes(this.userSettings.getCharset());
+            if (special > 0x7F || !Arrays.equals(encoded, new byte[]{(byte) special})) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int read(ByteBuffer target, long position) throws IOException
+    {
+        if (this.channel != null) {
+            return this.channel.read(target, position);
+        }
+        if (position >= this.size) {
+            return -1;
+        }
+        ByteBuffer source = this.region.duplicate();
+        source.position((int) position);
+        source.limit((int) Math.min(this.size, position + target.remaining()));
+        int returnValue = source.remaining();
+        target.put(source);
+        return returnValue;
+    }
+
+    private static <T> T join(Future<T> task) throws IOException
+    {
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while parsing", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Closes the file, if the data is read from a file.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (this.channel != null) {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Reads a range of the data by positional reads, so any number of ranges can be read at once.
+     */
+    private class RangeInputStream extends InputStream
+    {
+
+        private long position;
+        private final long end;
+
+        private RangeInputStream(long start, long end)
+        {
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] single = new byte[1];
+            return (this.read(single, 0, 1) < 0) ? -1 : (single[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException
+        {
+            if (this.position >= this.end) {
+                return -1;
+            }
+            ByteBuffer target = ByteBuffer.wrap(bytes, offset, (int) Math.min(length, this.end - this.position));
+            int returnValue = ParallelCsvReader.this.read(target, this.position);
+            if (returnValue > 0) {
+                this.position += returnValue;
+            }
+            return returnValue;
+        }
+
+        @Override
+        public int available()
+        {
+            return (int) Math.min(Integer.MAX_VALUE, this.end - this.position);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package de.kl.io.mongo;
+
+import com.mongodb.DBObject;
+import java.util.List;
+
+/**
+ * Writes a batch of documents at once, the last stage of a {@link BulkInserter}.
+ *
+ * @author konrad
+ */
+@FunctionalInterface
+public interface BatchWriter
+{
+
+    /**
+     * Writes the documents. Called by several threads at once, each with a batch of its own.
+     *
+     * @param batch The documents, in no particular order.
+     */
+    void write(List<DBObject> batch);
+}
@@ -0,0 +1,282 @@
+package de.kl.io.mongo;
+
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inserts documents in batches, decoupling the threads adding documents from the threads writing them.
+ *
+ * The documents added are grouped into batches of a fixed size. Full batches are put into a bounded queue, drained by
+ * a number of writer threads, each writing a batch at once through a {@link BatchWriter}. When the writers fall
+ * behind, the queue fills up and adding blocks, so no more than the queued batches are held in memory, however many
+ * documents are inserted. The progress is logged in intervals, the rows per second since the start included.
+ *
+ * If writing a batch fails, the writers discard the remaining batches, so adding never blocks for good, and adding or
+ * finishing throws.
+ *
+ * @author konrad
+ */
+public class BulkInserter implements AutoCloseable
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkInserter.class);
+
+    /**
+     * Tells a writer to stop.
+     */
+    private static final List<DBObject> END = new ArrayList<>(0);
+
+    private final BatchWriter writer;
+    private final int batchSize;
+    private final long reportInterval;
+    private final BlockingQueue<List<DBObject>> queue;
+    private final List<Thread> writers = new ArrayList<>();
+    private final long start = System.nanoTime();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong lastReport = new AtomicLong(this.start);
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    private List<DBObject> batch;
+    private boolean finished;
+    private Summary summary;
+
+    /**
+     * Constructs an inserter and starts its writers.
+     *
+     * @param writer The writer of the batches.
+     * @param batchSize The number of documents written at once.
+     * @param queueCapacity The number of full batches waiting for a writer, before adding blocks.
+     * @param parallelism The number of writer threads, <code>0</code> for one per processor.
+     * @param reportInterval The milliseconds between two logs of the progress.
+     */
+    public BulkInserter(BatchWriter writer, int batchSize, int queueCapacity, int parallelism, long reportInterval)
+    {
+        if (batchSize < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Batch size and queue capacity must be positive, not " + batchSize
+                    + " and " + queueCapacity);
+        }
+        this.writer = writer;
+        this.batchSize = batchSize;
+        this.reportInterval = TimeUnit.MILLISECONDS.toNanos(reportInterval);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batch = new ArrayList<>(batchSize);
+        int threads = (parallelism > 0) ? parallelism : Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(this::drain, "bulk-writer-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            this.writers.add(thread);
+        }
+    }
+
+    /**
+     * Adds a document, blocking while the queue is full. Can be called by several threads at once.
+     *
+     * @param document The document to insert.
+     * @throws IllegalStateException If the inserter is finished or writing a batch failed.
+     */
+    public void add(DBObject document)
+    {
+        List<DBObject> full = null;
+        synchronized (this) {
+            if (this.finished) {
+                throw new IllegalStateException("The inserter is finished");
+            }
+            this.batch.add(document);
+            if (this.batch.size() >= this.batchSize) {
+                full = this.batch;
+                this.batch = new ArrayList<>(this.batchSize);
+            }
+        }
+        if (full != null) {
+            this.checkFailure();
+            try {
+                this.queue.put(full);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while queueing a batch", ex);
+            }
+        }
+    }
+
+    /**
+     * Writes the last, partial batch, waits for the writers to write all batches and stops them. Once finished,
+     * nothing can be added any more.
+     *
+     * @return The summary of all batches written.
+     * @throws IllegalStateException If writing a batch failed.
+     */
+    public synchronized Summary finish()
+    {
+        if (this.summary == null) {
+            this.finished = true;
+            if (!this.batch.isEmpty()) {
+                this.putUninterruptibly(this.batch);
+            }
+            for (int i = 0; i < this.writers.size(); i++) {
+                this.putUninterruptibly(END);
+            }
+            boolean interrupted = false;
+            for (Thread thread : this.writers) {
+                while (thread.isAlive()) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            this.summary = new Summary(this.rows.get(), this.batches.get(), System.nanoTime() - this.start);
+            LOGGER.info("{}.", this.summary);
+        }
+        this.checkFailure();
+        return this.summary;
+    }
+
+    /**
+     * Finishes the inserter, see {@link #finish()}.
+     */
+    @Override
+    public void close()
+    {
+        this.finish();
+    }
+
+    private void drain()
+    {
+        while (true) {
+            List<DBObject> next;
+            try {
+                next = this.queue.take();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (next == END) {
+                return;
+            }
+            if (this.failure.get() != null) {
+                continue;
+            }
+            try {
+                this.writer.write(next);
+                this.rows.addAndGet(next.size());
+                this.batches.incrementAndGet();
+                this.report();
+            } catch (RuntimeException ex) {
+                LOGGER.error("Writing a batch of {} documents failed, discarding the remaining batches.",
+                        next.size(), ex);
+                this.failure.compareAndSet(null, ex);
+            }
+        }
+    }
+
+    private void report()
+    {
+        long now = System.nanoTime();
+        long last = this.lastReport.get();
+        if (now - last >= this.reportInterval && this.lastReport.compareAndSet(last, now)) {
+            long rows = this.rows.get();
+            LOGGER.info("Inserted {} rows, {} rows/s.", rows, rows * 1000000000L / Math.max(1, now - this.start));
+        }
+    }
+
+    private void putUninterruptibly(List<DBObject> batch)
+    {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                this.queue.put(batch);
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkFailure()
+    {
+        RuntimeException ex = this.failure.get();
+        if (ex != null) {
+            throw new IllegalStateException("Writing a batch failed", ex);
+        }
+    }
+
+    /**
+     * The documents an inserter wrote, and how fast.
+     */
+    public static class Summary
+    {
+
+        private final long rows;
+        private final long batches;
+        private final long nanos;
+
+        private Summary(long rows, long batches, long nanos)
+        {
+            this.rows = rows;
+            this.batches = batches;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Gets the number of documents written.
+         *
+         * @return The number of documents.
+         */
+        public long getRows()
+        {
+            return this.rows;
+        }
+
+        /**
+         * Gets the number of batches written.
+         *
+         * @return The number of batches.
+         */
+        public long getBatches()
+        {
+            return this.batches;
+        }
+
+        /**
+         * Gets the time from constructing the inserter to finishing it.
+         *
+         * @return The time in seconds.
+         */
+        public double getSeconds()
+        {
+            return this.nanos / 1e9;
+        }
+
+        /**
+         * Gets the documents written per second, on average.
+         *
+         * @return The documents per second.
+         */
+        public long getRowsPerSecond()
+        {
+            return this.rows * 1000000000L / Math.max(1, this.nanos);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("Inserted %,d rows in %,d batches in %.1f s, %,d rows/s", this.rows, this.batches,
+                    this.getSeconds(), this.getRowsPerSecond());
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package de.kl.io.mongo;
+
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import java.util.List;
+
+/**
+ * Inserts each batch into a collection by one unordered bulk write, a single round trip, which the server may apply
+ * in any order.
+ *
+ * @author konrad
+ */
+public class MongoBatchWriter implements BatchWriter
+{
+
+    private final DBCollection collection;
+
+    /**
+     * Constructs a writer.
+     *
+     * @param collection The collection to insert into.
+     */
+    public MongoBatchWriter(DBCollection collection)
+    {
+        this.collection = collection;
+    }
+
+    @Override
+    public void write(List<DBObject> batch)
+    {
+        BulkWriteOperation bulk = this.collection.initializeUnorderedBulkOperation();
+        for (DBObject document : batch) {
+            bulk.insert(document);
+        }
+        bulk.execute();
+    }
+}
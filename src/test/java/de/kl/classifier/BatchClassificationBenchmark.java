@@ -0,0 +1,87 @@
+package de.kl.classifier;
+
+import de.kl.classifier.token.SplitTokenizer;
+import de.kl.classifier.token.Tokenizer;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Compares classifying a corpus one document after another with classifying it as a batch, and classifying texts
+ * with features collected as strings by the tokenizer with streaming the features from the tokenizer into the scores,
+ * in time and in bytes allocated per text. {@link ClassifierModelTest} checks that streaming allocates less. Not run
+ * as part of the test suite, start it manually:
+ *
+ * <pre>
+ * java -Xmx4g -cp target/classes:target/test-classes:... de.kl.classifier.BatchClassificationBenchmark
+ * </pre>
+ *
+ * @author konrad
+ */
+public class BatchClassificationBenchmark
+{
+
+    public static void main(String[] args) throws IOException
+    {
+        List<Classification> corpus = Corpus.generate(Corpus.DOCUMENTS, Corpus.TOKENS_PER_DOCUMENT,
+                Corpus.VOCABULARY / 10, Corpus.CATEGORIES, 42);
+        Classifier classifier = new Classifier();
+        corpus.forEach(classifier::learn);
+        ClassifierModel model = classifier.snapshot();
+        System.out.printf("%d cores%n", Runtime.getRuntime().availableProcessors());
+        batch(model, corpus);
+        streaming(model, corpus);
+    }
+
+    private static void batch(ClassifierModel model, List<Classification> corpus)
+    {
+        List<Collection<String>> featuresets = new ArrayList<>();
+        corpus.forEach(document -> featuresets.add(document.getFeatureset()));
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            long hits = 0;
+            for (Collection<String> features : featuresets) {
+                hits += model.classify(features).getProbability() > 0.5f ? 1 : 0;
+            }
+            long single = System.nanoTime() - start;
+            start = System.nanoTime();
+            long batchHits = model.classifyBatch(featuresets).filter(result -> result.getProbability() > 0.5f)
+                    .count();
+            long batch = System.nanoTime() - start;
+            System.out.printf("one by one %,9d docs/s, batch %,9d docs/s (%d/%d confident)%n",
+                    featuresets.size() * 1000000000L / single, featuresets.size() * 1000000000L / batch,
+                    hits, batchHits);
+        }
+    }
+
+    private static void streaming(ClassifierModel model, List<Classification> corpus) throws IOException
+    {
+        List<String> texts = new ArrayList<>();
+        corpus.forEach(document -> texts.add(String.join(" ", document.getFeatureset())));
+        Tokenizer tokenizer = new SplitTokenizer();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int round = 0; round < 3; round++) {
+            long allocated = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            for (String text : texts) {
+                model.classifyTopK(tokenizer.tokenize(text), 1);
+            }
+            long collected = System.nanoTime() - start;
+            long collectedBytes = threads.getThreadAllocatedBytes(thread) - allocated;
+            allocated = threads.getThreadAllocatedBytes(thread);
+            start = System.nanoTime();
+            for (String text : texts) {
+                model.classifyTopK(text, tokenizer, 1);
+            }
+            long streamed = System.nanoTime() - start;
+            long streamedBytes = threads.getThreadAllocatedBytes(thread) - allocated;
+            System.out.printf("collected %,9d docs/s %,6d bytes/doc, streamed %,9d docs/s %,6d bytes/doc%n",
+                    texts.size() * 1000000000L / collected, collectedBytes / texts.size(),
+                    texts.size() * 1000000000L / streamed, streamedBytes / texts.size());
+        }
+    }
+}
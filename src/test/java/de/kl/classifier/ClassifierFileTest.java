@@ -0,0 +1,106 @@
+package de.kl.classifier;
+
+import de.kl.classifier.store.ConcurrentCountStore;
+import de.kl.classifier.store.HashedCountStore;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author konrad
+ */
+public class ClassifierFileTest
+{
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path modelFile;
+    private Path trainingFile;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        modelFile = folder.getRoot().toPath().resolve("data/model.bin");
+        trainingFile = folder.getRoot().toPath().resolve("training.tsv");
+        Files.write(trainingFile, "positive\tsunny\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testClassifierIsLoadedWhileTrainingFileIsUnchanged() throws IOException
+    {
+        try (ClassifierFile file = new ClassifierFile(modelFile, trainingFile, 0, TimeUnit.MILLISECONDS)) {
+            Assert.assertFalse(file.isUpToDate());
+            Assert.assertFalse(file.save());
+            file.getClassifier().learn("positive", Arrays.asList("sunny"));
+            file.replayed();
+        }
+
+        try (ClassifierFile file = new ClassifierFile(modelFile, trainingFile, 0, TimeUnit.MILLISECONDS)) {
+            Assert.assertTrue(file.isUpToDate());
+            Assert.assertEquals(1, file.getClassifier().getCategoriesTotal());
+            Assert.assertEquals("positive", file.getClassifier().classify(Arrays.asList("sunny")).getCategory());
+        }
+    }
+
+    @Test
+    public void testClassifierIsStaleAfterTrainingFileChanged() throws IOException
+    {
+        try (ClassifierFile file = new ClassifierFile(modelFile, trainingFile, 0, TimeUnit.MILLISECONDS)) {
+            file.getClassifier().learn("positive", Arrays.asList("sunny"));
+            file.replayed();
+            Assert.assertTrue(file.save());
+        }
+        Files.write(trainingFile, "negative\train\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (ClassifierFile file = new ClassifierFile(modelFile, trainingFile, 0, TimeUnit.MILLISECONDS)) {
+            Assert.assertFalse(file.isUpToDate());
+            Assert.assertEquals(0, file.getClassifier().getCategoriesTotal());
+        }
+    }
+
+    @Test
+    public void testClassifierIsStaleAfterNGramsChanged() throws IOException
+    {
+        try (ClassifierFile file = new ClassifierFile(modelFile, null, trainingFile, ConcurrentCountStore::new, 2, 0,
+                0, TimeUnit.MILLISECONDS)) {
+            file.getClassifier().learn("positive", Arrays.asList("sunny", "sunny day"));
+            file.replayed();
+            Assert.assertTrue(file.save());
+        }
+
+        try (ClassifierFile file = new ClassifierFile(modelFile, null, trainingFile, ConcurrentCountStore::new, 2, 0,
+                0, TimeUnit.MILLISECONDS)) {
+            Assert.assertTrue(file.isUpToDate());
+        }
+        try (ClassifierFile file = new ClassifierFile(modelFile, null, trainingFile, ConcurrentCountStore::new, 1, 3,
+                0, TimeUnit.MILLISECONDS)) {
+            Assert.assertFalse(file.isUpToDate());
+            Assert.assertEquals(0, file.getClassifier().getCategoriesTotal());
+        }
+    }
+
+    @Test
+    public void testFailingSaveDoesNotEscapeClose() throws IOException
+    {
+        Path mappedFile = folder.getRoot().toPath().resolve("data/model.map");
+        try (ClassifierFile file = new ClassifierFile(modelFile, mappedFile, trainingFile,
+                () -> new HashedCountStore(10), 0, TimeUnit.MILLISECONDS)) {
+            file.getClassifier().learn("positive", Arrays.asList("sunny"));
+            file.replayed();
+        }
+
+        Assert.assertTrue(Files.exists(modelFile));
+        Assert.assertFalse(Files.exists(mappedFile));
+    }
+}
@@ -0,0 +1,199 @@
+package de.kl.classifier;
+
+import de.kl.classifier.store.HashedCountStore;
+import de.kl.classifier.token.SplitTokenizer;
+import de.kl.classifier.token.Tokenizer;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author konrad
+ */
+public class ClassifierModelTest
+{
+
+    private static final double EPSILON = 0.001;
+    private static final String CATEGORY_NEGATIVE = "negative";
+    private static final String CATEGORY_POSITIVE = "positive";
+    private Classifier bayes;
+
+    @Before
+    public void setUp()
+    {
+        bayes = new Classifier();
+        bayes.learn(CATEGORY_POSITIVE, Arrays.asList("I love sunny days".split("\\s")));
+        bayes.learn(CATEGORY_NEGATIVE, Arrays.asList("I hate rain".split("\\s")));
+    }
+
+    @Test
+    public void testSnapshotClassifiesLikeClassifier()
+    {
+        ClassifierModel model = bayes.snapshot();
+        List<String> text = Arrays.asList("today is a sunny day".split("\\s"));
+
+        List<Classification> expected = new ArrayList<>(bayes.classifyDetailed(text));
+        List<Classification> actual = new ArrayList<>(model.classifyDetailed(text));
+
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i).getCategory(), actual.get(i).getCategory());
+            Assert.assertEquals(expected.get(i).getProbability(), actual.get(i).getProbability(), EPSILON);
+        }
+        Assert.assertEquals(CATEGORY_NEGATIVE, model.classify(Arrays.asList("there will be rain".split("\\s")))
+                .getCategory());
+    }
+
+    @Test
+    public void testSnapshotDoesNotSeeLaterLearns()
+    {
+        ClassifierModel model = bayes.snapshot();
+        bayes.learn("weather", Arrays.asList("sunny", "rain", "snow"));
+
+        Assert.assertEquals(2, model.getCategorySize());
+        Assert.assertEquals(2, model.getCategoriesTotal());
+        Assert.assertEquals(6, model.getFeatureSize());
+        Assert.assertEquals(CATEGORY_POSITIVE, model.classify(Arrays.asList("sunny", "snow")).getCategory());
+    }
+
+    @Test
+    public void testEmptySnapshot()
+    {
+        ClassifierModel model = new Classifier().snapshot();
+
+        Assert.assertNull(model.classify(Arrays.asList("sunny")));
+        Assert.assertTrue(model.classifyDetailed(Arrays.asList("sunny")).isEmpty());
+    }
+
+    @Test
+    public void testClassifyBatchKeepsOrderOfDocuments()
+    {
+        ClassifierModel model = bayes.snapshot();
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            texts.add(i % 3 == 0 ? "there will be rain" : "today is a sunny day");
+        }
+
+        List<Classification> classifications = model.classifyBatch(texts, text -> Arrays.asList(text.split("\\s")))
+                .collect(Collectors.toList());
+
+        Assert.assertEquals(texts.size(), classifications.size());
+        for (int i = 0; i < texts.size(); i++) {
+            Classification expected = model.classify(Arrays.asList(texts.get(i).split("\\s")));
+            Assert.assertEquals(expected.getCategory(), classifications.get(i).getCategory());
+            Assert.assertEquals(expected.getProbability(), classifications.get(i).getProbability(), EPSILON);
+        }
+    }
+
+    @Test
+    public void testClassifyTextStreamsFeaturesLikeTokenizedText() throws IOException
+    {
+        ClassifierModel model = bayes.snapshot();
+        Tokenizer tokenizer = new SplitTokenizer();
+        String text = " I\tlove rain  and sunny\ndays ";
+
+        List<Classification> expected = model.classifyTopK(tokenizer.tokenize(text), 2);
+        List<Classification> actual = model.classifyTopK(text, tokenizer, 2);
+
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i).getCategory(), actual.get(i).getCategory());
+            Assert.assertEquals(expected.get(i).getProbability(), actual.get(i).getProbability(), EPSILON);
+        }
+        List<String> categories = model.classifyTexts(Arrays.asList("there will be rain", "a sunny day"), tokenizer)
+                .map(Classification::getCategory)
+                .collect(Collectors.toList());
+        Assert.assertEquals(Arrays.asList(CATEGORY_NEGATIVE, CATEGORY_POSITIVE), categories);
+    }
+
+    @Test
+    public void testClassifyTextAllocatesLessThanTokenizedText() throws IOException
+    {
+        List<Classification> corpus = Corpus.generate(5000, 20, 20000, 50, 42);
+        Classifier classifier = new Classifier();
+        corpus.forEach(classifier::learn);
+        ClassifierModel model = classifier.snapshot();
+        List<String> texts = new ArrayList<>();
+        corpus.forEach(document -> texts.add(String.join(" ", document.getFeatureset())));
+        Tokenizer tokenizer = new SplitTokenizer();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        long collected = 0;
+        long streamed = 0;
+        for (int round = 0; round < 2; round++) {
+            // the first round warms up the JIT
+            long allocated = threads.getThreadAllocatedBytes(thread);
+            for (String text : texts) {
+                model.classifyTopK(tokenizer.tokenize(text), 1);
+            }
+            collected = threads.getThreadAllocatedBytes(thread) - allocated;
+            allocated = threads.getThreadAllocatedBytes(thread);
+            for (String text : texts) {
+                model.classifyTopK(text, tokenizer, 1);
+            }
+            streamed = threads.getThreadAllocatedBytes(thread) - allocated;
+        }
+
+        Assert.assertTrue("streamed " + streamed + " bytes, collected " + collected + " bytes",
+                streamed < collected * 3 / 4);
+    }
+
+    @Test
+    public void testHashedSnapshotClassifiesLikeHashedClassifier() throws IOException
+    {
+        Classifier hashed = new ConcurrentClassifier(new HashedCountStore(12));
+        hashed.learn(CATEGORY_POSITIVE, Arrays.asList("I love sunny days".split("\\s")));
+        hashed.learn(CATEGORY_NEGATIVE, Arrays.asList("I hate rain".split("\\s")));
+        ClassifierModel model = hashed.snapshot();
+        List<String> text = Arrays.asList("today is a sunny day".split("\\s"));
+
+        Assert.assertEquals(hashed.classify(text).getProbability(), model.classify(text).getProbability(), EPSILON);
+        Assert.assertEquals(CATEGORY_POSITIVE, model.classify(text).getCategory());
+        Assert.assertEquals(CATEGORY_NEGATIVE, model.classifyTopK("there will be rain", new SplitTokenizer(), 1)
+                .get(0).getCategory());
+        Assert.assertEquals(6, model.getFeatureSize());
+    }
+
+    @Test
+    public void testPublisherPublishesAfterGivenNumberOfLearns() throws InterruptedException
+    {
+        try (ClassifierModelPublisher publisher = new ClassifierModelPublisher(new ConcurrentClassifier(), 2, 1,
+                TimeUnit.HOURS)) {
+            publisher.learn(CATEGORY_POSITIVE, Arrays.asList("sunny"));
+            Assert.assertEquals(0, publisher.getModel().getCategoriesTotal());
+
+            publisher.learn(CATEGORY_NEGATIVE, Arrays.asList("rain"));
+            long deadline = System.currentTimeMillis() + 10000;
+            while (publisher.getModel().getCategoriesTotal() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(2, publisher.getModel().getCategoriesTotal());
+            Assert.assertEquals(CATEGORY_NEGATIVE, publisher.getModel().classify(Arrays.asList("rain"))
+                    .getCategory());
+        }
+    }
+
+    @Test
+    public void testPublisherWaitsForMinimumInterval() throws InterruptedException
+    {
+        try (ClassifierModelPublisher publisher = new ClassifierModelPublisher(new ConcurrentClassifier(), 1, 1, 2,
+                TimeUnit.HOURS)) {
+            publisher.learn(CATEGORY_POSITIVE, Arrays.asList("sunny"));
+            publisher.learn(CATEGORY_NEGATIVE, Arrays.asList("rain"));
+            Thread.sleep(200);
+            Assert.assertEquals(0, publisher.getModel().getCategoriesTotal());
+
+            Assert.assertEquals(2, publisher.publish().getCategoriesTotal());
+        }
+    }
+}
@@ -3,6 +3,7 @@ package de.kl.classifier;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.Assert;
@@ -11,6 +12,7 @@ import org.junit.Test;
 
 import de.kl.classifier.Classification;
 import de.kl.classifier.Classifier;
+import de.kl.classifier.store.HashedCountStore;
 
 public class ClassifierTest
 {
@@ -64,11 +66,124 @@ public class ClassifierTest
 
         List<Classification> list = new ArrayList<Classification>(classifications);
 
+        // 0.0078125 and 0.0234375 before normalisation
         Assert.assertEquals(CATEGORY_NEGATIVE, list.get(0).getCategory());
-        Assert.assertEquals(0.0078125, list.get(0).getProbability(), EPSILON);
+        Assert.assertEquals(0.25, list.get(0).getProbability(), EPSILON);
 
         Assert.assertEquals(CATEGORY_POSITIVE, list.get(1).getCategory());
-        Assert.assertEquals(0.0234375, list.get(1).getProbability(), EPSILON);
+        Assert.assertEquals(0.75, list.get(1).getProbability(), EPSILON);
+    }
+
+    @Test
+    public void testLongFeaturesetDoesNotUnderflow()
+    {
+        List<String> longText = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            longText.add(i % 10 == 0 ? "rain" : "unknown" + i);
+        }
+        for (int i = 0; i < 200; i++) {
+            longText.add("sunny");
+        }
+
+        List<Classification> list = new ArrayList<>(bayes.classifyDetailed(longText));
+
+        Assert.assertEquals(2, list.size());
+        Assert.assertEquals(CATEGORY_POSITIVE, list.get(1).getCategory());
+        Assert.assertTrue(list.get(1).getProbability() > 0.0f);
+        Assert.assertEquals(1.0, list.get(0).getProbability() + list.get(1).getProbability(), EPSILON);
+    }
+
+    @Test
+    public void testEqualProbabilitiesAreKept()
+    {
+        Classifier classifier = new Classifier();
+        classifier.learn("first", Arrays.asList("same", "text"));
+        classifier.learn("second", Arrays.asList("same", "text"));
+
+        Collection<Classification> classifications = classifier.classifyDetailed(Arrays.asList("same"));
+
+        Assert.assertEquals(2, classifications.size());
+        for (Classification classification : classifications) {
+            Assert.assertEquals(0.5, classification.getProbability(), EPSILON);
+        }
+    }
+
+    @Test
+    public void testClassifyTopK()
+    {
+        Classifier classifier = new Classifier();
+        classifier.learn("first", Arrays.asList("sunny", "warm"));
+        classifier.learn("second", Arrays.asList("sunny", "cold"));
+        classifier.learn("third", Arrays.asList("rain", "cold"));
+        classifier.learn("fourth", Arrays.asList("snow", "cold"));
+
+        List<Classification> topTwo = classifier.classifyTopK(Arrays.asList("sunny", "warm"), 2);
+
+        Assert.assertEquals(2, topTwo.size());
+        Assert.assertEquals("first", topTwo.get(0).getCategory());
+        Assert.assertEquals("second", topTwo.get(1).getCategory());
+        Assert.assertTrue(topTwo.get(0).getProbability() > topTwo.get(1).getProbability());
+
+        List<Classification> all = classifier.classifyTopK(Arrays.asList("sunny", "warm"), 10);
+        List<Classification> detailed = new ArrayList<>(classifier.classifyDetailed(Arrays.asList("sunny", "warm")));
+        Collections.reverse(detailed);
+        Assert.assertEquals(4, all.size());
+        for (int i = 0; i < all.size(); i++) {
+            Assert.assertEquals(detailed.get(i).getCategory(), all.get(i).getCategory());
+            Assert.assertEquals(detailed.get(i).getProbability(), all.get(i).getProbability(), EPSILON);
+        }
+        Assert.assertTrue(classifier.classifyTopK(Arrays.asList("sunny"), 0).isEmpty());
+    }
+
+    @Test
+    public void testMergeEqualsLearningEverything()
+    {
+        Classifier merged = new Classifier();
+        merged.learn("first", Arrays.asList("sunny", "warm"));
+        Classifier other = new Classifier();
+        other.learn("second", Arrays.asList("sunny", "cold"));
+        other.learn("first", Arrays.asList("warm", "dry"));
+        Classifier all = new Classifier();
+        all.learn("first", Arrays.asList("sunny", "warm"));
+        all.learn("second", Arrays.asList("sunny", "cold"));
+        all.learn("first", Arrays.asList("warm", "dry"));
+
+        merged.merge(other);
+
+        Assert.assertEquals(all.getFeatures(), merged.getFeatures());
+        Assert.assertEquals(all.getCategoriesTotal(), merged.getCategoriesTotal());
+        for (String category : all.getCategories()) {
+            Assert.assertEquals(all.categoryCount(category), merged.categoryCount(category));
+            for (String feature : all.getFeatures()) {
+                Assert.assertEquals(all.featureCount(feature, category), merged.featureCount(feature, category));
+            }
+        }
+        Collection<String> text = Arrays.asList("warm", "dry", "cold");
+        Assert.assertEquals(all.classify(text).getProbability(), merged.classify(text).getProbability(), EPSILON);
+    }
+
+    @Test
+    public void testHashedClassifiersMergeBucketByBucket()
+    {
+        Classifier merged = new ConcurrentClassifier(new HashedCountStore(12));
+        merged.learn("first", Arrays.asList("sunny", "warm"));
+        Classifier other = new ConcurrentClassifier(new HashedCountStore(12));
+        other.learn("first", Arrays.asList("sunny", "dry"));
+
+        merged.merge(other);
+
+        Assert.assertEquals(2, merged.featureCount("sunny", "first"));
+        Assert.assertEquals(1, merged.featureCount("dry", "first"));
+        Assert.assertEquals(2, merged.categoryCount("first"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHashedClassifierIsNotMergedIntoNamedOne()
+    {
+        Classifier other = new ConcurrentClassifier(new HashedCountStore(12));
+        other.learn("first", Arrays.asList("sunny"));
+
+        new Classifier().merge(other);
     }
 
 }
@@ -0,0 +1,106 @@
+package de.kl.classifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the throughput of learning and classifying on one shared classifier with 2 to 16 threads, half of them
+ * learning and the other half classifying, and the classification latency of the live classifier and of published
+ * snapshots while a bulk training runs in the background. Not run as part of the test suite, start it manually:
+ *
+ * <pre>
+ * java -Xmx4g -cp target/classes:target/test-classes:... de.kl.classifier.ConcurrencyBenchmark
+ * </pre>
+ *
+ * @author konrad
+ */
+public class ConcurrencyBenchmark
+{
+
+    private static final int SECONDS = 5;
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        List<Classification> corpus = Corpus.generate(Corpus.DOCUMENTS, Corpus.TOKENS_PER_DOCUMENT,
+                Corpus.VOCABULARY / 10, Corpus.CATEGORIES, 42);
+        System.out.printf("%d cores%n", Runtime.getRuntime().availableProcessors());
+        sharedClassifier(corpus);
+        snapshots(corpus);
+    }
+
+    private static void sharedClassifier(List<Classification> corpus) throws InterruptedException
+    {
+        for (int threads : new int[]{2, 4, 8, 16}) {
+            ConcurrentClassifier classifier = new ConcurrentClassifier();
+            corpus.subList(0, corpus.size() / 10).forEach(classifier::learn);
+            AtomicLong learns = new AtomicLong();
+            AtomicLong classifications = new AtomicLong();
+            AtomicBoolean running = new AtomicBoolean(true);
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int worker = t;
+                workers.add(new Thread(() -> {
+                    int i = worker;
+                    while (running.get()) {
+                        Classification document = corpus.get(i % corpus.size());
+                        if (worker % 2 == 0) {
+                            classifier.learn(document);
+                            learns.incrementAndGet();
+                        } else {
+                            classifier.classify(document.getFeatureset());
+                            classifications.incrementAndGet();
+                        }
+                        i += threads;
+                    }
+                }));
+            }
+            workers.forEach(Thread::start);
+            Thread.sleep(TimeUnit.SECONDS.toMillis(SECONDS));
+            running.set(false);
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            System.out.printf("%,3d threads: %,10d learns/s, %,10d classifications/s%n",
+                    threads, learns.get() / SECONDS, classifications.get() / SECONDS);
+        }
+    }
+
+    private static void snapshots(List<Classification> corpus) throws InterruptedException
+    {
+        for (boolean useSnapshot : new boolean[]{false, true}) {
+            ConcurrentClassifier classifier = new ConcurrentClassifier();
+            corpus.subList(0, corpus.size() / 10).forEach(classifier::learn);
+            try (ClassifierModelPublisher publisher = new ClassifierModelPublisher(classifier, 10000, 1,
+                    TimeUnit.SECONDS)) {
+                long start = System.nanoTime();
+                ClassifierModel model = publisher.publish();
+                System.out.printf("snapshot of %,d features taken in %,d ms%n",
+                        model.getFeatureSize(), (System.nanoTime() - start) / 1000000);
+                Thread trainer = new Thread(() -> corpus.subList(corpus.size() / 10, corpus.size())
+                        .forEach(publisher::learn));
+                trainer.start();
+                long[] latencies = new long[20000];
+                for (int i = 0; i < latencies.length; i++) {
+                    Collection<String> features = corpus.get(i % corpus.size()).getFeatureset();
+                    start = System.nanoTime();
+                    if (useSnapshot) {
+                        publisher.getModel().classify(features);
+                    } else {
+                        classifier.classify(features);
+                    }
+                    latencies[i] = System.nanoTime() - start;
+                }
+                trainer.join();
+                Arrays.sort(latencies);
+                System.out.printf("%-10s while training: p50 %,6d us, p99 %,6d us%n",
+                        useSnapshot ? "snapshot" : "live", latencies[latencies.length / 2] / 1000,
+                        latencies[latencies.length * 99 / 100] / 1000);
+            }
+        }
+    }
+}
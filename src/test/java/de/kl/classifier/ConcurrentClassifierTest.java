@@ -0,0 +1,92 @@
+package de.kl.classifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Stress test training and classifying from many threads at once.
+ *
+ * @author konrad
+ */
+public class ConcurrentClassifierTest
+{
+
+    private static final int TRAINERS = 8;
+    private static final int READERS = 4;
+    private static final int LEARNS_PER_TRAINER = 5000;
+    private static final int CATEGORIES = 50;
+
+    @Test
+    public void testConcurrentLearning_losesNoUpdates() throws InterruptedException
+    {
+        ConcurrentClassifier classifier = new ConcurrentClassifier();
+        ExecutorService executor = Executors.newFixedThreadPool(TRAINERS + READERS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch trainersDone = new CountDownLatch(TRAINERS);
+        AtomicBoolean training = new AtomicBoolean(true);
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+        for (int t = 0; t < TRAINERS; t++) {
+            final int trainer = t;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < LEARNS_PER_TRAINER; i++) {
+                        int category = (trainer * LEARNS_PER_TRAINER + i) % CATEGORIES;
+                        // "shared" is learned by everybody, "own" features are new for every learn
+                        classifier.learn("category" + category,
+                                Arrays.asList("shared", "category" + category, "own" + trainer + "-" + i));
+                    }
+                } catch (Throwable ex) {
+                    failures.add(ex);
+                } finally {
+                    trainersDone.countDown();
+                }
+            });
+        }
+        for (int r = 0; r < READERS; r++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    while (training.get()) {
+                        for (Classification classification
+                                : classifier.classifyDetailed(Arrays.asList("shared", "category7", "unknown"))) {
+                            Assert.assertFalse(Float.isNaN(classification.getProbability()));
+                        }
+                    }
+                } catch (Throwable ex) {
+                    failures.add(ex);
+                }
+            });
+        }
+        start.countDown();
+        trainersDone.await();
+        training.set(false);
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        Assert.assertTrue(failures.toString(), failures.isEmpty());
+        int learns = TRAINERS * LEARNS_PER_TRAINER;
+        Assert.assertEquals(learns, classifier.getCategoriesTotal());
+        Assert.assertEquals(CATEGORIES, classifier.getCategories().size());
+        Assert.assertEquals(learns + CATEGORIES + 1, classifier.getFeatures().size());
+        List<Integer> sharedCounts = new ArrayList<>();
+        for (int category = 0; category < CATEGORIES; category++) {
+            Assert.assertEquals(learns / CATEGORIES, classifier.categoryCount("category" + category));
+            sharedCounts.add(classifier.featureCount("shared", "category" + category));
+        }
+        Assert.assertEquals(learns, sharedCounts.stream().mapToInt(Integer::intValue).sum());
+        Assert.assertEquals("category7",
+                classifier.classify(Arrays.asList("shared", "category7")).getCategory());
+    }
+}
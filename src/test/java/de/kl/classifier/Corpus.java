@@ -0,0 +1,80 @@
+package de.kl.classifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic training data for the benchmarks and the tests measuring the classifier as a whole, and the heap it
+ * retains.
+ *
+ * @author konrad
+ */
+final class Corpus
+{
+
+    /**
+     * The size of the corpus the benchmarks learn by default.
+     */
+    static final int DOCUMENTS = 200000;
+    static final int TOKENS_PER_DOCUMENT = 20;
+    static final int VOCABULARY = 2000000;
+    static final int CATEGORIES = 200;
+
+    private Corpus()
+    {
+    }
+
+    /**
+     * Generates documents with Zipf-like distributed tokens, so a few features are very frequent and a long tail is
+     * seen only once or twice.
+     *
+     * @param documents The number of documents.
+     * @param tokensPerDocument The number of tokens of each document.
+     * @param vocabulary The number of distinct tokens.
+     * @param categories The number of categories.
+     * @param seed The seed, the same seed generates the same documents.
+     * @return The documents.
+     */
+    static List<Classification> generate(int documents, int tokensPerDocument, int vocabulary, int categories,
+            long seed)
+    {
+        Random random = new Random(seed);
+        String[] terms = new String[vocabulary];
+        for (int i = 0; i < vocabulary; i++) {
+            terms[i] = "t" + Integer.toString(i, 36);
+        }
+        List<Classification> corpus = new ArrayList<>(documents);
+        for (int d = 0; d < documents; d++) {
+            int category = random.nextInt(categories);
+            List<String> features = new ArrayList<>(tokensPerDocument);
+            for (int t = 0; t < tokensPerDocument; t++) {
+                int rank = (int) Math.pow(vocabulary, random.nextDouble()) - 1;
+                // bias a part of the tokens towards the category, so the categories are distinguishable
+                features.add(terms[(t % 2 == 0) ? (rank + category) % vocabulary : rank]);
+            }
+            corpus.add(new Classification(features, "category" + category));
+        }
+        return corpus;
+    }
+
+    /**
+     * Measures the heap in use after collecting the garbage. The difference before and after building a structure is
+     * the heap it retains.
+     *
+     * @return The bytes in use.
+     */
+    static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,91 @@
+package de.kl.classifier;
+
+import de.kl.classifier.store.HashedCountStore;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the retained heap and the learning time of the count store with the nested <code>HashMap</code> layout it
+ * replaced, and the accuracy and retained heap of the interned feature space with hashed feature spaces of different
+ * sizes. The retained heap is measured after collecting the garbage, which varies from run to run, so compare it
+ * over several runs. Not run as part of the test suite, start it manually with a generous heap:
+ *
+ * <pre>
+ * java -Xmx4g -cp target/classes:target/test-classes:... de.kl.classifier.CountStoreBenchmark
+ * </pre>
+ *
+ * @author konrad
+ */
+public class CountStoreBenchmark
+{
+
+    public static void main(String[] args)
+    {
+        List<Classification> corpus = Corpus.generate(Corpus.DOCUMENTS, Corpus.TOKENS_PER_DOCUMENT,
+                Corpus.VOCABULARY, Corpus.CATEGORIES, 42);
+        layouts(corpus);
+        featureSpaces(corpus);
+    }
+
+    private static void layouts(List<Classification> corpus)
+    {
+        long baseline = Corpus.usedHeap();
+        Map<String, Map<String, Integer>> featureCountPerCategory = new HashMap<>();
+        Map<String, Integer> totalFeatureCount = new HashMap<>();
+        Map<String, Integer> totalCategoryCount = new HashMap<>();
+        long start = System.nanoTime();
+        for (Classification classification : corpus) {
+            for (String feature : classification.getFeatureset()) {
+                featureCountPerCategory.computeIfAbsent(classification.getCategory(), c -> new HashMap<>())
+                        .merge(feature, 1, Integer::sum);
+                totalFeatureCount.merge(feature, 1, Integer::sum);
+            }
+            totalCategoryCount.merge(classification.getCategory(), 1, Integer::sum);
+        }
+        long mapsNanos = System.nanoTime() - start;
+        long maps = Corpus.usedHeap() - baseline;
+        report("nested maps", maps, mapsNanos, totalFeatureCount.size());
+        featureCountPerCategory = null;
+        totalFeatureCount = null;
+        totalCategoryCount = null;
+
+        baseline = Corpus.usedHeap();
+        Classifier classifier = new Classifier();
+        start = System.nanoTime();
+        for (Classification classification : corpus) {
+            classifier.learn(classification);
+        }
+        long storeNanos = System.nanoTime() - start;
+        long store = Corpus.usedHeap() - baseline;
+        report("count store", store, storeNanos, classifier.getFeatures().size());
+        System.out.printf("count store retains %.1f%% of the nested maps%n", 100.0 * store / maps);
+    }
+
+    private static void featureSpaces(List<Classification> corpus)
+    {
+        List<Classification> training = corpus.subList(0, corpus.size() * 9 / 10);
+        List<Classification> test = corpus.subList(corpus.size() * 9 / 10, corpus.size());
+        for (int bits : new int[]{0, 12, 16, 18, 20, 22}) {
+            long baseline = Corpus.usedHeap();
+            Classifier classifier = (bits == 0) ? new ConcurrentClassifier()
+                    : new ConcurrentClassifier(new HashedCountStore(bits));
+            training.forEach(classifier::learn);
+            long bytes = Corpus.usedHeap() - baseline;
+            ClassifierModel model = classifier.snapshot();
+            long correct = test.stream()
+                    .filter(document -> model.classify(document.getFeatureset()).getCategory()
+                    .equals(document.getCategory()))
+                    .count();
+            System.out.printf("%-12s %,9d features %6.2f%% correct %,7d KB%n",
+                    (bits == 0) ? "interned" : "hashed 2^" + bits, model.getFeatureSize(),
+                    100.0 * correct / test.size(), bytes / 1024);
+        }
+    }
+
+    private static void report(String name, long bytes, long nanos, int features)
+    {
+        System.out.printf("%-12s %,14d bytes retained, %,8d ms to learn, %,d features%n",
+                name, bytes, nanos / 1000000, features);
+    }
+}
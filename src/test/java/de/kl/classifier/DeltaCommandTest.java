@@ -0,0 +1,85 @@
+package de.kl.classifier;
+
+import de.kl.classifier.store.CountDeltaFile;
+import de.kl.classifier.store.CountStore;
+import de.kl.classifier.store.HashedCountStore;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author konrad
+ */
+public class DeltaCommandTest
+{
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path trainingFile;
+    private Path delta;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        trainingFile = folder.getRoot().toPath().resolve("training.tsv");
+        delta = folder.getRoot().toPath().resolve("shard.delta");
+    }
+
+    @Test
+    public void testTrainLeavesShardUnchanged() throws IOException
+    {
+        byte[] shard = "positive\tsunny day\nnegative\trainy day".getBytes(StandardCharsets.UTF_8);
+        Files.write(trainingFile, shard);
+
+        Assert.assertEquals(0, run("train", trainingFile.toString(), delta.toString(), "1"));
+
+        Assert.assertArrayEquals(shard, Files.readAllBytes(trainingFile));
+        CountStore store = CountDeltaFile.read(delta);
+        Assert.assertEquals(2, store.categoriesTotal());
+    }
+
+    @Test
+    public void testTrainUsesConfiguredStore() throws IOException
+    {
+        Files.write(trainingFile, "positive\tsunny day\n".getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertEquals(0, run("train", trainingFile.toString(), delta.toString(), "--model.hashing.bits=10"));
+
+        CountStore store = CountDeltaFile.read(delta);
+        Assert.assertTrue(store instanceof HashedCountStore);
+        Assert.assertEquals(10, ((HashedCountStore) store).getBits());
+    }
+
+    @Test
+    public void testAppliedModelIsUpToDate() throws IOException
+    {
+        Files.write(trainingFile, "positive\tsunny day\nnegative\trainy day\n".getBytes(StandardCharsets.UTF_8));
+        Path modelFile = folder.getRoot().toPath().resolve("model.bin");
+
+        Assert.assertEquals(0, run("train", trainingFile.toString(), delta.toString(), "1"));
+        Assert.assertEquals(0, run("apply", modelFile.toString(), trainingFile.toString(), delta.toString()));
+
+        try (ClassifierFile file = new ClassifierFile(modelFile, trainingFile, 0, TimeUnit.MILLISECONDS)) {
+            Assert.assertTrue(file.isUpToDate());
+            Assert.assertEquals(2, file.getClassifier().getCategoriesTotal());
+            Assert.assertEquals("positive", file.getClassifier().classify(Arrays.asList("sunny")).getCategory());
+        }
+    }
+
+    private static int run(String... args) throws IOException
+    {
+        return DeltaCommand.run(args, new PrintStream(new ByteArrayOutputStream(), true, "UTF-8"));
+    }
+}
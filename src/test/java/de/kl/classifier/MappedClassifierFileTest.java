@@ -0,0 +1,63 @@
+package de.kl.classifier;
+
+import de.kl.classifier.store.MappedCountStore;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author konrad
+ */
+public class MappedClassifierFileTest
+{
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Classifier bayes;
+    private Path path;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        bayes = new Classifier();
+        bayes.learn("positive", Arrays.asList("sunny"));
+        path = folder.getRoot().toPath().resolve("model.mapped");
+        MappedCountStore.write(bayes.getStore(), path);
+    }
+
+    @Test
+    public void testUnchangedFileIsNotMappedAgain() throws IOException
+    {
+        try (MappedClassifierFile file = new MappedClassifierFile(path, 0, TimeUnit.MILLISECONDS)) {
+            MappedClassifier classifier = file.getClassifier();
+
+            Assert.assertFalse(file.reload());
+            Assert.assertSame(classifier, file.getClassifier());
+        }
+    }
+
+    @Test
+    public void testReplacedFileIsPublished() throws IOException
+    {
+        try (MappedClassifierFile file = new MappedClassifierFile(path, 0, TimeUnit.MILLISECONDS);
+                ClassifierModelPublisher publisher = new ClassifierModelPublisher(file.getClassifier(), 1, 1,
+                        TimeUnit.HOURS)) {
+            file.addListener(publisher::replace);
+            bayes.learn("negative", Arrays.asList("rain"));
+            MappedCountStore.write(bayes.getStore(), path);
+
+            Assert.assertTrue(file.reload());
+            Assert.assertEquals(2, file.getClassifier().getCategoriesTotal());
+            Assert.assertEquals(2, publisher.getModel().getCategoriesTotal());
+            Assert.assertEquals("negative", publisher.getModel().classify(Arrays.asList("rain")).getCategory());
+        }
+    }
+}
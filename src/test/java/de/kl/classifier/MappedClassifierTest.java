@@ -0,0 +1,87 @@
+package de.kl.classifier;
+
+import de.kl.classifier.store.MappedCountStore;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author konrad
+ */
+public class MappedClassifierTest
+{
+
+    private static final double EPSILON = 0.001;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Classifier bayes;
+    private MappedClassifier mapped;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        bayes = new Classifier();
+        bayes.learn("positive", Arrays.asList("I", "love", "sunny", "days"));
+        bayes.learn("negative", Arrays.asList("I", "hate", "rain"));
+        bayes.learn("négatif", Arrays.asList("je", "déteste", "la", "pluie"));
+        for (int i = 0; i < 1000; i++) {
+            bayes.learn(i % 2 == 0 ? "positive" : "negative", Arrays.asList("filler" + i, "sunny"));
+        }
+        Path path = folder.getRoot().toPath().resolve("model.mapped");
+        MappedCountStore.write(bayes.getStore(), path);
+        mapped = MappedClassifier.open(path);
+    }
+
+    @Test
+    public void testMappedStoreHoldsAllCounts()
+    {
+        MappedCountStore store = (MappedCountStore) mapped.getStore();
+
+        Assert.assertEquals(bayes.getFeatures(), mapped.getFeatures());
+        Assert.assertEquals(bayes.getCategories(), mapped.getCategories());
+        Assert.assertEquals(bayes.getCategoriesTotal(), mapped.getCategoriesTotal());
+        for (String feature : bayes.getFeatures()) {
+            int featureId = store.featureId(feature);
+            Assert.assertEquals(feature, store.feature(featureId));
+            for (String category : bayes.getCategories()) {
+                Assert.assertEquals(bayes.getStore().featureCount(bayes.getStore().featureId(feature),
+                        bayes.getStore().categoryId(category)),
+                        store.featureCount(featureId, store.categoryId(category)));
+            }
+        }
+        Assert.assertEquals(-1, store.featureId("snow"));
+    }
+
+    @Test
+    public void testClassifiesLikeClassifier()
+    {
+        for (List<String> text : Arrays.asList(Arrays.asList("today", "is", "a", "sunny", "day"),
+                Arrays.asList("la", "pluie", "rain"), Arrays.asList("unknown"))) {
+            List<Classification> expected = new ArrayList<>(bayes.classifyDetailed(text));
+            List<Classification> actual = new ArrayList<>(mapped.classifyDetailed(text));
+            List<Classification> snapshot = new ArrayList<>(mapped.snapshot().classifyDetailed(text));
+            Assert.assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                Assert.assertEquals(expected.get(i).getCategory(), actual.get(i).getCategory());
+                Assert.assertEquals(expected.get(i).getProbability(), actual.get(i).getProbability(), EPSILON);
+                Assert.assertEquals(expected.get(i).getCategory(), snapshot.get(i).getCategory());
+            }
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCanNotLearn()
+    {
+        mapped.learn("positive", Arrays.asList("sunny"));
+    }
+}
@@ -0,0 +1,135 @@
+package de.kl.classifier;
+
+import de.kl.classifier.dict.CsvFeatureDictionary;
+import de.kl.classifier.store.ConcurrentCountStore;
+import de.kl.classifier.store.CountStoreFile;
+import de.kl.classifier.store.MappedCountStore;
+import de.kl.classifier.token.SplitTokenizer;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Compares the ways to get a classifier at startup: learning an already tokenized corpus against loading the counts
+ * from a count file, learning a training file text by text against the {@link ParallelTrainer}, and the retained heap
+ * and classification time of a classifier on the heap against one on a mapped file. Not run as part of the test
+ * suite, start it manually:
+ *
+ * <pre>
+ * java -Xmx4g -cp target/classes:target/test-classes:... de.kl.classifier.ModelFileBenchmark
+ * </pre>
+ *
+ * @author konrad
+ */
+public class ModelFileBenchmark
+{
+
+    public static void main(String[] args) throws IOException
+    {
+        countFile();
+        trainingFile();
+        mappedFile();
+    }
+
+    private static void countFile() throws IOException
+    {
+        List<Classification> corpus = Corpus.generate(Corpus.DOCUMENTS * 5, Corpus.TOKENS_PER_DOCUMENT,
+                Corpus.VOCABULARY, Corpus.CATEGORIES, 42);
+        Path path = Files.createTempFile("counts", ".bin");
+        try {
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime();
+                ConcurrentCountStore store = new ConcurrentCountStore();
+                ConcurrentClassifier classifier = new ConcurrentClassifier(store);
+                corpus.forEach(classifier::learn);
+                long learned = System.nanoTime();
+                CountStoreFile.write(store, 0L, path);
+                long written = System.nanoTime();
+                CountStoreFile.read(path, new ConcurrentCountStore());
+                long read = System.nanoTime();
+                System.out.printf("%,d documents: learned in %,d ms, written in %,d ms, %,d bytes read in %,d ms%n",
+                        corpus.size(), (learned - start) / 1000000, (written - learned) / 1000000, Files.size(path),
+                        (read - written) / 1000000);
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static void trainingFile() throws IOException
+    {
+        List<Classification> corpus = Corpus.generate(Corpus.DOCUMENTS * 5, Corpus.TOKENS_PER_DOCUMENT,
+                Corpus.VOCABULARY, Corpus.CATEGORIES, 42);
+        Path path = Files.createTempFile("training", ".tsv");
+        List<String> lines = new ArrayList<>(corpus.size());
+        for (Classification classification : corpus) {
+            lines.add(classification.getCategory() + "\t" + String.join(" ", classification.getFeatureset()));
+        }
+        Files.write(path, lines);
+        lines = null;
+        corpus = null;
+        int processors = Runtime.getRuntime().availableProcessors();
+        try (CsvFeatureDictionary dictionary = new CsvFeatureDictionary(path.toString(), new SplitTokenizer(), 1000,
+                1000)) {
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime();
+                ConcurrentClassifier sequential = new ConcurrentClassifier();
+                try (Stream<Classification> entries = dictionary.streamAllFeature()) {
+                    entries.forEach(sequential::learn);
+                }
+                long sequentialNanos = System.nanoTime() - start;
+                start = System.nanoTime();
+                ConcurrentClassifier parallel = new ConcurrentClassifier();
+                parallel.merge(new ParallelTrainer(processors).train(dictionary));
+                long parallelNanos = System.nanoTime() - start;
+                System.out.printf("%,d bytes, %d processors: one by one %,d ms, parallel %,d ms%n", Files.size(path),
+                        processors, sequentialNanos / 1000000, parallelNanos / 1000000);
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static void mappedFile() throws IOException
+    {
+        List<Classification> corpus = Corpus.generate(Corpus.DOCUMENTS * 5, Corpus.TOKENS_PER_DOCUMENT,
+                Corpus.VOCABULARY, Corpus.CATEGORIES, 42);
+        List<Classification> documents = corpus.subList(0, 10000);
+        Path path = Files.createTempFile("counts", ".mapped");
+        try {
+            long before = Corpus.usedHeap();
+            Classifier classifier = new Classifier();
+            corpus.forEach(classifier::learn);
+            long heap = Corpus.usedHeap() - before;
+            MappedCountStore.write(classifier.getStore(), path);
+            long heapNanos = classifyNanos(classifier, documents);
+            classifier = null;
+
+            before = Corpus.usedHeap();
+            MappedClassifier mapped = MappedClassifier.open(path);
+            long mappedHeap = Corpus.usedHeap() - before;
+            long mappedNanos = classifyNanos(mapped, documents);
+            System.out.printf("heap:   %,13d bytes retained, %,7d ns per document%n", heap, heapNanos);
+            System.out.printf("mapped: %,13d bytes retained, %,7d ns per document, %,d bytes mapped%n",
+                    mappedHeap, mappedNanos, Files.size(path));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static long classifyNanos(Classifier classifier, List<Classification> documents)
+    {
+        long nanos = 0;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (Classification document : documents) {
+                classifier.classifyTopK(document.getFeatureset(), 1);
+            }
+            nanos = System.nanoTime() - start;
+        }
+        return nanos / documents.size();
+    }
+}
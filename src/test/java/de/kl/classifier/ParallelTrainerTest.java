@@ -0,0 +1,78 @@
+package de.kl.classifier;
+
+import de.kl.classifier.dict.CsvFeatureDictionary;
+import de.kl.classifier.store.HashedCountStore;
+import de.kl.classifier.token.SplitTokenizer;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author konrad
+ */
+public class ParallelTrainerTest
+{
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testParallelTrainingLearnsLikeSequentialLearning() throws IOException
+    {
+        Path path = this.folder.getRoot().toPath().resolve("training.tsv");
+        try (CsvFeatureDictionary dictionary = new CsvFeatureDictionary(path.toString(), new SplitTokenizer(), 1000,
+                1000)) {
+            // several megabytes, so the file is split into many ranges
+            Random random = new Random(42);
+            for (int i = 0; i < 60000; i++) {
+                StringBuilder text = new StringBuilder();
+                for (int word = 0; word < 10; word++) {
+                    text.append("word").append(random.nextInt(5000)).append(' ');
+                }
+                dictionary.addFeature(text.toString(), "category" + random.nextInt(7));
+            }
+            Classifier sequential = new Classifier();
+            try (Stream<Classification> entries = dictionary.streamAllFeature()) {
+                entries.forEach(sequential::learn);
+            }
+
+            Classifier parallel = new ConcurrentClassifier();
+            parallel.merge(new ParallelTrainer(4).train(dictionary));
+
+            assertThat(parallel.getCategoriesTotal(), is(60000));
+            assertThat(parallel.getFeatures(), is(sequential.getFeatures()));
+            for (String category : sequential.getCategories()) {
+                assertThat(parallel.categoryCount(category), is(sequential.categoryCount(category)));
+                for (String feature : sequential.getFeatures()) {
+                    assertThat(parallel.featureCount(feature, category),
+                            is(sequential.featureCount(feature, category)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPartialsUseTheGivenStores()
+    {
+        Stream<Classification> entries = Stream.of(
+                new Classification(Arrays.asList("sunny", "day"), "positive"),
+                new Classification(Arrays.asList("rainy", "day"), "negative"));
+
+        Classifier trained = new ParallelTrainer(2, () -> new HashedCountStore(10)).train(entries);
+
+        assertThat(trained.getStore(), instanceOf(HashedCountStore.class));
+        Classifier hashed = new ConcurrentClassifier(new HashedCountStore(10));
+        hashed.merge(trained);
+        assertThat(hashed.getCategoriesTotal(), is(2));
+        assertThat(hashed.featureCount("day", "negative"), is(1));
+    }
+}
@@ -0,0 +1,118 @@
+package de.kl.classifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the classification latency of long documents, how the latency of a short document scales with the number
+ * of categories, and the latency for a sparse taxonomy, where each category uses its own small part of the vocabulary
+ * and most feature/category pairs are never seen. Not run as part of the test suite, start it manually:
+ *
+ * <pre>
+ * java -Xmx4g -cp target/classes:target/test-classes:... de.kl.classifier.ScoringBenchmark
+ * </pre>
+ *
+ * @author konrad
+ */
+public class ScoringBenchmark
+{
+
+    public static void main(String[] args)
+    {
+        longDocuments();
+        categories();
+        sparse();
+    }
+
+    private static void longDocuments()
+    {
+        Classifier classifier = new Classifier();
+        Corpus.generate(Corpus.DOCUMENTS / 4, Corpus.TOKENS_PER_DOCUMENT, Corpus.VOCABULARY / 10, Corpus.CATEGORIES,
+                42).forEach(classifier::learn);
+        List<Classification> documents = Corpus.generate(200, 500, Corpus.VOCABULARY / 10, Corpus.CATEGORIES, 7);
+        int correct = 0;
+        long start = 0;
+        for (int round = 0; round < 3; round++) {
+            // the first two rounds warm up the JIT
+            start = System.nanoTime();
+            correct = 0;
+            for (Classification document : documents) {
+                if (document.getCategory().equals(classifier.classify(document.getFeatureset()).getCategory())) {
+                    correct++;
+                }
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%,d us per 500 token document, %d of %d classified correctly%n",
+                nanos / 1000 / documents.size(), correct, documents.size());
+    }
+
+    private static void categories()
+    {
+        for (int categories : new int[]{10, 100, 500, 1000, 2000, 5000}) {
+            Classifier classifier = new Classifier();
+            Corpus.generate(categories * 5, Corpus.TOKENS_PER_DOCUMENT, Corpus.VOCABULARY / 100, categories, 42)
+                    .forEach(classifier::learn);
+            List<Classification> documents = Corpus.generate(100, 3, Corpus.VOCABULARY / 100, categories, 7);
+            long priorsNanos = 0;
+            long classifyNanos = 0;
+            for (int round = 0; round < 10; round++) {
+                // the first rounds warm up the JIT
+                long start = System.nanoTime();
+                for (Classification document : documents) {
+                    classifier.categoryLogProbabilities(Collections.<String>emptyList());
+                }
+                long middle = System.nanoTime();
+                for (Classification document : documents) {
+                    classifier.classify(document.getFeatureset());
+                }
+                priorsNanos = middle - start;
+                classifyNanos = System.nanoTime() - middle;
+            }
+            System.out.printf("%,6d categories: %,10d ns for the priors, %,10d ns per 3 token document%n",
+                    categories, priorsNanos / documents.size(), classifyNanos / documents.size());
+        }
+    }
+
+    private static void sparse()
+    {
+        int categories = 2000;
+        Random random = new Random(42);
+        Classifier classifier = new Classifier();
+        for (int d = 0; d < categories * 20; d++) {
+            int category = d % categories;
+            List<String> features = new ArrayList<>();
+            for (int t = 0; t < Corpus.TOKENS_PER_DOCUMENT; t++) {
+                features.add("t" + (category * 50 + random.nextInt(50)));
+            }
+            classifier.learn("category" + category, features);
+        }
+        List<List<String>> documents = new ArrayList<>();
+        for (int d = 0; d < 200; d++) {
+            int category = random.nextInt(categories);
+            List<String> features = new ArrayList<>();
+            for (int t = 0; t < 50; t++) {
+                features.add("t" + (category * 50 + random.nextInt(50)));
+            }
+            documents.add(features);
+        }
+        long scoringNanos = 0;
+        long classifyNanos = 0;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (List<String> document : documents) {
+                classifier.categoryLogProbabilities(document);
+            }
+            long middle = System.nanoTime();
+            for (List<String> document : documents) {
+                classifier.classify(document);
+            }
+            scoringNanos = middle - start;
+            classifyNanos = System.nanoTime() - middle;
+        }
+        System.out.printf("%,d categories: %,d us scoring, %,d us classifying per 50 token document%n",
+                categories, scoringNanos / 1000 / documents.size(), classifyNanos / 1000 / documents.size());
+    }
+}
@@ -0,0 +1,99 @@
+package de.kl.classifier.dict;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author konrad
+ */
+public class TrainingFileSpliteratorTest
+{
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLinesAcrossBlocksAreRead() throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+        StringBuilder longLine = new StringBuilder("sport\t");
+        for (int i = 0; i < 30000; i++) {
+            longLine.append("goal ");
+        }
+        for (int i = 0; i < 5000; i++) {
+            lines.add("weather\tsunny days number " + i + " über");
+            if (i % 1000 == 0) {
+                lines.add(longLine.toString());
+            }
+        }
+        Path path = this.write(String.join("\n", lines) + "\n");
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<String> read = StreamSupport.stream(new TrainingFileSpliterator(channel, 0, channel.size()), false)
+                    .collect(Collectors.toList());
+
+            assertThat(read, is(lines));
+        }
+    }
+
+    @Test
+    public void testLastLineWithoutLineBreakIsRead() throws IOException
+    {
+        Path path = this.write("sport\tgoal\nweather\train");
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<String> read = StreamSupport.stream(new TrainingFileSpliterator(channel, 0, channel.size()), false)
+                    .collect(Collectors.toList());
+
+            assertThat(read, is(Arrays.asList("sport\tgoal", "weather\train")));
+        }
+    }
+
+    @Test
+    public void testSplitsKeepTheOrder() throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 200000; i++) {
+            lines.add("weather\tsunny days number " + i);
+        }
+        Path path = this.write(String.join("\n", lines) + "\n");
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            TrainingFileSpliterator instance = new TrainingFileSpliterator(channel, 0, channel.size());
+            instance.tryAdvance(line -> assertThat(line, is(lines.get(0))));
+            TrainingFileSpliterator prefix = (TrainingFileSpliterator) instance.trySplit();
+            assertThat(prefix, is(notNullValue()));
+            List<String> read = new ArrayList<>(lines.subList(0, 1));
+            prefix.forEachRemaining(read::add);
+            instance.forEachRemaining(read::add);
+            assertThat(read, is(lines));
+
+            List<String> parallel = StreamSupport.stream(new TrainingFileSpliterator(channel, 0, channel.size()), true)
+                    .collect(Collectors.toList());
+            assertThat(parallel, is(lines));
+        }
+    }
+
+    private Path write(String content) throws IOException
+    {
+        Path path = this.folder.getRoot().toPath().resolve("training.tsv");
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+}
@@ -0,0 +1,119 @@
+package de.kl.classifier.dict;
+
+import de.kl.classifier.Classification;
+import de.kl.classifier.token.SplitTokenizer;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Compares the rate of texts added to a {@link CsvFeatureDictionary} through its {@link TrainingJournal} with opening
+ * the training file for each text, as the dictionary did before, with 1 to 64 threads training at once. The journal
+ * is measured forcing the file to the disk every 1000 texts, and after every write. Not run as part of the test suite,
+ * start it manually:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:... de.kl.classifier.dict.TrainingJournalBenchmark
+ * </pre>
+ *
+ * @author konrad
+ */
+public class TrainingJournalBenchmark
+{
+
+    private static final int SECONDS = 3;
+
+    private static final String TEXT = "the quick brown fox jumps over the lazy dog near the river bank";
+
+    public static void main(String[] args) throws Exception
+    {
+        System.out.printf("%d cores%n", Runtime.getRuntime().availableProcessors());
+        for (int threads : new int[]{1, 4, 16, 64}) {
+            long opening = rate(path -> new OpeningFeatureDictionary(path.toString()), threads);
+            long journal = rate(path -> new CsvFeatureDictionary(path.toString(), new SplitTokenizer(), 1000, 1000),
+                    threads);
+            long forced = rate(path -> new CsvFeatureDictionary(path.toString(), new SplitTokenizer(), 1, 1000),
+                    threads);
+            System.out.printf("%,3d threads: open per text %,9d texts/s, journal %,9d texts/s, "
+                    + "journal forcing each write %,9d texts/s%n", threads, opening, journal, forced);
+        }
+    }
+
+    private static long rate(DictionaryFactory factory, int threads) throws Exception
+    {
+        Path path = Files.createTempFile("training", ".tsv");
+        FeatureDictionary dictionary = factory.create(path);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong added = new AtomicLong();
+        List<Thread> trainers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String category = "category" + t;
+            trainers.add(new Thread(() -> {
+                long count = 0;
+                while (running.get()) {
+                    dictionary.addFeature(TEXT, category);
+                    count++;
+                }
+                added.addAndGet(count);
+            }));
+        }
+        trainers.forEach(Thread::start);
+        Thread.sleep(SECONDS * 1000L);
+        running.set(false);
+        for (Thread trainer : trainers) {
+            trainer.join();
+        }
+        if (dictionary instanceof AutoCloseable) {
+            ((AutoCloseable) dictionary).close();
+        }
+        Files.delete(path);
+        return added.get() / SECONDS;
+    }
+
+    private interface DictionaryFactory
+    {
+
+        FeatureDictionary create(Path path) throws IOException;
+    }
+
+    /**
+     * Adds texts like the dictionary did before the journal: it opens the training file for every text.
+     */
+    private static class OpeningFeatureDictionary implements FeatureDictionary
+    {
+
+        private final String trainingFile;
+
+        private OpeningFeatureDictionary(String trainingFile)
+        {
+            this.trainingFile = trainingFile;
+        }
+
+        @Override
+        public synchronized int addFeature(String feature, String category)
+        {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(this.trainingFile, true), "UTF-8"))) {
+                writer.append(category + "\t" + feature.replace("\t", " ") + "\n");
+            } catch (IOException ex) {
+                System.out.println(ex.getMessage());
+            }
+            return 0;
+        }
+
+        @Override
+        public Stream<Classification> streamAllFeature()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
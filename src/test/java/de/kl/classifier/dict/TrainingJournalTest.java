@@ -0,0 +1,183 @@
+package de.kl.classifier.dict;
+
+import de.kl.classifier.token.SplitTokenizer;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author konrad
+ */
+public class TrainingJournalTest
+{
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRecordsAreWrittenInOrder() throws IOException
+    {
+        Path path = this.folder.getRoot().toPath().resolve("training.tsv");
+        try (TrainingJournal instance = new TrainingJournal(path, 10, 100, TimeUnit.MILLISECONDS)) {
+            List<CompletableFuture<Void>> written = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                written.add(instance.append("record " + i));
+            }
+            TrainingJournal.await(written.get(999));
+
+            List<String> lines = Files.readAllLines(path);
+            assertThat(lines.size(), is(1000));
+            for (int i = 0; i < 1000; i++) {
+                assertThat(lines.get(i), is("record " + i));
+                assertThat(written.get(i).isDone(), is(true));
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentRecordsKeepTheirOrder() throws Exception
+    {
+        Path path = this.folder.getRoot().toPath().resolve("training.tsv");
+        int threads = 4;
+        int records = 2000;
+        try (TrainingJournal instance = new TrainingJournal(path, 1000, 1000, TimeUnit.MILLISECONDS)) {
+            List<Thread> trainers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String name = "trainer" + t;
+                trainers.add(new Thread(() -> {
+                    for (int i = 0; i < records; i++) {
+                        instance.append(name + "\t" + i);
+                    }
+                }));
+            }
+            trainers.forEach(Thread::start);
+            for (Thread trainer : trainers) {
+                trainer.join();
+            }
+        }
+
+        int[] next = new int[threads];
+        for (String line : Files.readAllLines(path)) {
+            String[] columns = line.split("\t");
+            int trainer = Integer.parseInt(columns[0].substring("trainer".length()));
+            assertThat(Integer.parseInt(columns[1]), is(next[trainer]++));
+        }
+        for (int t = 0; t < threads; t++) {
+            assertThat(next[t], is(records));
+        }
+    }
+
+    @Test
+    public void testTornRecordIsCutOff() throws IOException
+    {
+        Path path = this.folder.getRoot().toPath().resolve("training.tsv");
+        Files.write(path, "sport\tgoal\nweather\train\npolitics\tvo".getBytes(StandardCharsets.UTF_8));
+
+        try (TrainingJournal instance = new TrainingJournal(path, 1, 0, TimeUnit.MILLISECONDS)) {
+            TrainingJournal.await(instance.append("politics\tvote"));
+        }
+
+        assertThat(Files.readAllLines(path), is(Arrays.asList("sport\tgoal", "weather\train", "politics\tvote")));
+    }
+
+    @Test
+    public void testFileWithoutCompleteRecordIsEmptied() throws IOException
+    {
+        Path path = this.folder.getRoot().toPath().resolve("training.tsv");
+        Files.write(path, "spo".getBytes(StandardCharsets.UTF_8));
+
+        new TrainingJournal(path, 1, 0, TimeUnit.MILLISECONDS).close();
+
+        assertThat(Files.size(path), is(0L));
+    }
+
+    @Test
+    public void testAddedTextsAreLoaded() throws IOException
+    {
+        Path path = this.folder.getRoot().toPath().resolve("training.tsv");
+        try (CsvFeatureDictionary dictionary = new CsvFeatureDictionary(path.toString(), new SplitTokenizer(), 1000,
+                1000)) {
+            dictionary.addFeature("sunny\tdays", "weather");
+            dictionary.addFeature("late goal", "sport");
+
+            assertThat(dictionary.getAllFeature().size(), is(2));
+            assertThat(dictionary.addFeature("rainy days", "weather"), is(3));
+            assertThat(dictionary.getAllFeature().get(0).getCategory(), is("weather"));
+            assertThat(new ArrayList<>(dictionary.getAllFeature().get(2).getFeatureset()),
+                    is(Arrays.asList("rainy", "days")));
+        }
+        assertThat(Files.readAllLines(path).get(0), is("weather\tsunny days"));
+    }
+
+    @Test
+    public void testReadOnlyDictionaryDoesNotWrite() throws IOException
+    {
+        Path path = this.folder.getRoot().toPath().resolve("training.tsv");
+        Files.write(path, Arrays.asList("weather\tsunny days"));
+        try (CsvFeatureDictionary dictionary = new CsvFeatureDictionary(path.toString(), new SplitTokenizer(), 1000,
+                1000, true)) {
+            assertThat(dictionary.getAllFeature().size(), is(1));
+            try {
+                dictionary.addFeature("late goal", "sport");
+                fail("Added a text to a read-only dictionary");
+            } catch (UnsupportedOperationException expected) {
+            }
+        }
+        assertThat(Files.readAllLines(path), is(Arrays.asList("weather\tsunny days")));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAppendAfterCloseFails() throws IOException
+    {
+        Path path = this.folder.getRoot().toPath().resolve("training.tsv");
+        TrainingJournal instance = new TrainingJournal(path, 1, 0, TimeUnit.MILLISECONDS);
+        instance.close();
+
+        instance.append("sport\tgoal");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFlushAfterCloseFails() throws IOException
+    {
+        Path path = this.folder.getRoot().toPath().resolve("training.tsv");
+        TrainingJournal instance = new TrainingJournal(path, 1, 0, TimeUnit.MILLISECONDS);
+        instance.close();
+
+        instance.flush();
+    }
+
+    @Test(timeout = 10000)
+    public void testAppendFailsAfterWriterStopped() throws Exception
+    {
+        Path path = this.folder.getRoot().toPath().resolve("training.tsv");
+        TrainingJournal instance = new TrainingJournal(path, 1, 0, TimeUnit.MILLISECONDS);
+        instance.append("sport\tgoal").join();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("training-journal")) {
+                thread.interrupt();
+                thread.join();
+            }
+        }
+
+        try {
+            instance.append("weather\tsunny days");
+            fail("Appended to a journal without writer");
+        } catch (IllegalStateException expected) {
+        }
+        instance.close();
+        assertThat(Files.readAllLines(path), is(Arrays.asList("sport\tgoal")));
+    }
+}
@@ -0,0 +1,111 @@
+package de.kl.classifier.store;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author konrad
+ */
+public class CountDeltaFileTest
+{
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private InternedCountStore store;
+    private Path path;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        store = new InternedCountStore();
+        int positive = store.internCategory("positive");
+        int negative = store.internCategory("négatif");
+        int sunny = store.internFeature("sunny");
+        store.internFeature("unused");
+        int rain = store.internFeature("rain");
+        store.addFeatureCount(sunny, positive, 300);
+        store.incrementFeature(sunny, negative);
+        store.incrementFeature(rain, negative);
+        store.addCategoryCount(positive, 300);
+        store.incrementCategory(negative);
+        path = folder.getRoot().toPath().resolve("shard.delta");
+    }
+
+    @Test
+    public void testDeltasAddUp() throws IOException
+    {
+        CountDeltaFile.write(store, path);
+        CountStore restored = CountDeltaFile.read(path);
+        CountDeltaFile.read(path, restored);
+
+        int sunny = restored.featureId("sunny");
+        int rain = restored.featureId("rain");
+        int positive = restored.categoryId("positive");
+        int negative = restored.categoryId("négatif");
+        assertThat(restored.featureCount(sunny, positive), is(600));
+        assertThat(restored.featureCount(sunny, negative), is(2));
+        assertThat(restored.featureCount(rain, positive), is(0));
+        assertThat(restored.featureTotal(rain), is(2));
+        assertThat(restored.categoriesTotal(), is(602));
+        // features without counts are left out
+        assertThat(restored.featureId("unused"), is(-1));
+        assertThat(restored.featureSize(), is(2));
+    }
+
+    @Test
+    public void testDeltaIsSmallerThanCountFile() throws IOException
+    {
+        Path countFile = folder.getRoot().toPath().resolve("model.bin");
+        CountStoreFile.write(store, 0L, countFile);
+        CountDeltaFile.write(store, path);
+
+        assertTrue(Files.size(path) < Files.size(countFile) / 2);
+    }
+
+    @Test
+    public void testHashedDeltaIsReadIntoHashedStore() throws IOException
+    {
+        HashedCountStore hashed = new HashedCountStore(10);
+        int category = hashed.internCategory("positive");
+        hashed.addFeatureCount(hashed.internFeature("sunny"), category, 5);
+        hashed.addCategoryCount(category, 5);
+        CountDeltaFile.write(hashed, path);
+
+        CountStore restored = CountDeltaFile.read(path);
+
+        assertThat(restored, is(instanceOf(HashedCountStore.class)));
+        assertThat(restored.featureCount(restored.featureId("sunny"), restored.categoryId("positive")), is(5));
+        assertThat(restored.featureSize(), is(1024));
+    }
+
+    @Test(expected = IOException.class)
+    public void testHashedDeltaIsNotAddedToNamedStore() throws IOException
+    {
+        CountDeltaFile.write(new HashedCountStore(10), path);
+
+        CountDeltaFile.read(path, new InternedCountStore());
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptDeltaIsRejected() throws IOException
+    {
+        CountDeltaFile.write(store, path);
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length / 2] ^= 0x10;
+        Files.write(path, bytes, StandardOpenOption.TRUNCATE_EXISTING);
+
+        CountDeltaFile.read(path);
+    }
+}
@@ -0,0 +1,142 @@
+package de.kl.classifier.store;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertThat;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author konrad
+ */
+public class CountStoreFileTest
+{
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private InternedCountStore store;
+    private Path path;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        store = new InternedCountStore();
+        int positive = store.internCategory("positive");
+        int negative = store.internCategory("négatif");
+        int sunny = store.internFeature("sunny");
+        int rain = store.internFeature("rain");
+        store.addFeatureCount(sunny, positive, 3);
+        store.incrementFeature(sunny, negative);
+        store.incrementFeature(rain, negative);
+        store.addCategoryCount(positive, 3);
+        store.incrementCategory(negative);
+        path = folder.getRoot().toPath().resolve("model.bin");
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        CountStoreFile.write(store, 42L, path);
+        ConcurrentCountStore restored = new ConcurrentCountStore();
+
+        assertThat(CountStoreFile.read(path, restored), is(42L));
+        int sunny = restored.featureId("sunny");
+        int rain = restored.featureId("rain");
+        int positive = restored.categoryId("positive");
+        int negative = restored.categoryId("négatif");
+        assertThat(restored.featureCount(sunny, positive), is(3));
+        assertThat(restored.featureCount(sunny, negative), is(1));
+        assertThat(restored.featureCount(rain, positive), is(0));
+        assertThat(restored.featureTotal(sunny), is(4));
+        assertThat(restored.categoryCount(positive), is(3));
+        assertThat(restored.categoriesTotal(), is(4));
+        assertThat(restored.featureSize(), is(2));
+    }
+
+    @Test
+    public void testHeaderDescribesCounts() throws IOException
+    {
+        CountStoreFile.write(new HashedCountStore(8), 42L, 2, 3, path);
+
+        CountStoreFile.Header header = CountStoreFile.readHeader(path);
+        assertThat(header.getSourceLength(), is(42L));
+        assertThat(header.getBits(), is(8));
+        assertThat(header.getNGramWords(), is(2));
+        assertThat(header.getNGramChars(), is(3));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptFileIsRejected() throws IOException
+    {
+        CountStoreFile.write(store, 42L, path);
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(path, bytes, StandardOpenOption.TRUNCATE_EXISTING);
+
+        CountStoreFile.read(path, new InternedCountStore());
+    }
+
+    @Test
+    public void testHashedRoundTrip() throws IOException
+    {
+        HashedCountStore hashed = new HashedCountStore(8);
+        CountStoreFile.write(store, 42L, path);
+        CountStoreFile.read(path, hashed);
+        CountStoreFile.write(hashed, 43L, path);
+        HashedCountStore restored = new HashedCountStore(8);
+
+        assertThat(CountStoreFile.read(path, restored), is(43L));
+        int sunny = restored.featureId("sunny");
+        assertThat(restored.featureCount(sunny, restored.categoryId("positive")), is(3));
+        assertThat(restored.featureTotal(sunny), is(4));
+        assertThat(restored.categoriesTotal(), is(4));
+    }
+
+    @Test(expected = IOException.class)
+    public void testHashedFileIsRejectedByNamedStore() throws IOException
+    {
+        CountStoreFile.write(new HashedCountStore(8), 42L, path);
+
+        CountStoreFile.read(path, new ConcurrentCountStore());
+    }
+
+    @Test
+    public void testHashedFileHoldsOnlyBucketsWithCounts() throws IOException
+    {
+        HashedCountStore hashed = new HashedCountStore(20);
+        CountStoreFile.write(store, 42L, path);
+        CountStoreFile.read(path, hashed);
+        CountStoreFile.write(hashed, 43L, path);
+
+        assertTrue(Files.size(path) < 1024);
+        HashedCountStore restored = new HashedCountStore(20);
+        assertThat(CountStoreFile.read(path, restored), is(43L));
+        assertThat(restored.featureCount(restored.featureId("rain"), restored.categoryId("négatif")), is(1));
+        assertThat(restored.featureTotal(restored.featureId("sunny")), is(4));
+    }
+
+    @Test
+    public void testFileLargerThanItsBufferIsRead() throws IOException
+    {
+        int category = store.internCategory("positive");
+        for (int i = 0; i < 20000; i++) {
+            store.addFeatureCount(store.internFeature("feature" + i), category, i + 1);
+        }
+        CountStoreFile.write(store, 42L, path);
+        ConcurrentCountStore restored = new ConcurrentCountStore();
+
+        assertThat(CountStoreFile.read(path, restored), is(42L));
+        assertThat(restored.featureSize(), is(20002));
+        for (int i = 0; i < 20000; i++) {
+            assertThat(restored.featureTotal(restored.featureId("feature" + i)), is(i + 1));
+        }
+    }
+}
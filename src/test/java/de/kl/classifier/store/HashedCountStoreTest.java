@@ -0,0 +1,40 @@
+package de.kl.classifier.store;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author konrad
+ */
+public class HashedCountStoreTest
+{
+
+    @Test
+    public void testFeaturesAreHashedIntoBuckets()
+    {
+        HashedCountStore store = new HashedCountStore(10);
+        int category = store.internCategory("weather");
+        int sunny = store.internFeature("sunny");
+        store.incrementFeature(sunny, category);
+        store.incrementFeature(store.internFeature("sunny"), category);
+
+        assertThat(store.featureSize(), is(1024));
+        assertThat(store.featureId("sunny"), is(sunny));
+        assertThat(HashedCountStore.bucket(new StringBuilder("sun").append("ny"), 10), is(sunny));
+        assertThat(store.featureCount(sunny, category), is(2));
+        assertTrue(store.features().isEmpty());
+        for (int i = 0; i < 10000; i++) {
+            int bucket = store.internFeature("feature" + i);
+            assertTrue(bucket >= 0 && bucket < 1024);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyBitsAreRejected()
+    {
+        new HashedCountStore(HashedCountStore.MAX_BITS + 1);
+    }
+}
@@ -0,0 +1,95 @@
+package de.kl.classifier.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author konrad
+ */
+public class InternedCountStoreTest
+{
+
+    private InternedCountStore instance;
+
+    @Before
+    public void setUp()
+    {
+        instance = new InternedCountStore();
+    }
+
+    @Test
+    public void testInterning_assignsDenseIdsInOrderOfAppearance()
+    {
+        assertThat(instance.internFeature("sunny"), is(0));
+        assertThat(instance.internFeature("rain"), is(1));
+        assertThat(instance.internFeature("sunny"), is(0));
+        assertThat(instance.featureId("rain"), is(1));
+        assertThat(instance.featureId("snow"), is(-1));
+        assertThat(instance.features(), contains("sunny", "rain"));
+    }
+
+    @Test
+    public void testCounting()
+    {
+        int positive = instance.internCategory("positive");
+        int negative = instance.internCategory("negative");
+        int sunny = instance.internFeature("sunny");
+        instance.incrementFeature(sunny, positive);
+        instance.incrementFeature(sunny, positive);
+        instance.incrementFeature(sunny, negative);
+        instance.incrementCategory(positive);
+
+        assertThat(instance.featureCount(sunny, positive), is(2));
+        assertThat(instance.featureCount(sunny, negative), is(1));
+        assertThat(instance.featureTotal(sunny), is(3));
+        assertThat(instance.categoryCount(positive), is(1));
+        assertThat(instance.categoryCount(negative), is(0));
+        assertThat(instance.category(negative), is("negative"));
+        assertThat(instance.categorySize(), is(2));
+    }
+
+    @Test
+    public void testPostings_onlyNonZeroCountsInCategoryOrder()
+    {
+        int first = instance.internCategory("first");
+        int second = instance.internCategory("second");
+        int third = instance.internCategory("third");
+        int feature = instance.internFeature("feature");
+        instance.incrementFeature(feature, third);
+        instance.incrementFeature(feature, first);
+        instance.incrementFeature(feature, third);
+
+        List<Integer> postings = new ArrayList<>();
+        instance.forEachPosting(feature, (categoryId, count) -> {
+            postings.add(categoryId);
+            postings.add(count);
+        });
+
+        assertThat(postings, contains(first, 1, third, 2));
+        assertThat(instance.featureCount(feature, second), is(0));
+    }
+
+    @Test
+    public void testGrowth_keepsAllCounts()
+    {
+        int category = instance.internCategory("category");
+        for (int i = 0; i < 100000; i++) {
+            int feature = instance.internFeature("feature" + i);
+            for (int j = 0; j <= i % 3; j++) {
+                instance.incrementFeature(feature, category);
+            }
+        }
+        for (int i = 0; i < 100000; i++) {
+            int feature = instance.featureId("feature" + i);
+            assertThat(feature, is(i));
+            assertThat(instance.featureCount(feature, category), is(i % 3 + 1));
+        }
+        assertThat(instance.features().size(), is(100000));
+    }
+}
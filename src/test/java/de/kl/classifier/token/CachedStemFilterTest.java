@@ -0,0 +1,76 @@
+package de.kl.classifier.token;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.StopAnalyzer;
+import org.apache.lucene.analysis.core.StopFilter;
+import org.apache.lucene.analysis.en.PorterStemFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author konrad
+ */
+public class CachedStemFilterTest
+{
+
+    private static final String TEXT = "The running dogs are running to the generously organized meetings, "
+            + "and a dog is meeting the organizers of these meetings at the station.";
+
+    @Test
+    public void testFiltersLikeStopAndPorterStemFilter() throws IOException
+    {
+        List<String> expected = analyse(new Analyzer()
+        {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName)
+            {
+                StandardTokenizer tokenizer = new StandardTokenizer();
+                return new TokenStreamComponents(tokenizer, new PorterStemFilter(
+                        new StopFilter(tokenizer, StopAnalyzer.ENGLISH_STOP_WORDS_SET)));
+            }
+        });
+        // a cache of two slots keeps replacing its entries
+        for (int capacity : new int[]{2, 1024}) {
+            StemCache cache = new StemCache(capacity);
+            Analyzer cached = new Analyzer()
+            {
+                @Override
+                protected TokenStreamComponents createComponents(String fieldName)
+                {
+                    StandardTokenizer tokenizer = new StandardTokenizer();
+                    return new TokenStreamComponents(tokenizer,
+                            new CachedStemFilter(tokenizer, cache, StopAnalyzer.ENGLISH_STOP_WORDS_SET));
+                }
+            };
+            assertThat(analyse(cached), is(expected));
+            assertThat(analyse(cached), is(expected));
+        }
+    }
+
+    /**
+     * Analyses the text into its terms, each with its position increment.
+     */
+    private static List<String> analyse(Analyzer analyzer) throws IOException
+    {
+        List<String> returnValue = new ArrayList<>();
+        try (TokenStream stream = analyzer.tokenStream("feature", TEXT)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            PositionIncrementAttribute increment = stream.addAttribute(PositionIncrementAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                returnValue.add(term.toString() + "+" + increment.getPositionIncrement());
+            }
+            stream.end();
+        }
+        return returnValue;
+    }
+}
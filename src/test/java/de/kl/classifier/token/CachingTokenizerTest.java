@@ -0,0 +1,63 @@
+package de.kl.classifier.token;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author konrad
+ */
+public class CachingTokenizerTest
+{
+
+    private final AtomicInteger analysed = new AtomicInteger();
+    private final Tokenizer counting = text -> {
+        analysed.incrementAndGet();
+        return new SplitTokenizer().tokenize(text);
+    };
+
+    @Test
+    public void testRepeatedTextIsAnalysedOnce() throws IOException
+    {
+        CachingTokenizer instance = new CachingTokenizer(counting, 1000);
+
+        assertThat(instance.tokenize("sunny days"), is(Arrays.asList("sunny", "days")));
+        assertThat(instance.tokenize("sunny days"), is(Arrays.asList("sunny", "days")));
+        List<String> streamed = new ArrayList<>();
+        instance.tokenize("sunny days", term -> streamed.add(term.toString()));
+
+        assertThat(streamed, is(Arrays.asList("sunny", "days")));
+        assertThat(analysed.get(), is(1));
+        assertThat(instance.stats().hitCount(), is(2L));
+        assertThat(instance.stats().missCount(), is(1L));
+    }
+
+    @Test
+    public void testCacheIsBoundedByWeight() throws IOException
+    {
+        CachingTokenizer instance = new CachingTokenizer(counting, 100);
+        for (int i = 0; i < 100; i++) {
+            instance.tokenize("text number " + i);
+        }
+
+        assertTrue(instance.size() < 10);
+        assertTrue(instance.stats().evictionCount() > 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void testFailureOfTokenizerIsPassedOn() throws IOException
+    {
+        CachingTokenizer instance = new CachingTokenizer(text -> {
+            throw new IOException("broken");
+        }, 100);
+
+        instance.tokenize("sunny");
+    }
+}
@@ -0,0 +1,253 @@
+package de.kl.classifier.token;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.StopAnalyzer;
+import org.apache.lucene.analysis.core.StopFilter;
+import org.apache.lucene.analysis.en.PorterStemFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+/**
+ * Compares the throughput of the tokenizer with the single synchronized analysis chain it used before, with 1 to 64
+ * threads tokenizing at once. With the argument <code>ngrams</code>, it measures the cost of adding n-grams with an
+ * {@link NGramTokenizer} instead, with <code>cache</code> the gain of a {@link CachingTokenizer} on texts that
+ * repeat, and with <code>stemming</code> and a text file the gain of the {@link StemCache} over a stop and a Porter
+ * stem filter. Not run as part of the test suite, start it manually:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:... de.kl.classifier.token.LuceneTokenizerBenchmark [ngrams|cache|stemming file]
+ * </pre>
+ *
+ * @author konrad
+ */
+public class LuceneTokenizerBenchmark
+{
+
+    private static final int SECONDS = 3;
+
+    public static void main(String[] args) throws InterruptedException, IOException
+    {
+        List<String> texts = texts(10000, 30, 42);
+        if (args.length > 0 && args[0].equals("ngrams")) {
+            nGrams(texts);
+            return;
+        }
+        if (args.length > 1 && args[0].equals("stemming")) {
+            stemming(Files.readAllLines(Paths.get(args[1]), StandardCharsets.ISO_8859_1));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("cache")) {
+            cache(texts);
+            return;
+        }
+        System.out.printf("%d cores%n", Runtime.getRuntime().availableProcessors());
+        for (int threads : new int[]{1, 4, 16, 64}) {
+            long synchronizedRate = throughput(new SynchronizedLuceneTokenizer(), texts, threads);
+            long perThreadRate = throughput(new LuceneTokenizer(), texts, threads);
+            System.out.printf("%,3d threads: synchronized %,9d texts/s, per thread chain %,9d texts/s%n",
+                    threads, synchronizedRate, perThreadRate);
+        }
+    }
+
+    private static void nGrams(List<String> texts) throws IOException
+    {
+        LuceneTokenizer terms = new LuceneTokenizer();
+        Tokenizer[] tokenizers = {terms, new NGramTokenizer(terms, 2, 0), new NGramTokenizer(terms, 3, 0),
+            new NGramTokenizer(terms, 1, 3), new NGramTokenizer(terms, 2, 3)};
+        String[] names = {"terms", "2 words", "3 words", "3 chars", "2 words 3 chars"};
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int round = 0; round < 3; round++) {
+            for (int t = 0; t < tokenizers.length; t++) {
+                AtomicLong features = new AtomicLong();
+                long allocated = threads.getThreadAllocatedBytes(thread);
+                long start = System.nanoTime();
+                for (String text : texts) {
+                    tokenizers[t].tokenize(text, term -> features.incrementAndGet());
+                }
+                long nanos = System.nanoTime() - start;
+                long bytes = threads.getThreadAllocatedBytes(thread) - allocated;
+                System.out.printf("%-16s %,9d texts/s %,4d features/text %,6d bytes/text%n", names[t],
+                        texts.size() * 1000000000L / nanos, features.get() / texts.size(), bytes / texts.size());
+            }
+        }
+    }
+
+    private static void cache(List<String> texts) throws IOException
+    {
+        // short texts repeating with a skewed distribution, as canned subjects do
+        Random random = new Random(7);
+        List<String> requests = new ArrayList<>();
+        for (int i = 0; i < 200000; i++) {
+            String text = texts.get((int) Math.pow(texts.size(), random.nextDouble()) - 1);
+            requests.add(text.substring(0, text.indexOf(' ', 40)));
+        }
+        LuceneTokenizer lucene = new LuceneTokenizer();
+        CachingTokenizer cached = new CachingTokenizer(lucene, 100000);
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (String request : requests) {
+                lucene.tokenize(request);
+            }
+            long uncachedNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (String request : requests) {
+                cached.tokenize(request);
+            }
+            long cachedNanos = System.nanoTime() - start;
+            System.out.printf("analysed %,9d texts/s, cached %,9d texts/s, hit ratio %.2f, %,d texts cached%n",
+                    requests.size() * 1000000000L / uncachedNanos, requests.size() * 1000000000L / cachedNanos,
+                    cached.stats().hitRate(), cached.size());
+        }
+    }
+
+    private static void stemming(List<String> lines) throws IOException
+    {
+        Tokenizer filters = new Tokenizer()
+        {
+            private final Analyzer analyzer = new Analyzer()
+            {
+                @Override
+                protected TokenStreamComponents createComponents(String fieldName)
+                {
+                    StandardTokenizer tokenizer = new StandardTokenizer();
+                    return new TokenStreamComponents(tokenizer, new PorterStemFilter(
+                            new StopFilter(tokenizer, StopAnalyzer.ENGLISH_STOP_WORDS_SET)));
+                }
+            };
+
+            @Override
+            public Collection<String> tokenize(String featureString) throws IOException
+            {
+                List<String> returnValue = new ArrayList<>();
+                try (TokenStream stream = this.analyzer.tokenStream("feature", featureString)) {
+                    CharTermAttribute attr = stream.addAttribute(CharTermAttribute.class);
+                    stream.reset();
+                    while (stream.incrementToken()) {
+                        returnValue.add(attr.toString());
+                    }
+                    stream.end();
+                }
+                return returnValue;
+            }
+        };
+        LuceneTokenizer cached = new LuceneTokenizer();
+        long terms = 0;
+        for (String line : lines) {
+            terms += line.split("\\s+").length;
+        }
+        System.out.printf("%,d lines, %,d words%n", lines.size(), terms);
+        for (int round = 0; round < 5; round++) {
+            long filtersNanos = 0;
+            long cachedNanos = 0;
+            for (int repeat = 0; repeat < 5; repeat++) {
+                long start = System.nanoTime();
+                for (String line : lines) {
+                    filters.tokenize(line);
+                }
+                filtersNanos += System.nanoTime() - start;
+                start = System.nanoTime();
+                for (String line : lines) {
+                    cached.tokenize(line);
+                }
+                cachedNanos += System.nanoTime() - start;
+            }
+            System.out.printf("stop and stem filters %,11d words/s, stem cache %,11d words/s%n",
+                    terms * 5 * 1000000000L / filtersNanos, terms * 5 * 1000000000L / cachedNanos);
+        }
+    }
+
+    private static long throughput(Tokenizer tokenizer, List<String> texts, int threads) throws InterruptedException
+    {
+        AtomicLong tokenized = new AtomicLong();
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int worker = t;
+            workers.add(new Thread(() -> {
+                int i = worker;
+                try {
+                    while (running.get()) {
+                        tokenizer.tokenize(texts.get(i % texts.size()));
+                        tokenized.incrementAndGet();
+                        i += threads;
+                    }
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        Thread.sleep(SECONDS * 1000);
+        running.set(false);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return tokenized.get() / SECONDS;
+    }
+
+    static List<String> texts(int count, int wordsPerText, long seed)
+    {
+        String[] words = ("the quick brown fox jumps over a lazy dog while reading running classified documents "
+                + "about weather sunny rain snow and other things that happened yesterday").split(" ");
+        Random random = new Random(seed);
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < wordsPerText; w++) {
+                text.append(words[random.nextInt(words.length)]).append(random.nextInt(100)).append(' ');
+            }
+            texts.add(text.toString());
+        }
+        return texts;
+    }
+
+    /**
+     * The tokenizer as it was: one analysis chain shared by all threads.
+     */
+    private static class SynchronizedLuceneTokenizer implements Tokenizer
+    {
+
+        private final StandardTokenizer tokenizer;
+        private final CharTermAttribute attr;
+        private final PorterStemFilter porterStemFilter;
+
+        private SynchronizedLuceneTokenizer()
+        {
+            this.tokenizer = new StandardTokenizer();
+            StopFilter stopFilter = new StopFilter(tokenizer, StopAnalyzer.ENGLISH_STOP_WORDS_SET);
+            this.porterStemFilter = new PorterStemFilter(stopFilter);
+            this.attr = porterStemFilter.addAttribute(CharTermAttribute.class);
+        }
+
+        @Override
+        public Collection<String> tokenize(String featureString) throws IOException
+        {
+            List<String> returnValue = new ArrayList<>();
+            synchronized (this) {
+                tokenizer.setReader(new StringReader(featureString));
+                tokenizer.reset();
+                while (porterStemFilter.incrementToken()) {
+                    returnValue.add(attr.toString());
+                }
+                tokenizer.close();
+            }
+            return returnValue;
+        }
+    }
+}
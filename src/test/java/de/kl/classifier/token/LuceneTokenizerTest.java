@@ -1,8 +1,15 @@
 package de.kl.classifier.token;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.assertThat;
 import org.junit.Test;
@@ -30,4 +37,38 @@ public class LuceneTokenizerTest
         assertThat(result, hasSize(3));
     }
 
+    @Test
+    public void testTokenizeStreamsTerms() throws IOException
+    {
+        List<String> terms = new ArrayList<>();
+        instance.tokenize("The dogs are running home", term -> terms.add(term.toString()));
+        assertThat(terms, is(new ArrayList<>(instance.tokenize("The dogs are running home"))));
+    }
+
+    @Test
+    public void testTokenizeConcurrently() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final String word = "word" + t;
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        Collection<String> tokens = instance.tokenize(word + " is " + word + i);
+                        if (!tokens.equals(Arrays.asList(word, word + i))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get(), is(true));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
 }
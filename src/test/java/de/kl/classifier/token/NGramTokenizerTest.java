@@ -0,0 +1,76 @@
+package de.kl.classifier.token;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author konrad
+ */
+public class NGramTokenizerTest
+{
+
+    private final SplitTokenizer terms = new SplitTokenizer();
+
+    @Test
+    public void testWordNGramsFollowTheirLastTerm() throws IOException
+    {
+        NGramTokenizer instance = new NGramTokenizer(terms, 3, 0);
+        List<String> features = new ArrayList<>(instance.tokenize("a b c d"));
+
+        assertThat(features.size(), is(4 + 3 + 2));
+        assertThat(features.subList(0, 2), is(Arrays.asList("a", "b")));
+        assertTrue(NGramTokenizer.isNGram(features.get(2)));
+        assertThat(features.get(3), is("c"));
+        assertThat(nGrams(features).size(), is(5));
+    }
+
+    @Test
+    public void testEqualNGramsGiveEqualKeys() throws IOException
+    {
+        NGramTokenizer instance = new NGramTokenizer(terms, 2, 0);
+
+        // the rolled hash of "b c" after "a" equals the hash of "b c" on its own
+        Collection<String> rolled = nGrams(instance.tokenize("a b c"));
+        List<String> alone = nGrams(instance.tokenize("b c"));
+        assertTrue(rolled.containsAll(alone));
+        assertThat(alone, is(not(nGrams(instance.tokenize("c b")))));
+    }
+
+    @Test
+    public void testCharNGramsIncludeTermBoundaries() throws IOException
+    {
+        NGramTokenizer instance = new NGramTokenizer(terms, 1, 3);
+
+        // "sun" enclosed in boundaries has the trigrams ^su, sun, un$
+        assertThat(nGrams(instance.tokenize("sun")).size(), is(3));
+        assertThat(nGrams(instance.tokenize("a")).size(), is(1));
+        assertTrue(nGrams(instance.tokenize("sunny")).containsAll(nGrams(instance.tokenize("sun")).subList(0, 2)));
+    }
+
+    @Test
+    public void testStreamingMatchesExtendingTerms() throws IOException
+    {
+        NGramTokenizer instance = new NGramTokenizer(terms, 2, 3);
+        String text = "the quick brown fox";
+        List<String> streamed = new ArrayList<>();
+        instance.tokenize(text, term -> streamed.add(term.toString()));
+
+        assertThat(streamed, is(new ArrayList<>(instance.extend(terms.tokenize(text)))));
+        assertThat(streamed, is(new ArrayList<>(instance.tokenize(text))));
+    }
+
+    private static List<String> nGrams(Collection<String> features)
+    {
+        return features.stream().filter(NGramTokenizer::isNGram).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,264 @@
+package de.kl.io.csv;
+
+import de.kl.io.csv.CsvReader.UserSettings;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the parse throughput of the {@link CsvReader} with the reader it replaced, which read the stream byte by
+ * byte and appended each char to a buffer. Both parse a generated upload of 200,000 lines and 6 columns, half of them
+ * qualified, from memory and from a file. Then a wide upload of 20,000 lines and 150 columns is read as maps and as
+ * reused {@link CsvRow}s. Not run as part of the test suite, start it manually:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes de.kl.io.csv.CsvReaderBenchmark
+ * </pre>
+ *
+ * @author konrad
+ */
+public class CsvReaderBenchmark
+{
+
+    private static final int LINES = 200000;
+
+    private static final int ROUNDS = 5;
+
+    private static final int WIDE_LINES = 20000;
+
+    private static final int WIDE_COLUMNS = 150;
+
+    public static void main(String[] args) throws Exception
+    {
+        byte[] csv = generate();
+        Path file = Files.createTempFile("upload", ".csv");
+        Files.write(file, csv);
+        double megabytes = csv.length / 1e6;
+        System.out.printf("%,d lines, %.1f MB%n", LINES, megabytes);
+        for (int round = 0; round < ROUNDS; round++) {
+            long bytewise = time(() -> ByteCsvReader.count(new ByteArrayInputStream(csv)));
+            long blockwise = time(() -> count(new ByteArrayInputStream(csv)));
+            long bytewiseFile = time(() -> ByteCsvReader.count(new FileInputStream(file.toFile())));
+            long blockwiseFile = time(() -> count(new FileInputStream(file.toFile())));
+            System.out.printf("memory: byte by byte %6.1f MB/s, blocks %6.1f MB/s; "
+                    + "file: byte by byte %6.1f MB/s, blocks %6.1f MB/s%n",
+                    megabytes * 1e9 / bytewise, megabytes * 1e9 / blockwise,
+                    megabytes * 1e9 / bytewiseFile, megabytes * 1e9 / blockwiseFile);
+        }
+        Files.delete(file);
+
+        byte[] wide = generateWide();
+        double wideMegabytes = wide.length / 1e6;
+        System.out.printf("%,d lines of %d columns, %.1f MB%n", WIDE_LINES, WIDE_COLUMNS, wideMegabytes);
+        for (int round = 0; round < ROUNDS; round++) {
+            long maps = time(() -> countMaps(new ByteArrayInputStream(wide)), WIDE_LINES);
+            long rows = time(() -> countRows(new ByteArrayInputStream(wide)), WIDE_LINES);
+            System.out.printf("maps %6.1f MB/s, rows %6.1f MB/s%n",
+                    wideMegabytes * 1e9 / maps, wideMegabytes * 1e9 / rows);
+        }
+    }
+
+    private static byte[] generateWide()
+    {
+        Random random = new Random(42);
+        StringBuilder csv = new StringBuilder();
+        for (int column = 0; column < WIDE_COLUMNS; column++) {
+            csv.append((column == 0) ? "" : ";").append("column").append(column);
+        }
+        csv.append('\n');
+        for (int line = 0; line < WIDE_LINES; line++) {
+            for (int column = 0; column < WIDE_COLUMNS; column++) {
+                csv.append((column == 0) ? "" : ";");
+                if (column % 3 == 0) {
+                    csv.append("\"value ").append(random.nextInt(1000)).append('"');
+                } else {
+                    csv.append(random.nextInt(100000));
+                }
+            }
+            csv.append('\n');
+        }
+        return csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads every column of every line from a map.
+     */
+    private static int countMaps(InputStream inputStream) throws IOException
+    {
+        int returnValue = 0;
+        try (CsvReader reader = new CsvReader(inputStream, new UserSettings())) {
+            for (Map<String, String> line : reader) {
+                int length = 0;
+                for (String value : line.values()) {
+                    length += value.length();
+                }
+                returnValue += (length > 0) ? 1 : 0;
+            }
+        }
+        return returnValue;
+    }
+
+    /**
+     * Reads every column of every line from the reused row.
+     */
+    private static int countRows(InputStream inputStream) throws IOException
+    {
+        int returnValue = 0;
+        try (CsvReader reader = new CsvReader(inputStream, new UserSettings())) {
+            for (CsvRow row : reader.rows()) {
+                int length = 0;
+                for (int column = 0; column < row.size(); column++) {
+                    length += row.get(column).length();
+                }
+                returnValue += (length > 0) ? 1 : 0;
+            }
+        }
+        return returnValue;
+    }
+
+    private static byte[] generate() throws IOException
+    {
+        Random random = new Random(42);
+        StringBuilder csv = new StringBuilder("id;name;category;text;amount;date\n");
+        for (int line = 0; line < LINES; line++) {
+            csv.append(line).append(';')
+                    .append("\"name ").append(random.nextInt(1000)).append("\";")
+                    .append("category").append(random.nextInt(20)).append(';')
+                    .append("\"the quick brown fox; jumps over the \"\"lazy\"\" dog ")
+                    .append(random.nextInt()).append("\";")
+                    .append(random.nextInt(100000) / 100.0).append(';')
+                    .append("\"2017-0").append(1 + random.nextInt(9)).append("-1").append(random.nextInt(10))
+                    .append("\"\n");
+        }
+        return csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long time(Parse parse) throws IOException
+    {
+        return time(parse, LINES);
+    }
+
+    private static long time(Parse parse, int expected) throws IOException
+    {
+        long start = System.nanoTime();
+        int lines = parse.lines();
+        long returnValue = System.nanoTime() - start;
+        if (lines != expected) {
+            throw new IllegalStateException("Parsed " + lines + " lines, expected " + expected);
+        }
+        return returnValue;
+    }
+
+    private static int count(InputStream inputStream) throws IOException
+    {
+        int returnValue = 0;
+        try (CsvReader reader = new CsvReader(inputStream, new UserSettings())) {
+            for (Map<String, String> line : reader) {
+                returnValue += (line.get("id") != null) ? 1 : 0;
+            }
+        }
+        return returnValue;
+    }
+
+    private interface Parse
+    {
+
+        int lines() throws IOException;
+    }
+
+    /**
+     * The core of the reader before: it reads the stream byte by byte, appends each char to a buffer and maps a line
+     * through a stream of the header indices, with the default settings.
+     */
+    private static class ByteCsvReader
+    {
+
+        private final InputStream inputStream;
+        private final StringBuilder columnBuffer = new StringBuilder();
+        private final List<String> columns = new ArrayList<>();
+        private int currentChar;
+        private boolean startedColumn;
+        private boolean qualified;
+        private boolean escaped;
+        private boolean lineIsEnded;
+
+        private ByteCsvReader(InputStream inputStream) throws IOException
+        {
+            this.inputStream = inputStream;
+            this.currentChar = inputStream.read();
+        }
+
+        private static int count(InputStream inputStream) throws IOException
+        {
+            int returnValue = 0;
+            try (InputStream in = inputStream) {
+                ByteCsvReader reader = new ByteCsvReader(in);
+                List<String> headers = new ArrayList<>(reader.readLine());
+                while (reader.currentChar != -1) {
+                    List<String> line = reader.readLine();
+                    Map<String, String> map = IntStream.range(0, headers.size()).boxed()
+                            .collect(Collectors.toMap(headers::get, line::get));
+                    returnValue += (map.get("id") != null) ? 1 : 0;
+                }
+            }
+            return returnValue;
+        }
+
+        private List<String> readLine() throws IOException
+        {
+            this.columns.clear();
+            this.lineIsEnded = false;
+            while (!this.lineIsEnded && this.currentChar != -1) {
+                int c = this.currentChar;
+                this.currentChar = this.inputStream.read();
+                if (!this.startedColumn) {
+                    if (c == ';') {
+                        this.columns.add("");
+                    } else {
+                        this.startedColumn = true;
+                        this.qualified = (c == '"');
+                        if (!this.qualified) {
+                            this.columnBuffer.append((char) c);
+                        }
+                    }
+                } else if (c == '"') {
+                    if (this.escaped) {
+                        this.columnBuffer.append((char) c);
+                    }
+                    this.escaped = !this.escaped;
+                } else if (c == ';' && (this.escaped || !this.qualified)) {
+                    this.endColumn();
+                } else if (c == '\n' && (this.escaped || !this.qualified)) {
+                    this.endColumn();
+                    this.lineIsEnded = true;
+                } else {
+                    this.columnBuffer.append((char) c);
+                }
+            }
+            if (!this.lineIsEnded) {
+                this.endColumn();
+            }
+            return this.columns;
+        }
+
+        private void endColumn()
+        {
+            this.columns.add(this.columnBuffer.toString().trim());
+            this.columnBuffer.setLength(0);
+            this.startedColumn = false;
+            this.qualified = false;
+            this.escaped = false;
+        }
+    }
+}
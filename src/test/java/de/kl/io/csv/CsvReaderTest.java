@@ -4,11 +4,15 @@ import de.kl.io.csv.CsvReader.UserSettings;
 import java.io.IOException;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.Map;
 import org.junit.Test;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 /**
@@ -331,5 +335,90 @@ public class CsvReaderTest
         }
         assertThat(counter2, is(0));
     }
-    
+
+    @Test
+    public void testMultiByteCharactersAreDecoded() throws IOException
+    {
+        UserSettings settings = new CsvReader.UserSettings();
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(
+                "kopf;größe\n\"über;all\";€ 5".getBytes(StandardCharsets.UTF_8));
+        CsvReader instance = new CsvReader(inputStream, settings);
+        for (Map<String, String> line : instance) {
+            assertThat(line.get("kopf"), is("über;all"));
+            assertThat(line.get("größe"), is("€ 5"));
+        }
+        assertThat(instance.getCurrentLineNumber(), is(1L));
+    }
+
+    @Test
+    public void testColumnsSpanningBlocks() throws IOException
+    {
+        UserSettings settings = new CsvReader.UserSettings();
+        StringBuilder csv = new StringBuilder("head1;head2\n");
+        String longValue = String.join("", Collections.nCopies(30000, "äb"));
+        for (int i = 0; i < 3; i++) {
+            csv.append(longValue).append(";\"").append(longValue).append("\"\"\"\n");
+        }
+        CsvReader instance = new CsvReader(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)),
+                settings);
+        int counter = 0;
+        for (Map<String, String> line : instance) {
+            assertThat(line.get("head1"), is(longValue));
+            assertThat(line.get("head2"), is(longValue + "\""));
+            counter++;
+        }
+        assertThat(counter, is(3));
+    }
+
+    @Test
+    public void testEmptyLastColumnEndsLine() throws IOException
+    {
+        UserSettings settings = new CsvReader.UserSettings();
+        ByteArrayInputStream inputStream = new ByteArrayInputStream("head1;head2\nvalue1;\nvalue2;".getBytes());
+        CsvReader instance = new CsvReader(inputStream, settings);
+        int counter = 0;
+        for (Map<String, String> line : instance) {
+            counter++;
+            assertThat(line.get("head1"), is("value" + counter));
+            assertThat(line.get("head2"), is(""));
+        }
+        assertThat(counter, is(2));
+    }
+
+    @Test
+    public void testRowsAreReused() throws IOException
+    {
+        UserSettings settings = new CsvReader.UserSettings();
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(
+                "head1;head2;head3\n value1 ;\"a;\"\"b\"\"\";c;extra\nvalue2\n".getBytes());
+        CsvReader instance = new CsvReader(inputStream, settings);
+        CsvColumn head2 = instance.column("head2");
+        Iterator<CsvRow> rows = instance.rows().iterator();
+
+        CsvRow first = rows.next();
+        assertThat(first.getLineNumber(), is(1L));
+        assertThat(first.size(), is(4));
+        assertThat(first.get(0).toString(), is("value1"));
+        assertThat(first.get(head2).toString(), is("a;\"b\""));
+        assertThat(first.get(head2).charAt(2), is('"'));
+        assertThat(first.getString(3), is("extra"));
+        assertThat(first.toMap().get("head3"), is("c"));
+        assertThat(first.toMap().size(), is(3));
+
+        CsvRow second = rows.next();
+        assertThat(second, is(sameInstance(first)));
+        assertThat(second.size(), is(1));
+        assertThat(second.get(head2).length(), is(0));
+        assertThat(second.toMap().get("head1"), is("value2"));
+        assertThat(rows.hasNext(), is(false));
+        assertThat(instance.getCurrentLineNumber(), is(2L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownColumn() throws IOException
+    {
+        UserSettings settings = new CsvReader.UserSettings();
+        CsvReader instance = new CsvReader(new ByteArrayInputStream("head1\nvalue".getBytes()), settings);
+        instance.column("head2");
+    }
 }
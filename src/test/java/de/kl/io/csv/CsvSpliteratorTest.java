@@ -0,0 +1,89 @@
+package de.kl.io.csv;
+
+import de.kl.io.csv.CsvReader.UserSettings;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author konrad
+ */
+public class CsvSpliteratorTest
+{
+
+    private static final int LINES = 100000;
+
+    @Test
+    public void testParallelStreamKeepsOrder() throws IOException
+    {
+        try (Stream<Map<String, String>> lines = reader(LINES).stream()) {
+            List<Integer> ids = lines.parallel()
+                    .map(line -> Integer.valueOf(line.get("id")))
+                    .collect(Collectors.toList());
+
+            assertThat(ids, is(IntStream.range(0, LINES).boxed().collect(Collectors.toList())));
+        }
+    }
+
+    @Test
+    public void testBatchesAreCapped() throws IOException
+    {
+        Spliterator<Map<String, String>> spliterator = new CsvSpliterator(reader(LINES).iterator());
+
+        assertThat(spliterator.trySplit().estimateSize(), is((long) CsvSpliterator.BATCH_UNIT));
+        assertThat(spliterator.trySplit().estimateSize(), is(2L * CsvSpliterator.BATCH_UNIT));
+        long split = 3L * CsvSpliterator.BATCH_UNIT;
+        for (int i = 0; i < 20; i++) {
+            Spliterator<Map<String, String>> batch = spliterator.trySplit();
+            if (batch == null) {
+                break;
+            }
+            assertThat(batch.estimateSize() <= CsvSpliterator.MAX_BATCH, is(true));
+            split += batch.estimateSize();
+        }
+        long[] rest = new long[1];
+        spliterator.forEachRemaining(line -> rest[0]++);
+        assertThat(split + rest[0], is((long) LINES));
+        assertThat(spliterator.trySplit(), is((Spliterator<Map<String, String>>) null));
+    }
+
+    @Test
+    public void testClosingStreamClosesReader() throws IOException
+    {
+        AtomicBoolean closed = new AtomicBoolean();
+        ByteArrayInputStream inputStream = new ByteArrayInputStream("id\n1\n2".getBytes())
+        {
+            @Override
+            public void close()
+            {
+                closed.set(true);
+            }
+        };
+        CsvReader reader = new CsvReader(inputStream, new UserSettings());
+        try (Stream<Map<String, String>> lines = reader.stream()) {
+            assertThat(lines.count(), is(2L));
+        }
+        assertThat(closed.get(), is(true));
+    }
+
+    private static CsvReader reader(int lines) throws IOException
+    {
+        StringBuilder csv = new StringBuilder("id;text\n");
+        for (int i = 0; i < lines; i++) {
+            csv.append(i).append(";\"line ").append(i).append("\"\n");
+        }
+        return new CsvReader(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)),
+                new UserSettings());
+    }
+}
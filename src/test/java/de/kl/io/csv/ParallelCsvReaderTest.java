@@ -0,0 +1,131 @@
+package de.kl.io.csv;
+
+import de.kl.io.csv.CsvReader.UserSettings;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author konrad
+ */
+public class ParallelCsvReaderTest
+{
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String CSV = "id;text\n"
+            + "1;plain\n"
+            + "2;\"qualified; with delimiter\"\n"
+            + "3;\"spanning\nthree\nlines\"\n"
+            + "4;\"escaped \"\"\nqualifier\"\"\"\n"
+            + "5;ünïcödé\n"
+            + "6;last";
+
+    @Test
+    public void testOrderedRecordsEqualSingleReader() throws IOException
+    {
+        List<Map<String, String>> expected = new ArrayList<>();
+        for (Map<String, String> line : new CsvReader(new ByteArrayInputStream(bytes(CSV)), new UserSettings())) {
+            expected.add(line);
+        }
+        // chunks of every size, splitting each qualified value somewhere
+        for (long chunkSize = 1; chunkSize < CSV.length() + 2; chunkSize++) {
+            ParallelCsvReader reader = new ParallelCsvReader(null, ByteBuffer.wrap(bytes(CSV)), new UserSettings(),
+                    3, chunkSize);
+            List<Map<String, String>> records = new ArrayList<>();
+
+            assertThat(reader.forEach(records::add, true), is(6L));
+            assertThat("chunks of " + chunkSize, records, is(expected));
+        }
+        assertThat(expected.get(2).get("text"), is("spanning\nthree\nlines"));
+    }
+
+    @Test
+    public void testStrayQualifierDoesNotMoveBoundaries() throws IOException
+    {
+        StringBuilder csv = new StringBuilder("id;text\n");
+        csv.append("0;24\" monitor\n");
+        for (int i = 1; i < 200; i++) {
+            csv.append(i).append(";\"first line\nsecond line ").append(i).append("\"\n");
+        }
+        byte[] bytes = bytes(csv.toString());
+        List<Map<String, String>> expected = new ArrayList<>();
+        for (Map<String, String> line : new CsvReader(new ByteArrayInputStream(bytes), new UserSettings())) {
+            expected.add(line);
+        }
+        assertThat(expected.size(), is(200));
+        assertThat(expected.get(0).get("text"), is("24 monitor"));
+        for (long chunkSize : new long[]{1, 7, 64, 256, 1000}) {
+            ParallelCsvReader reader = new ParallelCsvReader(null, ByteBuffer.wrap(bytes), new UserSettings(), 3,
+                    chunkSize);
+            List<Map<String, String>> records = new ArrayList<>();
+
+            assertThat(reader.forEach(records::add, true), is(200L));
+            assertThat("chunks of " + chunkSize, records, is(expected));
+        }
+    }
+
+    @Test
+    public void testUnorderedRecordsAreComplete() throws IOException
+    {
+        StringBuilder csv = new StringBuilder("id;text\n");
+        for (int i = 0; i < 1000; i++) {
+            csv.append(i).append(";\"line\n").append(i).append("\"\n");
+        }
+        ParallelCsvReader reader = new ParallelCsvReader(null, ByteBuffer.wrap(bytes(csv.toString())),
+                new UserSettings(), 4, 256);
+        List<String> ids = new CopyOnWriteArrayList<>();
+
+        assertThat(reader.forEach(record -> ids.add(record.get("id")), false), is(1000L));
+        List<Integer> sorted = new ArrayList<>();
+        ids.forEach(id -> sorted.add(Integer.valueOf(id)));
+        Collections.sort(sorted);
+        assertThat(sorted.get(0), is(0));
+        assertThat(sorted.get(999), is(999));
+        assertThat(reader.getHeaders(), is(Arrays.asList("id", "text")));
+    }
+
+    @Test
+    public void testFileCanBeReadTwice() throws IOException
+    {
+        Path file = folder.newFile("upload.csv").toPath();
+        Files.write(file, bytes(CSV));
+        try (ParallelCsvReader reader = new ParallelCsvReader(file, new UserSettings(), 2)) {
+            assertThat(reader.forEach(record -> {
+            }, false), is(6L));
+            assertThat(reader.forEach(record -> {
+            }, true), is(6L));
+        }
+    }
+
+    @Test
+    public void testHeaderOnly() throws IOException
+    {
+        ParallelCsvReader reader = new ParallelCsvReader(ByteBuffer.wrap(bytes("id;text\n")), new UserSettings(), 2);
+
+        assertThat(reader.forEach(record -> {
+        }, true), is(0L));
+        assertThat(reader.getHeaders(), is(Arrays.asList("id", "text")));
+    }
+
+    private static byte[] bytes(String csv)
+    {
+        return csv.getBytes(StandardCharsets.UTF_8);
+    }
+}
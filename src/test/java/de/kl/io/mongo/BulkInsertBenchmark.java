@@ -0,0 +1,71 @@
+package de.kl.io.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.MongoClient;
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.MongodConfigBuilder;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+
+/**
+ * Compares inserting rows one by one, as the upload did before, with a {@link BulkInserter} of unordered bulk writes,
+ * on the embedded MongoDB the application runs with. Rows one by one are measured for at most a tenth of the rows.
+ * Not run as part of the test suite, as the first start downloads MongoDB; start it manually, with the number of rows
+ * as argument:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:... de.kl.io.mongo.BulkInsertBenchmark 10000000
+ * </pre>
+ *
+ * @author konrad
+ */
+public class BulkInsertBenchmark
+{
+
+    public static void main(String[] args) throws Exception
+    {
+        int rows = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        int port = Network.getFreeServerPort();
+        MongodExecutable mongod = MongodStarter.getDefaultInstance().prepare(new MongodConfigBuilder()
+                .version(Version.Main.PRODUCTION)
+                .net(new Net(port, Network.localhostIsIPv6()))
+                .build());
+        mongod.start();
+        MongoClient client = new MongoClient("localhost", port);
+        try {
+            DBCollection single = client.getDB("benchmark").getCollection("single");
+            int singleRows = Math.min(rows, Math.max(1, rows / 10));
+            long start = System.nanoTime();
+            for (int i = 0; i < singleRows; i++) {
+                single.insert(row(i));
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.printf("one by one: %,d rows in %.1f s, %,d rows/s%n", singleRows, nanos / 1e9,
+                    singleRows * 1000000000L / nanos);
+            for (int writers : new int[]{1, 2, 4}) {
+                DBCollection bulk = client.getDB("benchmark").getCollection("bulk" + writers);
+                BulkInserter inserter = new BulkInserter(new MongoBatchWriter(bulk), 1000, 16, writers, 10000);
+                for (int i = 0; i < rows; i++) {
+                    inserter.add(row(i));
+                }
+                System.out.printf("%d writers: %s%n", writers, inserter.finish());
+            }
+        } finally {
+            client.close();
+            mongod.stop();
+        }
+    }
+
+    private static BasicDBObject row(int i)
+    {
+        return new BasicDBObject("id", Integer.toString(i))
+                .append("name", "name " + (i % 1000))
+                .append("category", "category" + (i % 20))
+                .append("text", "the quick brown fox; jumps over the lazy dog " + i)
+                .append("amount", Integer.toString(i % 100000))
+                .append("date", "2017-01-1" + (i % 10));
+    }
+}
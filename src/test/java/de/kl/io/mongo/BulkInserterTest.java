@@ -0,0 +1,96 @@
+package de.kl.io.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author konrad
+ */
+public class BulkInserterTest
+{
+
+    /**
+     * Keeps the batches written in memory.
+     */
+    private final List<List<DBObject>> written = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void testDocumentsAreWrittenInBatches()
+    {
+        BulkInserter instance = new BulkInserter(written::add, 100, 4, 3, 10000);
+        for (int i = 0; i < 1050; i++) {
+            instance.add(new BasicDBObject("id", i));
+        }
+        BulkInserter.Summary summary = instance.finish();
+
+        assertThat(summary.getRows(), is(1050L));
+        assertThat(summary.getBatches(), is(11L));
+        assertThat(written.size(), is(11));
+        long ids = written.stream().flatMap(List::stream).mapToInt(document -> (Integer) document.get("id"))
+                .distinct().count();
+        assertThat(ids, is(1050L));
+        assertThat(summary.toString(), startsWith("Inserted 1,050 rows in 11 batches"));
+    }
+
+    @Test
+    public void testAddingBlocksWhileQueueIsFull() throws InterruptedException
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        BulkInserter instance = new BulkInserter(batch -> {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            written.add(batch);
+        }, 1, 2, 1, 10000);
+        CountDownLatch added = new CountDownLatch(10);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 10; i++) {
+                instance.add(new BasicDBObject("id", i));
+                added.countDown();
+            }
+        });
+        producer.start();
+
+        // one batch is being written, two are queued, the fourth waits for room
+        assertThat(added.await(200, TimeUnit.MILLISECONDS), is(false));
+        assertThat(added.getCount(), is(7L));
+        release.countDown();
+        producer.join();
+        assertThat(instance.finish().getRows(), is(10L));
+    }
+
+    @Test
+    public void testFailedBatchFailsAddingAndFinishing()
+    {
+        BulkInserter instance = new BulkInserter(batch -> {
+            throw new IllegalArgumentException("duplicate key");
+        }, 1, 1, 1, 10000);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                instance.add(new BasicDBObject("id", i));
+            }
+            fail("adding after a failed batch must throw");
+        } catch (IllegalStateException ex) {
+            assertThat(ex.getCause().getMessage(), is("duplicate key"));
+        }
+        try {
+            instance.finish();
+            fail("finishing after a failed batch must throw");
+        } catch (IllegalStateException ex) {
+            assertThat(ex.getCause().getMessage(), is("duplicate key"));
+        }
+    }
+}